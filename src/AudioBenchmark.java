@@ -0,0 +1,64 @@
+import java.io.IOException;
+
+// Headless benchmark for the sound effect path. Plays bursts of the missile fire
+// and hit sounds through an AudioMixer at increasing rates and prints latency,
+// buffer fill, underrun and voice figures for each rate, so line buffer sizes
+// can be chosen for a given machine.
+//
+// Usage: java AudioBenchmark [lineBufferFrames] [secondsPerRate]
+// Runs against a simulated line when no sound device is available.
+public class AudioBenchmark {
+    private static final int[] PLAYS_PER_SECOND = {10, 25, 50, 100, 200, 400, 800};
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int lineBufferFrames = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int secondsPerRate = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        SoundBank bank = SoundBank.load();
+        AudioMixer mixer = new AudioMixer(lineBufferFrames);
+        mixer.setSound(SoundBank.SOUND_MISSILE_FIRE, bank.getSound(SoundBank.SOUND_MISSILE_FIRE));
+        mixer.setSound(SoundBank.SOUND_MISSILE_HIT, bank.getSound(SoundBank.SOUND_MISSILE_HIT));
+        mixer.setPriority(SoundBank.SOUND_MISSILE_FIRE, 1);
+        mixer.setPriority(SoundBank.SOUND_MISSILE_HIT, 2);
+
+        boolean simulated = false;
+        if (!mixer.start()) {
+            System.out.println("No sound device available, using a simulated line");
+            mixer.startSimulated();
+            simulated = true;
+        }
+
+        System.out.println("Line buffer: " + mixer.getLineBufferFrames() + " frames ("
+                + String.format("%.1f", mixer.getLineBufferFrames() * 1000.0 / PcmStreamReader.OUTPUT_FORMAT.getSampleRate())
+                + "ms)" + (simulated ? " [simulated]" : ""));
+        System.out.println("plays/s  plays  p50(us)  p99(us)  max(us)  underruns  minFill  peakVoices");
+
+        AudioStats stats = mixer.getStats();
+        int tick = 0;
+        for (int rate : PLAYS_PER_SECOND) {
+            Thread.sleep(200); // Let voices from the previous rate finish
+            stats.reset();
+            long interval = 1_000_000_000L / rate;
+            long next = System.nanoTime();
+            long end = next + secondsPerRate * 1_000_000_000L;
+            int played = 0;
+            while (next < end) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                }
+                // Alternate sounds so both get exercised; each play is its own tick
+                int sound = (played % 2 == 0) ? SoundBank.SOUND_MISSILE_FIRE : SoundBank.SOUND_MISSILE_HIT;
+                mixer.play(sound, tick++);
+                played++;
+                next += interval;
+            }
+            Thread.sleep(100); // Let the last requests reach the line
+            System.out.printf("%7d  %5d  %7d  %7d  %7d  %9d  %7.2f  %10d%n",
+                    rate, stats.getLatencyCount(),
+                    stats.getLatencyPercentileMicros(50), stats.getLatencyPercentileMicros(99),
+                    stats.getMaxLatencyMicros(), stats.getUnderruns(), stats.getMinFill(), stats.getPeakVoices());
+        }
+        mixer.shutdown();
+    }
+}
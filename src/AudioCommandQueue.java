@@ -0,0 +1,84 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bounded lock-free queue of "play sound" events. Any thread may post; only the
+// mixer thread takes. Each slot carries a sequence number so producers claim
+// slots with a single CAS and the consumer never blocks them (Vyukov's bounded
+// MPMC design, reduced to a single consumer). Posting never allocates.
+public class AudioCommandQueue {
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequence;
+    private final int[] sounds;
+    private final int[] ticks;
+    private final long[] requestTimes;
+    private final AtomicLong tail = new AtomicLong(); // Next slot for producers
+    private long head = 0; // Next slot for the consumer; only the mixer thread touches it
+    private long polledRequestTime = 0;
+
+    public AudioCommandQueue(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.sequence = new AtomicLongArray(capacity);
+        this.sounds = new int[capacity];
+        this.ticks = new int[capacity];
+        this.requestTimes = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequence.set(i, i);
+        }
+    }
+
+    // Returns false (dropping the event) if the queue is full. requestTime is a
+    // System.nanoTime() stamp used to measure how long the sound took to start.
+    public boolean offer(int sound, int tick, long requestTime) {
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long difference = sequence.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                return false; // Consumer has not freed this slot yet
+            }
+        }
+        sounds[slot] = sound;
+        ticks[slot] = tick;
+        requestTimes[slot] = requestTime;
+        sequence.set(slot, position + 1); // Publishes the slot to the consumer
+        return true;
+    }
+
+    // Takes the next event packed as (tick << 32 | sound), or -1 if the queue is empty.
+    // Must only be called from the consumer thread.
+    public long poll() {
+        int slot = (int) head & mask;
+        if (sequence.get(slot) != head + 1) {
+            return -1;
+        }
+        long event = ((long) ticks[slot] << 32) | (sounds[slot] & 0xFFFFFFFFL);
+        polledRequestTime = requestTimes[slot];
+        sequence.set(slot, head + capacity); // Hands the slot back to producers
+        head++;
+        return event;
+    }
+
+    // Request time of the event last returned by poll()
+    public long getPolledRequestTime() {
+        return polledRequestTime;
+    }
+
+    public static int soundOf(long event) {
+        return (int) event;
+    }
+
+    public static int tickOf(long event) {
+        return (int) (event >>> 32);
+    }
+}
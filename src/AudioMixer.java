@@ -0,0 +1,331 @@
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+// Software mixer for sound effects. Every effect is kept as decoded PCM and any
+// number of plays are mixed together into one SourceDataLine in small blocks, so
+// a sound can overlap itself and the game only ever holds a single output line.
+//
+// Plays arrive as events on a lock-free queue tagged with the game tick that
+// posted them. Identical effects from the same tick are merged into one voice
+// with a boosted gain, and when every voice is busy a new sound only takes over
+// a voice of equal or lower priority.
+public class AudioMixer {
+    public static final int MAX_SOUNDS = 10;
+    public static final int VOICES_PER_SOUND = 4; // Concurrent plays of the same effect
+    private static final int MAX_VOICES = 32;
+    private static final int DEFAULT_VOICE_LIMIT = 16;
+    private static final int BLOCK_FRAMES = 256;  // ~5.8ms per mix block at 44.1kHz
+    private static final int DEFAULT_LINE_BUFFER_FRAMES = BLOCK_FRAMES * 4;
+    private static final int MAX_STARTS_PER_BLOCK = 64;
+    private static final int QUEUE_CAPACITY = 256;
+    private static final float COALESCE_BOOST = 0.25f; // Extra gain per merged duplicate
+    private static final float MAX_COALESCE_GAIN = 2.0f;
+
+    private final ShortBuffer[] sounds = new ShortBuffer[MAX_SOUNDS];
+    private final float[] soundGain = new float[MAX_SOUNDS];
+    private final int[] soundPriority = new int[MAX_SOUNDS];
+    private volatile int voiceLimit = DEFAULT_VOICE_LIMIT;
+
+    // Voices are kept in flat arrays so the mix loop never allocates
+    private final int[] voiceSound = new int[MAX_VOICES];  // -1 when the voice is free
+    private final int[] voicePosition = new int[MAX_VOICES]; // Next sample index
+    private final float[] voiceGain = new float[MAX_VOICES];
+    private final long[] voiceStarted = new long[MAX_VOICES]; // Used to steal the oldest voice
+    private final int[] voiceTick = new int[MAX_VOICES]; // Tick of the event that started the voice
+    private final int[] voiceCopies = new int[MAX_VOICES]; // Events merged into the voice
+    private long voiceCounter = 0;
+    private int activeVoices = 0;
+
+    // Play requests handed from the game to the mixer thread
+    private final AudioCommandQueue commands = new AudioCommandQueue(QUEUE_CAPACITY);
+
+    // Request times of the plays started in the block being mixed, for latency stats
+    private final long[] blockRequestTimes = new long[MAX_STARTS_PER_BLOCK];
+    private int blockRequests = 0;
+    private final AudioStats stats = new AudioStats();
+
+    private final int[] mixBuffer = new int[BLOCK_FRAMES * 2];
+    private final byte[] outputBuffer = new byte[BLOCK_FRAMES * 4];
+    private final int lineBufferFrames;
+    private SourceDataLine line;
+    private Thread mixerThread;
+    private volatile boolean running = false;
+
+    // Without a sound device the mixer can still run against a simulated line
+    // that drains in real time, so the pipeline can be measured headless
+    private boolean simulatedOutput = false;
+    private long simulatedQueuedFrames = 0;
+    private long simulatedClock = 0;
+
+    public AudioMixer() {
+        this(DEFAULT_LINE_BUFFER_FRAMES);
+    }
+
+    public AudioMixer(int lineBufferFrames) {
+        this.lineBufferFrames = Math.max(BLOCK_FRAMES * 2, lineBufferFrames);
+        for (int i = 0; i < MAX_VOICES; i++) {
+            voiceSound[i] = -1;
+        }
+        for (int i = 0; i < MAX_SOUNDS; i++) {
+            soundGain[i] = 1.0f;
+        }
+    }
+
+    public synchronized boolean start() {
+        if (running) {
+            return true;
+        }
+        try {
+            line = AudioSystem.getSourceDataLine(PcmStreamReader.OUTPUT_FORMAT);
+            line.open(PcmStreamReader.OUTPUT_FORMAT, lineBufferFrames * PcmStreamReader.OUTPUT_FORMAT.getFrameSize());
+            line.start();
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.err.println("Error opening sound effect line: " + e.getMessage());
+            line = null;
+            return false;
+        }
+        startThread();
+        return true;
+    }
+
+    // Runs the mixer with no sound device, pacing output as a real line would
+    public synchronized void startSimulated() {
+        if (running) {
+            return;
+        }
+        simulatedOutput = true;
+        simulatedQueuedFrames = 0;
+        simulatedClock = System.nanoTime();
+        startThread();
+    }
+
+    private void startThread() {
+        running = true;
+        mixerThread = new Thread(this::mixLoop, "AudioMixer");
+        mixerThread.setDaemon(true);
+        mixerThread.setPriority(Thread.MAX_PRIORITY);
+        mixerThread.start();
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (line != null) {
+            line.stop();
+            line.flush();
+            line.close();
+            line = null;
+        }
+    }
+
+    // Samples are interleaved 16-bit stereo in PcmStreamReader.OUTPUT_FORMAT
+    public void setSound(int id, ShortBuffer samples) {
+        sounds[id] = samples;
+    }
+
+    public boolean hasSound(int id) {
+        return id >= 0 && id < MAX_SOUNDS && sounds[id] != null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public AudioStats getStats() {
+        return stats;
+    }
+
+    public int getLineBufferFrames() {
+        return lineBufferFrames;
+    }
+
+    public void setGain(int id, float gain) {
+        soundGain[id] = gain;
+    }
+
+    // Higher priorities may take over the voices of lower ones when the limit is reached
+    public void setPriority(int id, int priority) {
+        soundPriority[id] = priority;
+    }
+
+    public void setVoiceLimit(int limit) {
+        voiceLimit = Math.max(1, Math.min(MAX_VOICES, limit));
+    }
+
+    // Queues a play of the given effect and returns immediately. Plays of the same
+    // effect with the same tick are merged into one louder voice.
+    public void play(int id, int tick) {
+        if (hasSound(id)) {
+            commands.offer(id, tick, System.nanoTime());
+        }
+    }
+
+    private void mixLoop() {
+        int frameSize = PcmStreamReader.OUTPUT_FORMAT.getFrameSize();
+        double nanosPerFrame = 1_000_000_000.0 / PcmStreamReader.OUTPUT_FORMAT.getSampleRate();
+        while (running) {
+            startPendingVoices();
+            mixBlock();
+            stats.recordVoices(activeVoices);
+
+            int queuedFrames;
+            if (simulatedOutput) {
+                queuedFrames = (int) drainSimulatedLine(nanosPerFrame);
+            } else {
+                SourceDataLine out = line;
+                if (out == null) {
+                    break;
+                }
+                queuedFrames = (out.getBufferSize() - out.available()) / frameSize;
+            }
+            stats.recordWrite(queuedFrames * frameSize, lineBufferFrames * frameSize);
+
+            // The new voices are heard once everything already queued has played
+            long startTime = System.nanoTime() + (long) (queuedFrames * nanosPerFrame);
+            for (int i = 0; i < blockRequests; i++) {
+                stats.recordLatency(startTime - blockRequestTimes[i]);
+            }
+            blockRequests = 0;
+
+            if (simulatedOutput) {
+                waitForSimulatedRoom(nanosPerFrame);
+            } else {
+                SourceDataLine out = line;
+                if (out == null) {
+                    break;
+                }
+                out.write(outputBuffer, 0, outputBuffer.length); // Blocks until the line has room
+            }
+        }
+    }
+
+    private long drainSimulatedLine(double nanosPerFrame) {
+        long now = System.nanoTime();
+        long played = (long) ((now - simulatedClock) / nanosPerFrame);
+        if (played > 0) {
+            simulatedQueuedFrames = Math.max(0, simulatedQueuedFrames - played);
+            simulatedClock += (long) (played * nanosPerFrame);
+        }
+        if (simulatedQueuedFrames == 0) {
+            simulatedClock = now;
+        }
+        return simulatedQueuedFrames;
+    }
+
+    private void waitForSimulatedRoom(double nanosPerFrame) {
+        while (running && drainSimulatedLine(nanosPerFrame) + BLOCK_FRAMES > lineBufferFrames) {
+            long waitFrames = simulatedQueuedFrames + BLOCK_FRAMES - lineBufferFrames;
+            long waitNanos = (long) (waitFrames * nanosPerFrame);
+            try {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+        simulatedQueuedFrames += BLOCK_FRAMES;
+    }
+
+    private void startPendingVoices() {
+        long event;
+        while ((event = commands.poll()) != -1) {
+            int id = AudioCommandQueue.soundOf(event);
+            int tick = AudioCommandQueue.tickOf(event);
+            if (blockRequests < MAX_STARTS_PER_BLOCK) {
+                blockRequestTimes[blockRequests++] = commands.getPolledRequestTime();
+            }
+            if (!coalesce(id, tick)) {
+                startVoice(id, tick);
+            }
+        }
+    }
+
+    // Merges a play into a voice already started for the same effect and tick
+    private boolean coalesce(int id, int tick) {
+        for (int v = 0; v < MAX_VOICES; v++) {
+            if (voiceSound[v] == id && voiceTick[v] == tick) {
+                voiceCopies[v]++;
+                voiceGain[v] = soundGain[id] * Math.min(MAX_COALESCE_GAIN, 1.0f + COALESCE_BOOST * (voiceCopies[v] - 1));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void startVoice(int id, int tick) {
+        int free = -1;
+        int sameSound = 0;
+        int oldestSame = -1;
+        int victim = -1; // Lowest priority, then oldest, voice that this sound may replace
+        int priority = soundPriority[id];
+        for (int v = 0; v < MAX_VOICES; v++) {
+            int playing = voiceSound[v];
+            if (playing == -1) {
+                if (free == -1) {
+                    free = v;
+                }
+                continue;
+            }
+            if (playing == id) {
+                sameSound++;
+                if (oldestSame == -1 || voiceStarted[v] < voiceStarted[oldestSame]) {
+                    oldestSame = v;
+                }
+            }
+            if (soundPriority[playing] <= priority && (victim == -1
+                    || soundPriority[playing] < soundPriority[voiceSound[victim]]
+                    || (soundPriority[playing] == soundPriority[voiceSound[victim]] && voiceStarted[v] < voiceStarted[victim]))) {
+                victim = v;
+            }
+        }
+        int voice;
+        if (sameSound >= VOICES_PER_SOUND) {
+            voice = oldestSame; // Retrigger the oldest copy of this effect
+        } else if (free != -1 && activeVoices < voiceLimit) {
+            voice = free;
+            activeVoices++;
+        } else if (victim != -1) {
+            voice = victim;
+        } else {
+            return; // Every voice is busy with something more important
+        }
+        voiceSound[voice] = id;
+        voicePosition[voice] = 0;
+        voiceGain[voice] = soundGain[id];
+        voiceTick[voice] = tick;
+        voiceCopies[voice] = 1;
+        voiceStarted[voice] = voiceCounter++;
+    }
+
+    private void mixBlock() {
+        int[] mix = mixBuffer;
+        Arrays.fill(mix, 0);
+        for (int v = 0; v < MAX_VOICES; v++) {
+            int id = voiceSound[v];
+            if (id == -1) {
+                continue;
+            }
+            ShortBuffer samples = sounds[id];
+            int position = voicePosition[v];
+            int count = Math.min(mix.length, samples.limit() - position);
+            float gain = voiceGain[v];
+            for (int i = 0; i < count; i++) {
+                mix[i] += (int) (samples.get(position + i) * gain);
+            }
+            position += count;
+            if (position >= samples.limit()) {
+                voiceSound[v] = -1; // Finished
+                activeVoices--;
+            } else {
+                voicePosition[v] = position;
+            }
+        }
+        byte[] out = outputBuffer;
+        for (int i = 0, j = 0; i < mix.length; i++, j += 2) {
+            int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+            out[j] = (byte) sample;
+            out[j + 1] = (byte) (sample >> 8);
+        }
+    }
+}
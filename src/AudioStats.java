@@ -0,0 +1,161 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counters for one audio output path. The audio thread records, any thread may
+// read. Latencies go into log-scale microsecond buckets (four per power of two),
+// so recording is a couple of array writes and percentiles are within 25%.
+public class AudioStats {
+    private static final int BUCKETS = 256;
+
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKETS);
+    private volatile long latencyCount = 0;
+    private volatile long latencyTotalMicros = 0;
+    private volatile long latencyMaxMicros = 0;
+
+    private volatile long writes = 0;
+    private volatile long underruns = 0;
+    private volatile float lastFill = 0.0f;
+    private volatile float minFill = 1.0f;
+
+    private volatile int activeVoices = 0;
+    private volatile int peakVoices = 0;
+
+    // Time from a play request to its first sample reaching the speaker
+    public void recordLatency(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        latencyBuckets.incrementAndGet(bucketOf(micros));
+        latencyCount++;
+        latencyTotalMicros += micros;
+        if (micros > latencyMaxMicros) {
+            latencyMaxMicros = micros;
+        }
+    }
+
+    // Called before each write with how much audio the line still had queued
+    public void recordWrite(int queuedBytes, int bufferBytes) {
+        float fill = bufferBytes > 0 ? (float) queuedBytes / bufferBytes : 0.0f;
+        if (writes > 0 && queuedBytes == 0) {
+            underruns++; // The line played out everything we gave it
+        }
+        writes++;
+        lastFill = fill;
+        if (fill < minFill && writes > 1) {
+            minFill = fill;
+        }
+    }
+
+    public void recordVoices(int active) {
+        activeVoices = active;
+        if (active > peakVoices) {
+            peakVoices = active;
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            latencyBuckets.set(i, 0);
+        }
+        latencyCount = 0;
+        latencyTotalMicros = 0;
+        latencyMaxMicros = 0;
+        writes = 0;
+        underruns = 0;
+        minFill = 1.0f;
+        peakVoices = activeVoices;
+    }
+
+    public long getLatencyCount() {
+        return latencyCount;
+    }
+
+    public long getAverageLatencyMicros() {
+        long count = latencyCount;
+        return count == 0 ? 0 : latencyTotalMicros / count;
+    }
+
+    public long getMaxLatencyMicros() {
+        return latencyMaxMicros;
+    }
+
+    // Upper bound of the bucket holding the given percentile (0-100)
+    public long getLatencyPercentileMicros(double percentile) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += latencyBuckets.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += latencyBuckets.get(i);
+            if (seen >= target) {
+                return Math.min(upperBoundOf(i), latencyMaxMicros);
+            }
+        }
+        return latencyMaxMicros;
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < 4) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >> (exponent - 2)) & 3;
+        return (exponent - 1) * 4 + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exponent = bucket / 4 + 1;
+        int sub = bucket % 4;
+        return ((4L + sub + 1) << (exponent - 2)) - 1;
+    }
+
+    public long[] getLatencyHistogram() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = latencyBuckets.get(i);
+        }
+        return histogram;
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    public float getLastFill() {
+        return lastFill;
+    }
+
+    public float getMinFill() {
+        return minFill;
+    }
+
+    public int getActiveVoices() {
+        return activeVoices;
+    }
+
+    public int getPeakVoices() {
+        return peakVoices;
+    }
+
+    @Override
+    public String toString() {
+        return "AudioStats{" +
+                "latency p50=" + getLatencyPercentileMicros(50) + "us" +
+                ", p99=" + getLatencyPercentileMicros(99) + "us" +
+                ", max=" + latencyMaxMicros + "us" +
+                ", plays=" + latencyCount +
+                ", underruns=" + underruns +
+                ", minFill=" + String.format("%.2f", minFill) +
+                ", peakVoices=" + peakVoices +
+                '}';
+    }
+}
@@ -0,0 +1,316 @@
+// Autopilot.java
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+// Scripted players, as InputSources, for unattended play:
+//
+//   stationary  never moves
+//   circle      strafes round the middle of the play area
+//   flee        keeps away from the nearest enemy
+//   dodge       looks DODGE_HORIZON ticks ahead, following each ricochet's
+//               bounces and each enemy's chase, and takes the heading that
+//               stays clear longest, keeping away from enemies otherwise
+//   wander      heads for a random spot for a second or so at a time
+//
+// The levels play out the same in every game, so the seed is what makes one
+// game differ from the next. circle, flee and dodge play like a person would,
+// not quite on target and now and then a tick slow to react: their targets
+// are scattered by AIM_NOISE pixels, and HESITATION of their ticks repeat the
+// tick before. stationary has nothing to vary and plays the same every time.
+//
+// The live game takes one with "java Main --autopilot <name>" and
+// BalanceRunner with --policy. Run on its own, Autopilot plays whole games
+// headless and records each as a replay, for soak runs and for building a
+// ReplayBenchmark corpus.
+//
+// Usage: java Autopilot [--policy name] [--games n] [--seed s] [--out directory]
+public final class Autopilot {
+    public static final List<String> NAMES = List.of("stationary", "circle", "flee", "dodge", "wander");
+
+    private static final int FLEE_DISTANCE = 300;   // Nearest enemy closer than this is run from
+    private static final int HEADINGS = 16;         // Directions tried by flee and dodge
+    private static final int DODGE_HORIZON = 30;    // Ticks looked ahead by dodge
+    private static final double CIRCLE_LEAD = 0.3;  // Radians ahead on the circle that circle aims for
+    private static final int MAX_LEVEL_TICKS = 30_000; // Headless games end after five minutes on one level
+    private static final double AIM_NOISE = 12;     // Standard deviation, in pixels, of a target's scatter
+    private static final double HESITATION = 0.1;   // Share of ticks that repeat the last tick's input
+
+    private Autopilot() {
+    }
+
+    // A new policy; seed drives any randomness it has
+    public static InputSource create(String name, long seed) {
+        return switch (name) {
+            case "stationary" -> (world, target) -> 0;
+            case "circle" -> new Noisy(Autopilot::circle, seed);
+            case "flee" -> new Noisy(Autopilot::flee, seed);
+            case "dodge" -> new Noisy(new Dodge(), seed);
+            case "wander" -> new Wander(seed);
+            default -> throw new IllegalArgumentException("Unknown autopilot " + name + ", expected one of " + NAMES);
+        };
+    }
+
+    // Picks an upgrade at random, as a player who takes one every level would
+    public static Upgrade chooseUpgrade(Random random) {
+        return Upgrade.values()[random.nextInt(Upgrade.NONE.ordinal())];
+    }
+
+    private static int circle(GameWorld world, int[] target) {
+        Player player = world.getPlayer();
+        int centerX = world.getWidth() / 2;
+        int centerY = world.getHeight() / 2;
+        int radius = Math.min(world.getWidth(), world.getHeight()) / 3;
+        double angle = Math.atan2(player.getY() - centerY, player.getX() - centerX) + CIRCLE_LEAD;
+        target[0] = centerX + (int) (Math.cos(angle) * radius);
+        target[1] = centerY + (int) (Math.sin(angle) * radius);
+        return 1;
+    }
+
+    private static int flee(GameWorld world, int[] target) {
+        Player player = world.getPlayer();
+        Enemy nearest = nearestEnemy(world, player.getX(), player.getY());
+        if (nearest == null || distance(nearest.getX(), nearest.getY(), player.getX(), player.getY()) > FLEE_DISTANCE) {
+            return 0;
+        }
+        // Of the headings, the one ending furthest from the nearest enemy, so
+        // a wall is slid along instead of run into
+        int reach = player.getMoveSpeed() * 10;
+        double best = -1;
+        for (int i = 0; i < HEADINGS; i++) {
+            double heading = 2 * Math.PI * i / HEADINGS;
+            int x = clampX(world, player.getX() + (int) (Math.cos(heading) * reach), player.getSize());
+            int y = clampY(world, player.getY() + (int) (Math.sin(heading) * reach), player.getSize());
+            Enemy enemy = nearestEnemy(world, x, y);
+            double away = distance(enemy.getX(), enemy.getY(), x, y);
+            if (away > best) {
+                best = away;
+                target[0] = x;
+                target[1] = y;
+            }
+        }
+        return 1;
+    }
+
+    private static final class Dodge implements InputSource {
+        // Predicted ricochet positions, one row per ricochet
+        private int[][] ricochetX = new int[0][];
+        private int[][] ricochetY = new int[0][];
+
+        @Override
+        public int next(GameWorld world, int[] target) {
+            List<Ricochet> ricochets = world.getRicochets();
+            if (ricochetX.length < ricochets.size()) {
+                ricochetX = new int[ricochets.size()][DODGE_HORIZON];
+                ricochetY = new int[ricochets.size()][DODGE_HORIZON];
+            }
+            for (int i = 0; i < ricochets.size(); i++) {
+                ricochets.get(i).predict(world.getWidth(), world.getHeight(), ricochetX[i], ricochetY[i]);
+            }
+
+            Player player = world.getPlayer();
+            int reach = player.getMoveSpeed() * DODGE_HORIZON;
+            // Staying put comes first, so it is kept when nothing is better
+            int bestClear = clearTicks(world, player.getX(), player.getY());
+            double bestAway = endDistance(world, player.getX(), player.getY());
+            int moves = 0;
+            for (int i = 0; i < HEADINGS; i++) {
+                double heading = 2 * Math.PI * i / HEADINGS;
+                int x = clampX(world, player.getX() + (int) (Math.cos(heading) * reach), player.getSize());
+                int y = clampY(world, player.getY() + (int) (Math.sin(heading) * reach), player.getSize());
+                int clear = clearTicks(world, x, y);
+                double away = endDistance(world, x, y);
+                if (clear > bestClear || (clear == bestClear && away > bestAway)) {
+                    bestClear = clear;
+                    bestAway = away;
+                    target[0] = x;
+                    target[1] = y;
+                    moves = 1;
+                }
+            }
+            return moves;
+        }
+
+        // Ticks the player can head for x, y before something hits it,
+        // DODGE_HORIZON if nothing does
+        private int clearTicks(GameWorld world, int x, int y) {
+            Player player = world.getPlayer();
+            List<Ricochet> ricochets = world.getRicochets();
+            List<Enemy> enemies = world.getLevel().getEnemies();
+            double px = player.getX();
+            double py = player.getY();
+            for (int tick = 0; tick < DODGE_HORIZON; tick++) {
+                double dx = x - px;
+                double dy = y - py;
+                double left = Math.sqrt(dx * dx + dy * dy);
+                if (left > player.getMoveSpeed()) {
+                    px += dx / left * player.getMoveSpeed();
+                    py += dy / left * player.getMoveSpeed();
+                } else {
+                    px = x;
+                    py = y;
+                }
+                for (int i = 0; i < ricochets.size(); i++) {
+                    if (ricochets.get(i).collidesAt(ricochetX[i][tick], ricochetY[i][tick], (int) px, (int) py, player.getSize())) {
+                        return tick;
+                    }
+                }
+                // An enemy chasing at full speed closes at most its speed every tick
+                for (Enemy enemy : enemies) {
+                    double reach = (enemy.getSize() + player.getSize()) / 2.0 + enemy.getSpeed() * (tick + 1);
+                    if (distance(enemy.getX(), enemy.getY(), (int) px, (int) py) < reach) {
+                        return tick;
+                    }
+                }
+            }
+            return DODGE_HORIZON;
+        }
+
+        private static double endDistance(GameWorld world, int x, int y) {
+            Enemy nearest = nearestEnemy(world, x, y);
+            return nearest == null ? 0 : distance(nearest.getX(), nearest.getY(), x, y);
+        }
+    }
+
+    // A policy with a person's imprecision added, drawn from the seed
+    private static final class Noisy implements InputSource {
+        private final InputSource policy;
+        private final Random random;
+        private int lastMoves = 0;
+
+        Noisy(InputSource policy, long seed) {
+            this.policy = policy;
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public int next(GameWorld world, int[] target) {
+            if (random.nextDouble() < HESITATION) {
+                return lastMoves; // target still holds the last tick's
+            }
+            int moves = policy.next(world, target);
+            if (moves > 0) {
+                int size = world.getPlayer().getSize();
+                target[0] = clampX(world, target[0] + (int) Math.round(random.nextGaussian() * AIM_NOISE), size);
+                target[1] = clampY(world, target[1] + (int) Math.round(random.nextGaussian() * AIM_NOISE), size);
+            }
+            lastMoves = moves;
+            return moves;
+        }
+    }
+
+    private static final class Wander implements InputSource {
+        private final Random random;
+        private int ticksLeft = 0;
+
+        Wander(long seed) {
+            random = new Random(seed);
+        }
+
+        @Override
+        public int next(GameWorld world, int[] target) {
+            if (--ticksLeft <= 0) {
+                target[0] = random.nextInt(Math.max(1, world.getWidth()));
+                target[1] = random.nextInt(Math.max(1, world.getHeight()));
+                ticksLeft = 50 + random.nextInt(100);
+            }
+            return 1;
+        }
+    }
+
+    private static Enemy nearestEnemy(GameWorld world, int x, int y) {
+        Enemy nearest = null;
+        double nearestDistance = Double.MAX_VALUE;
+        for (Enemy enemy : world.getLevel().getEnemies()) {
+            double d = distance(enemy.getX(), enemy.getY(), x, y);
+            if (d < nearestDistance) {
+                nearestDistance = d;
+                nearest = enemy;
+            }
+        }
+        return nearest;
+    }
+
+    private static double distance(int x1, int y1, int x2, int y2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // Keeps a target where the whole player stays in the play area
+    private static int clampX(GameWorld world, int x, int size) {
+        return Math.max(size / 2, Math.min(x, world.getWidth() - size / 2));
+    }
+
+    private static int clampY(GameWorld world, int y, int size) {
+        return Math.max(size / 2, Math.min(y, world.getHeight() - size / 2));
+    }
+
+    public static void main(String[] args) throws IOException {
+        String policy = "dodge";
+        int games = 10;
+        long seed = 1;
+        Path out = Paths.get("replays");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--policy" -> policy = args[++i];
+                case "--games" -> games = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--out" -> out = Paths.get(args[++i]);
+                default -> {
+                    System.out.println("Unknown option " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+        create(policy, 0); // Fails on a bad name before anything is played
+        Files.createDirectories(out);
+        for (int game = 0; game < games; game++) {
+            long gameSeed = seed + game;
+            long start = System.nanoTime();
+            GameWorld world = new GameWorld(GameWorld.HEADLESS_WIDTH, GameWorld.HEADLESS_HEIGHT);
+            byte[] replay = playRecorded(world, policy, gameSeed);
+            Path file = out.resolve(String.format("autopilot-%s-%d.replay", policy, gameSeed));
+            Files.write(file, replay);
+            System.out.printf("%s: level %d, score %d, %d ticks, %.1f ms%n", file, world.getCurrentLevel() + 1,
+                    world.calculateFinalScore(), world.getTick(), (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    // Plays one game from the first level, taking a random upgrade after each,
+    // until the player dies, wins or spends MAX_LEVEL_TICKS on a level.
+    // Returns the replay.
+    private static byte[] playRecorded(GameWorld world, String policy, long seed) {
+        InputSource input = create(policy, seed);
+        Random upgrades = new Random(~seed);
+        world.startRun(seed);
+        byte[] start = world.saveSnapshot("Autopilot-" + policy, System.currentTimeMillis());
+        try {
+            world.restoreSnapshot(start); // As GamePanel does, so the replay starts from exactly this
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot restore a snapshot just made", e);
+        }
+        ReplayRecorder recorder = new ReplayRecorder(start, world.getTick());
+        int[] target = {world.getPlayer().getX(), world.getPlayer().getY()};
+        int levelTicks = 0;
+        while (true) {
+            int moves = input.next(world, target);
+            recorder.input(world.getTick(), target[0], target[1], moves);
+            GameWorld.Outcome outcome = world.step(target[0], target[1], moves);
+            recorder.stepped(world.getTick(), world.stateHash());
+            levelTicks++;
+            if (outcome == GameWorld.Outcome.LEVEL_CLEARED) {
+                Player player = world.getPlayer();
+                chooseUpgrade(upgrades).apply(player);
+                recorder.nextLevel(world.getTick(), player.getMissileDamage(), player.getAttackSpeed(), player.getMoveSpeed());
+                world.startNextLevel(player.getMissileDamage(), player.getAttackSpeed(), player.getMoveSpeed());
+                levelTicks = 0;
+            } else if (outcome != GameWorld.Outcome.PLAYING || levelTicks >= MAX_LEVEL_TICKS) {
+                return recorder.finish(world.getTick(), outcome);
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+// BalanceRunner.java
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Headless Monte Carlo runs for balancing the levels and upgrades. Plays many
+// whole games on a ForkJoinPool, each through its own GameWorld from its own
+// seed, with an Autopilot player that takes an Upgrade after every level, and
+// reports for each level the attempts, clear rate, time to clear and damage
+// taken. A game ends when the player dies, wins, or spends MAX_LEVEL_TICKS on
+// one level.
+//
+// The levels are the same in every game; a game's seed varies the player: the
+// policy's aim and reactions (see Autopilot) and, with --upgrade random, the
+// upgrades taken. A stationary player, which has neither, plays the same game
+// every time.
+//
+// Every game keeps its own world, policy and random numbers, and every task
+// counts into its own Tally, which are merged as the tasks join; nothing is
+// shared between games. Seeds follow from --seed, so a run gives the same
+// results whatever the number of threads.
+//
+// The results are also written as CSV, one row per level:
+//
+//   level,attempts,clears,clear_rate,clear_p10_s,clear_p50_s,clear_p90_s,damage_p50,damage_p90,damage_max
+//
+// Usage: java BalanceRunner [--games n] [--seed s] [--policy stationary|circle|flee|dodge|wander]
+//                           [--upgrade random|missile_damage|move_speed|attack_speed|none]
+//                           [--threads n] [--out file]
+public class BalanceRunner {
+    private static final String HEADER = "level,attempts,clears,clear_rate,clear_p10_s,clear_p50_s,clear_p90_s,damage_p50,damage_p90,damage_max";
+    private static final int MAX_LEVEL_TICKS = 30_000; // Five minutes of game time
+    private static final int GAMES_PER_TASK = 16;
+
+    private final int levels;
+    private final long seed;
+    private final String policy;
+    private final String upgrade;
+
+    private BalanceRunner(int levels, long seed, String policy, String upgrade) {
+        this.levels = levels;
+        this.seed = seed;
+        this.policy = policy;
+        this.upgrade = upgrade;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int games = 1000;
+        long seed = 1;
+        String policy = "dodge";
+        String upgrade = "random";
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path out = Paths.get("balance-results.csv");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games" -> games = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--policy" -> policy = args[++i];
+                case "--upgrade" -> upgrade = args[++i];
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--out" -> out = Paths.get(args[++i]);
+                default -> {
+                    System.out.println("Unknown option " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+        // Fail on a bad name before starting any game
+        Autopilot.create(policy, 0);
+        if (!upgrade.equals("random")) {
+            Upgrade.valueOf(upgrade.toUpperCase(Locale.ROOT));
+        }
+
+        int levels = new GameWorld(GameWorld.HEADLESS_WIDTH, GameWorld.HEADLESS_HEIGHT).getLevelCount();
+        BalanceRunner runner = new BalanceRunner(levels, seed, policy, upgrade);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        Tally tally;
+        try {
+            tally = pool.invoke(runner.new Games(0, games));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d games, policy %s, upgrades %s, %d threads, %.1f s (%.0f games/s)%n",
+                games, policy, upgrade, threads, seconds, games / seconds);
+        System.out.printf("Won %d, died %d, ran out of time %d%n", tally.won, tally.died, tally.timedOut);
+        System.out.println("level  attempts  clears   rate  clear p10/p50/p90 (s)  damage p50/p90/max");
+        try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (int level = 0; level < runner.levels; level++) {
+                LevelTally l = tally.levels[level];
+                if (l.attempts == 0) {
+                    continue;
+                }
+                int[] clearTicks = l.clearTicks.sorted();
+                int[] damage = l.damage.sorted();
+                double rate = (double) l.clears / l.attempts;
+                System.out.printf("%5d  %8d  %6d  %5.1f%%  %6.1f %6.1f %6.1f  %6d %6d %6d%n",
+                        level + 1, l.attempts, l.clears, rate * 100,
+                        seconds(percentile(clearTicks, 10)), seconds(percentile(clearTicks, 50)), seconds(percentile(clearTicks, 90)),
+                        percentile(damage, 50), percentile(damage, 90), percentile(damage, 100));
+                writer.write(String.format(Locale.ROOT, "%d,%d,%d,%.4f,%.2f,%.2f,%.2f,%d,%d,%d%n",
+                        level + 1, l.attempts, l.clears, rate,
+                        seconds(percentile(clearTicks, 10)), seconds(percentile(clearTicks, 50)), seconds(percentile(clearTicks, 90)),
+                        percentile(damage, 50), percentile(damage, 90), percentile(damage, 100)));
+            }
+        }
+        System.out.println("Results written to " + out);
+    }
+
+    // Plays games from (inclusive) to to (exclusive), splitting until a task
+    // has GAMES_PER_TASK or fewer
+    private final class Games extends RecursiveTask<Tally> {
+        private final int from;
+        private final int to;
+
+        Games(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                Tally tally = new Tally(levels);
+                for (int game = from; game < to; game++) {
+                    play(gameSeed(game), tally);
+                }
+                return tally;
+            }
+            int middle = (from + to) >>> 1;
+            Games second = new Games(middle, to);
+            second.fork();
+            Tally tally = new Games(from, middle).compute();
+            tally.add(second.join());
+            return tally;
+        }
+    }
+
+    // Seeds spread out, so nearby games do not start from related sequences
+    private long gameSeed(int game) {
+        return seed + game * 0x9E3779B97F4A7C15L;
+    }
+
+    // One game from the first level until it ends
+    private void play(long gameSeed, Tally tally) {
+        GameWorld world = new GameWorld(GameWorld.HEADLESS_WIDTH, GameWorld.HEADLESS_HEIGHT);
+        world.startRun(gameSeed);
+        InputSource player = Autopilot.create(policy, gameSeed);
+        Random choices = new Random(~gameSeed); // Upgrades picked, apart from the world's own randomness
+        int[] target = {world.getPlayer().getX(), world.getPlayer().getY()};
+        int levelTicks = 0;
+        while (true) {
+            int moves = player.next(world, target);
+            GameWorld.Outcome outcome = world.step(target[0], target[1], moves);
+            levelTicks++;
+            switch (outcome) {
+                case PLAYING -> {
+                    if (levelTicks >= MAX_LEVEL_TICKS) {
+                        tally.levels[world.getCurrentLevel()].attempt(false, levelTicks, damageTaken(world.getLevelStats()));
+                        tally.timedOut++;
+                        return;
+                    }
+                }
+                case LEVEL_CLEARED -> {
+                    record(world, tally, levelTicks);
+                    Player cleared = world.getPlayer();
+                    chooseUpgrade(choices).apply(cleared);
+                    world.startNextLevel(cleared.getMissileDamage(), cleared.getAttackSpeed(), cleared.getMoveSpeed());
+                    levelTicks = 0;
+                }
+                case DIED -> {
+                    record(world, tally, levelTicks);
+                    tally.died++;
+                    return;
+                }
+                case WON -> {
+                    record(world, tally, levelTicks);
+                    tally.won++;
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void record(GameWorld world, Tally tally, int levelTicks) {
+        CombatStats stats = world.getFinishedLevelStats();
+        tally.levels[world.getFinishedLevel() - 1].attempt(stats.get(CombatStats.CLEARS) > 0, levelTicks, damageTaken(stats));
+    }
+
+    private static int damageTaken(CombatStats stats) {
+        return (int) (stats.get(CombatStats.TAKEN_CONTACT) + stats.get(CombatStats.TAKEN_LIGHTNING)
+                + stats.get(CombatStats.TAKEN_FIRE) + stats.get(CombatStats.TAKEN_WIND));
+    }
+
+    private Upgrade chooseUpgrade(Random choices) {
+        if (upgrade.equals("random")) {
+            return Autopilot.chooseUpgrade(choices);
+        }
+        return Upgrade.valueOf(upgrade.toUpperCase(Locale.ROOT));
+    }
+
+    private static double seconds(int ticks) {
+        return ticks * GameWorld.TICK_MILLIS / 1000.0;
+    }
+
+    // Percentile of sorted values, 0 if there are none
+    private static int percentile(int[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    // Results of the games one task played, or of several tasks merged
+    private static final class Tally {
+        final LevelTally[] levels;
+        int won;
+        int died;
+        int timedOut;
+
+        Tally(int levelCount) {
+            levels = new LevelTally[levelCount];
+            for (int i = 0; i < levelCount; i++) {
+                levels[i] = new LevelTally();
+            }
+        }
+
+        void add(Tally other) {
+            for (int i = 0; i < levels.length; i++) {
+                levels[i].add(other.levels[i]);
+            }
+            won += other.won;
+            died += other.died;
+            timedOut += other.timedOut;
+        }
+    }
+
+    private static final class LevelTally {
+        int attempts;
+        int clears;
+        final Samples clearTicks = new Samples(); // Of the attempts that cleared the level
+        final Samples damage = new Samples();     // Of every attempt
+
+        void attempt(boolean cleared, int ticks, int damageTaken) {
+            attempts++;
+            if (cleared) {
+                clears++;
+                clearTicks.add(ticks);
+            }
+            damage.add(damageTaken);
+        }
+
+        void add(LevelTally other) {
+            attempts += other.attempts;
+            clears += other.clears;
+            clearTicks.addAll(other.clearTicks);
+            damage.addAll(other.damage);
+        }
+    }
+
+    // A growing list of ints
+    private static final class Samples {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(Samples other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        int[] sorted() {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+// CombatStats.java
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Combat counters for one level, updated by GameWorld as the game ticks. Each
+// event is a single increment of a long in one array, so recording allocates
+// nothing; at the end of the level UserManager adds the counters to the user's
+// totals and the object is reset for the next level. The same layout holds
+// those totals when they are read back from CombatStatsStore.
+//
+// Only the game loop touches a live instance, so nothing is synchronized.
+public class CombatStats {
+    // Counter indexes
+    public static final int ATTEMPTS = 0;          // Times the level was started
+    public static final int CLEARS = 1;            // Times every enemy was beaten
+    public static final int MISSILES_FIRED = 2;
+    public static final int MISSILE_HITS = 3;
+    public static final int MISSILE_DAMAGE = 4;    // After armor, as taken off enemy HP
+    public static final int RICOCHET_DAMAGE = 5;   // Ricochets hitting enemies, after armor
+    public static final int TAKEN_CONTACT = 6;     // Damage taken from touching enemies
+    public static final int TAKEN_LIGHTNING = 7;   // Damage taken from each Ricochet style
+    public static final int TAKEN_FIRE = 8;
+    public static final int TAKEN_WIND = 9;
+    public static final int PLAY_MILLIS = 10;      // Game time played, TICK_MILLIS per tick, so pauses never count
+    public static final int TICKS = 11;
+    public static final int COUNTERS = 12;
+
+    private final long[] counters = new long[COUNTERS];
+
+    public void tick() {
+        counters[TICKS]++;
+        counters[PLAY_MILLIS] += GameWorld.TICK_MILLIS;
+    }
+
+    public void missileFired() {
+        counters[MISSILES_FIRED]++;
+    }
+
+    // damage is what the enemy actually lost, as returned by Enemy.takeDamage()
+    public void missileHit(int damage) {
+        counters[MISSILE_HITS]++;
+        counters[MISSILE_DAMAGE] += damage;
+    }
+
+    public void ricochetHit(int damage) {
+        counters[RICOCHET_DAMAGE] += damage;
+    }
+
+    // damage is the health the player actually lost, which stops at 0
+    public void contactDamageTaken(int damage) {
+        counters[TAKEN_CONTACT] += damage;
+    }
+
+    public void ricochetDamageTaken(int style, int damage) {
+        switch (style) {
+            case Ricochet.LIGHTNING_STYLE -> counters[TAKEN_LIGHTNING] += damage;
+            case Ricochet.FIRE_STYLE -> counters[TAKEN_FIRE] += damage;
+            case Ricochet.WIND_STYLE -> counters[TAKEN_WIND] += damage;
+        }
+    }
+
+    // Marks the end of one attempt at the level
+    public void finish(boolean cleared) {
+        counters[ATTEMPTS]++;
+        if (cleared) {
+            counters[CLEARS]++;
+        }
+    }
+
+    public long get(int counter) {
+        return counters[counter];
+    }
+
+    // Hit rate of missiles fired, 0 to 1
+    public double getAccuracy() {
+        return counters[MISSILES_FIRED] == 0 ? 0 : (double) counters[MISSILE_HITS] / counters[MISSILES_FIRED];
+    }
+
+    public long getDamageTaken() {
+        return counters[TAKEN_CONTACT] + counters[TAKEN_LIGHTNING] + counters[TAKEN_FIRE] + counters[TAKEN_WIND];
+    }
+
+    public void reset() {
+        Arrays.fill(counters, 0);
+    }
+
+    // Adds every counter to totals, which has COUNTERS entries
+    void addTo(long[] totals) {
+        for (int i = 0; i < COUNTERS; i++) {
+            totals[i] += counters[i];
+        }
+    }
+
+    // Appends the counters to a session snapshot
+    void writeState(ByteBuffer out) {
+        out.put((byte) COUNTERS);
+        for (long counter : counters) {
+            out.putLong(counter);
+        }
+    }
+
+    // Counters a snapshot has beyond COUNTERS are skipped, missing ones read as zero
+    static CombatStats readState(ByteBuffer in) {
+        CombatStats stats = new CombatStats();
+        int count = in.get() & 0xFF;
+        for (int i = 0; i < count; i++) {
+            long counter = in.getLong();
+            if (i < COUNTERS) {
+                stats.counters[i] = counter;
+            }
+        }
+        return stats;
+    }
+
+    static CombatStats of(long[] totals) {
+        CombatStats stats = new CombatStats();
+        System.arraycopy(totals, 0, stats.counters, 0, COUNTERS);
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("attempts=%d clears=%d fired=%d hits=%d (%.0f%%) dealt=%d+%d taken=%d/%d/%d/%d time=%ds",
+                counters[ATTEMPTS], counters[CLEARS], counters[MISSILES_FIRED], counters[MISSILE_HITS],
+                getAccuracy() * 100, counters[MISSILE_DAMAGE], counters[RICOCHET_DAMAGE], counters[TAKEN_CONTACT],
+                counters[TAKEN_LIGHTNING], counters[TAKEN_FIRE], counters[TAKEN_WIND], counters[PLAY_MILLIS] / 1000);
+    }
+}
@@ -0,0 +1,210 @@
+// CombatStatsStore.java
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+// Combat totals for every user and level, one small file per user under
+// STATS_DIR (named like the score history files). A file holds the
+// CombatStats counters of each level as little-endian longs:
+//
+//   magic "DTCS" (4) | version (1) | level count (1) | counter count (1) | levels x counters x 8
+//
+// Finished levels are added to per-user deltas in memory. write() adds the
+// deltas to what is in the file and replaces it, under the users.dat file
+// lock, so sessions in other processes add to the same totals rather than
+// overwriting them. Callers synchronize access to everything except write().
+public class CombatStatsStore {
+    private static final String STATS_DIR = "stats";
+    private static final byte[] MAGIC = {'D', 'T', 'C', 'S'};
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 3;
+    private static final int MAX_LEVELS = 255;
+
+    private final Path directory = Paths.get(STATS_DIR);
+    private final Map<String, long[][]> unsaved = new HashMap<>(); // [level - 1][counter], grown as needed
+    private final Set<String> deleted = new HashSet<>();
+
+    // Adds one finished attempt at level (1-based)
+    public void add(String username, int level, CombatStats stats) {
+        if (level < 1 || level > MAX_LEVELS) {
+            return;
+        }
+        long[][] levels = grow(unsaved.get(username), level);
+        unsaved.put(username, levels);
+        if (levels[level - 1] == null) {
+            levels[level - 1] = new long[CombatStats.COUNTERS];
+        }
+        stats.addTo(levels[level - 1]);
+    }
+
+    public void delete(String username) {
+        unsaved.remove(username);
+        deleted.add(username);
+    }
+
+    // Totals for level (1-based), saved and unsaved
+    public CombatStats get(String username, int level) {
+        long[] totals = new long[CombatStats.COUNTERS];
+        if (!deleted.contains(username)) {
+            try {
+                addLevel(read(fileFor(username)), level, totals);
+            } catch (IOException e) {
+                System.err.println("Error reading combat stats for " + username + ": " + e.getMessage());
+            }
+        }
+        addLevel(unsaved.get(username), level, totals);
+        return CombatStats.of(totals);
+    }
+
+    public Map<String, long[][]> takeUnsaved() {
+        Map<String, long[][]> taken = new HashMap<>(unsaved);
+        unsaved.clear();
+        return taken;
+    }
+
+    public Set<String> takeDeleted() {
+        Set<String> taken = new HashSet<>(deleted);
+        deleted.clear();
+        return taken;
+    }
+
+    // Puts deltas that could not be written back, to be tried again next save
+    public void restore(Map<String, long[][]> deltas) {
+        for (Map.Entry<String, long[][]> entry : deltas.entrySet()) {
+            long[][] levels = entry.getValue();
+            for (int i = 0; i < levels.length; i++) {
+                if (levels[i] != null) {
+                    add(entry.getKey(), i + 1, CombatStats.of(levels[i]));
+                }
+            }
+        }
+    }
+
+    // Deletes the files in deletedUsers, then adds deltas to each user's file.
+    // Each user is removed from deltas once saved, so if this fails, what is
+    // left can be restore()d without counting anything twice.
+    public void write(Set<String> deletedUsers, Map<String, long[][]> deltas) throws IOException {
+        for (String username : deletedUsers) {
+            Files.deleteIfExists(fileFor(username));
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(directory);
+        for (Iterator<Map.Entry<String, long[][]>> it = deltas.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, long[][]> entry = it.next();
+            Path file = fileFor(entry.getKey());
+            long[][] totals = read(file);
+            long[][] delta = entry.getValue();
+            totals = grow(totals, delta.length);
+            for (int i = 0; i < delta.length; i++) {
+                if (delta[i] != null) {
+                    if (totals[i] == null) {
+                        totals[i] = new long[CombatStats.COUNTERS];
+                    }
+                    addLevel(delta, i + 1, totals[i]);
+                }
+            }
+            writeFile(file, totals);
+            it.remove();
+        }
+    }
+
+    private static void addLevel(long[][] levels, int level, long[] totals) {
+        if (levels == null || level < 1 || level > levels.length || levels[level - 1] == null) {
+            return;
+        }
+        long[] counters = levels[level - 1];
+        for (int i = 0; i < CombatStats.COUNTERS; i++) {
+            totals[i] += counters[i];
+        }
+    }
+
+    private static long[][] grow(long[][] levels, int levelCount) {
+        if (levels == null) {
+            return new long[levelCount][];
+        }
+        if (levels.length >= levelCount) {
+            return levels;
+        }
+        long[][] grown = new long[levelCount][];
+        System.arraycopy(levels, 0, grown, 0, levels.length);
+        return grown;
+    }
+
+    // Totals in file, or null if there is none. A file from a version with
+    // fewer counters reads as zeros for the new ones.
+    private static long[][] read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < HEADER_SIZE || !startsWithMagic(data) || data.get(MAGIC.length) != VERSION) {
+            System.err.println("Replacing unreadable combat stats file " + file);
+            return null;
+        }
+        int levelCount = data.get(MAGIC.length + 1) & 0xFF;
+        int counterCount = data.get(MAGIC.length + 2) & 0xFF;
+        if (data.remaining() < HEADER_SIZE + levelCount * counterCount * 8L) {
+            System.err.println("Replacing truncated combat stats file " + file);
+            return null;
+        }
+        data.position(HEADER_SIZE);
+        long[][] levels = new long[levelCount][CombatStats.COUNTERS];
+        for (long[] counters : levels) {
+            for (int i = 0; i < counterCount; i++) {
+                long value = data.getLong();
+                if (i < CombatStats.COUNTERS) {
+                    counters[i] = value;
+                }
+            }
+        }
+        return levels;
+    }
+
+    // Writes a temp file and renames it over file, so a crash leaves the old totals
+    private static void writeFile(Path file, long[][] levels) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + levels.length * CombatStats.COUNTERS * 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        data.put(MAGIC).put(VERSION).put((byte) levels.length).put((byte) CombatStats.COUNTERS);
+        for (long[] counters : levels) {
+            for (int i = 0; i < CombatStats.COUNTERS; i++) {
+                data.putLong(counters == null ? 0 : counters[i]);
+            }
+        }
+        data.flip();
+        Path tempPath = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+            out.force(false);
+        }
+        Files.move(tempPath, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static boolean startsWithMagic(ByteBuffer data) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Path fileFor(String username) {
+        return directory.resolve(ScoreHistoryStore.fileNameFor(username) + ".stats");
+    }
+}
@@ -6,6 +6,7 @@ import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import javax.imageio.ImageIO;
 
 public class Enemy {
@@ -16,6 +17,8 @@ public class Enemy {
     private BufferedImage enemyImage;
     private boolean imageLoaded = false;
     private boolean showHitbox = true; // Toggle for debugging
+    // Read once and shared by every enemy, so building a level touches no files
+    private static final BufferedImage ENEMY_IMAGE = loadImage();
     
     public Enemy(int x, int y, int size, int speed, int damage, int hp, int armor) {
         // Validate parameters
@@ -34,16 +37,32 @@ public class Enemy {
         this.maxHp = hp;
         this.armor = armor;
         
-        // Load enemy image
+        this.enemyImage = ENEMY_IMAGE;
+        this.imageLoaded = ENEMY_IMAGE != null;
+    }
+
+    private static BufferedImage loadImage() {
         try {
-            enemyImage = ImageIO.read(new File("images/enemy.png"));
-            imageLoaded = true;
+            return ImageIO.read(new File("images/enemy.png"));
         } catch (IOException e) {
             System.err.println("Error loading enemy image: " + e.getMessage());
-            enemyImage = null;
-            imageLoaded = false;
+            return null;
         }
     }
+
+    // Appends the enemy to a session snapshot
+    void writeState(ByteBuffer out) {
+        out.putInt(x).putInt(y).putInt(size).putInt(speed).putInt(damage).putInt(maxHp).putInt(armor).putInt(hp);
+    }
+
+    // Throws IllegalArgumentException for values no enemy can have
+    static Enemy readState(ByteBuffer in) {
+        Enemy enemy = new Enemy(in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt());
+        int hp = in.getInt();
+        if (hp <= 0 || hp > enemy.maxHp) throw new IllegalArgumentException("HP out of range");
+        enemy.hp = hp;
+        return enemy;
+    }
     
     public void update(Player player, int screenWidth, int screenHeight) {
         if (player == null) return;
@@ -142,11 +161,13 @@ public class Enemy {
         return distance < (size / 2.0 + player.getSize() / 2.0);
     }
     
-    public void takeDamage(int damage) {
-        if (damage <= 0) return;
+    // Returns the HP actually lost, after armor
+    public int takeDamage(int damage) {
+        if (damage <= 0) return 0;
         
-        int actualDamage = Math.max(1, damage - armor);
-        hp = Math.max(0, hp - actualDamage);
+        int actualDamage = Math.min(hp, Math.max(1, damage - armor));
+        hp -= actualDamage;
+        return actualDamage;
     }
     
     public boolean isDead() {
@@ -179,6 +200,10 @@ public class Enemy {
         return size;
     }
     
+    public int getSpeed() {
+        return speed;
+    }
+    
     public int getHp() {
         return hp;
     }
@@ -1,8 +1,8 @@
 import java.awt.AWTException;
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
 import java.awt.IllegalComponentStateException;
 import java.awt.Image;
 import java.awt.Robot;
@@ -10,22 +10,32 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.image.ImageObserver;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import javax.swing.AbstractAction;
 import javax.swing.ActionMap;
+import javax.swing.DefaultListModel;
 import javax.swing.InputMap;
 import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
 import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 public class GamePanel extends JPanel {
-    private Player player;
-    private final List<Level> levels;
-    private int currentLevel;
-    private int lastPlayedLevel; // Store the last played level
+    private final GameWorld world = new GameWorld(0, 0); // Everything in play; this panel shows it and feeds it input
     private boolean gameOver, gameWon, paused;
     private String currentUsername;
     private final Runnable onLevelComplete;
@@ -33,43 +43,63 @@ public class GamePanel extends JPanel {
     private final UserManager userManager;
     private Timer gameTimer;
     private boolean gameStarted = false;
-    private long lastMissileFiredTime = 0;
+    // Mouse input since the last tick; the world takes it at the next tick
+    private int targetX, targetY;
+    private int pendingMoves = 0;
+    private InputSource inputSource; // Plays instead of the mouse when set
+    private final int[] sourceTarget = new int[2];
+    private final SessionFile sessionFile = new SessionFile(Paths.get(SESSION_FILE));
+    private byte[] levelCheckpoint; // Snapshot taken when the level being played began
+    private long lastAutosaveTime = 0;
+    private boolean savesToFiles = true; // false leaves the session file and replays alone
+    private static final String SESSION_FILE = "session.dat";
+    private static final long AUTOSAVE_INTERVAL = 2000; // Milliseconds between snapshots saved during play
+    private final RewindBuffer rewindBuffer = new RewindBuffer(REWIND_TICKS, REWIND_KEYFRAME_INTERVAL, REWIND_MAX_BYTES);
+    private boolean rewinding = false; // R is held
+    private boolean rewound = false; // The world went back since the recording last heard of it
+    private static final int REWIND_TICKS = 1000; // Ten seconds of 10 ms ticks
+    private static final int REWIND_KEYFRAME_INTERVAL = 50;
+    private static final long REWIND_MAX_BYTES = 4 << 20;
+    private static final int REWIND_SPEED = 2; // Ticks stepped back per tick while rewinding
+    private ReplayRecorder recorder; // The run being played
+    private static final String REPLAY_DIRECTORY = "replays";
+    private static final int REPLAYS_KEPT = 100;
+    private static final DateTimeFormatter REPLAY_NAME_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
     private static final long serialVersionUID = 1L;
-    private static final long MISSILE_COOLDOWN = 200; // Milliseconds between missiles
     private Runnable onVictory;
     private static final float DEFAULT_MISSILE_FIRE_VOLUME = 0.6f;
-    public static final int SOUND_MISSILE_HIT = 1;
-    private final List<Ricochet> ricochets;
+    private static final int MAX_USERNAME_SUGGESTIONS = 8;
+    public static final int SOUND_MISSILE_HIT = SoundBank.SOUND_MISSILE_HIT;
 
     public boolean isGameWon() {
         return gameWon;
     }
 
-    public GamePanel(Runnable onLevelComplete, Runnable onGameOver, Runnable onVictory, UserManager userManager) {
+    // username is the player's name, or null to ask for it
+    public GamePanel(Runnable onLevelComplete, Runnable onGameOver, Runnable onVictory, UserManager userManager, String username) {
         this.onLevelComplete = onLevelComplete;
         this.onGameOver = onGameOver;
         this.onVictory = onVictory;
         this.userManager = userManager;
-        this.levels = new ArrayList<>();
-        this.currentLevel = 0;
-        this.lastPlayedLevel = 0; // Initialize last played level
         this.gameWon = false;
         this.gameOver = false;
         this.paused = false;
-        this.ricochets = new ArrayList<>();
     
-        initializeLevels();
         loadSoundEffects();
-        // Prompt for username
-        promptUsername();
+        if (username == null) {
+            // Prompt for username
+            promptUsername();
+        } else {
+            currentUsername = username;
+            userManager.createUser(currentUsername, 0);
+        }
     
         // Add mouse motion listener to track mouse movement
         addMouseMotionListener(new MouseMotionAdapter() {
             @Override
             public void mouseMoved(MouseEvent e) {
-                if (!gameOver && !paused && gameStarted) {
-                    player.move(e.getX(), e.getY()); // Move player to mouse position
-                    repaint(); // Redraw the panel
+                if (!gameOver && !paused && gameStarted && !rewinding && inputSource == null) {
+                    queueMove(e.getX(), e.getY()); // Player moves towards the mouse at the next tick
                 }
             }
         });
@@ -81,11 +111,8 @@ public class GamePanel extends JPanel {
         createGameTimer();
     }
     private void loadSoundEffects() {
-        // Load missile fire sound
-        SoundUtility.loadSE(Missile.SOUND_MISSILE_FIRE, "sound/laserSE.wav");
+        // Effects come from the shared sound bank loaded in Main; just set game volumes
         SoundUtility.setSoundVolume(Missile.SOUND_MISSILE_FIRE, DEFAULT_MISSILE_FIRE_VOLUME);
-        // Fix the path for missile hit sound
-        SoundUtility.loadSE(SOUND_MISSILE_HIT, "sound/HitSE.wav");
         SoundUtility.setSoundVolume(SOUND_MISSILE_HIT, DEFAULT_MISSILE_FIRE_VOLUME);
     }
     
@@ -110,6 +137,23 @@ public class GamePanel extends JPanel {
         
         // Also allow Space bar to pause
         inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, 0), "pause");
+
+        // Hold R to rewind, play goes on from where it is let go
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_R, 0), "rewind");
+        actionMap.put("rewind", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                rewinding = true;
+            }
+        });
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_R, 0, true), "stopRewind");
+        actionMap.put("stopRewind", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                rewinding = false;
+                recordRewind();
+            }
+        });
     }
     
     public void cleanup() {
@@ -163,7 +207,7 @@ public class GamePanel extends JPanel {
                     // Update player position to match the new confined position
                     int compX = newX - compScreenLocation.x;
                     int compY = newY - compScreenLocation.y;
-                    player.move(compX, compY);
+                    queueMove(compX, compY);
                 }
             }
         } catch (AWTException | IllegalComponentStateException | NullPointerException | IllegalArgumentException e) {
@@ -180,12 +224,67 @@ public class GamePanel extends JPanel {
         } else {
             gameTimer.start();
         }
+        if (recorder != null && gameStarted && !gameOver) {
+            recordRewind();
+            recorder.pauseToggled(world.getTick());
+        }
         repaint();
         System.out.println("Game Paused: " + paused);
     }
 
+    // Each mouse movement is one step of the player towards the mouse
+    private void queueMove(int x, int y) {
+        targetX = x;
+        targetY = y;
+        pendingMoves++;
+    }
+
     private void promptUsername() {
-        currentUsername = JOptionPane.showInputDialog("Enter your username:");
+        JTextField nameField = new JTextField(20);
+        DefaultListModel<String> suggestions = new DefaultListModel<>();
+        JList<String> suggestionList = new JList<>(suggestions);
+        suggestionList.setVisibleRowCount(5);
+        suggestionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        
+        // Autocomplete existing players from the username prefix index as the user types
+        nameField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                updateSuggestions();
+            }
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                updateSuggestions();
+            }
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                updateSuggestions();
+            }
+            private void updateSuggestions() {
+                suggestions.clear();
+                String typed = nameField.getText();
+                if (!typed.isEmpty()) {
+                    for (String name : userManager.findUsernamesByPrefix(typed, MAX_USERNAME_SUGGESTIONS)) {
+                        suggestions.addElement(name);
+                    }
+                }
+            }
+        });
+        suggestionList.addListSelectionListener(e -> {
+            String selected = suggestionList.getSelectedValue();
+            if (!e.getValueIsAdjusting() && selected != null) {
+                SwingUtilities.invokeLater(() -> nameField.setText(selected));
+            }
+        });
+        
+        JPanel promptPanel = new JPanel(new BorderLayout(0, 5));
+        promptPanel.add(new JLabel("Enter your username:"), BorderLayout.NORTH);
+        promptPanel.add(nameField, BorderLayout.CENTER);
+        promptPanel.add(new JScrollPane(suggestionList), BorderLayout.SOUTH);
+        
+        int choice = JOptionPane.showConfirmDialog(null, promptPanel, "Username",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        currentUsername = choice == JOptionPane.OK_OPTION ? nameField.getText().trim() : null;
         if (currentUsername == null || currentUsername.isEmpty()) {
             currentUsername = "Guest";
         }
@@ -198,14 +297,10 @@ public class GamePanel extends JPanel {
         gameWon = false;
         paused = false;
         
-        // Reset player with initial stats
-        player = new Player(500, 500, 80, 100, 60, 700, 5); // Initial values
-        
-        currentLevel = 0;
-        lastPlayedLevel = 0;
-        
-        initializeLevels(); // Re-initialize levels
-        ricochets.clear(); // Clear any existing ricochets
+        syncSize();
+        world.startRun(System.nanoTime()); // Fresh player, levels and counters
+        checkpoint();
+        startRecording();
         
         if (gameTimer.isRunning()) {
             gameTimer.stop();
@@ -216,119 +311,80 @@ public class GamePanel extends JPanel {
         // Ensure panel has focus
         requestFocusInWindow();
     }
+    // Lets source play instead of the mouse from the next tick; null gives the mouse back
+    public void setInputSource(InputSource source) {
+        inputSource = source;
+        pendingMoves = 0;
+    }
+
+    // Whether play is saved to the session file and replays; off for runs
+    // that must leave the player's files as they were
+    public void setSavesToFiles(boolean savesToFiles) {
+        this.savesToFiles = savesToFiles;
+    }
+
     public void setOnVictory(Runnable onVictory) {
         this.onVictory = onVictory;
     }
     private void createGameTimer() {
         gameTimer = new Timer(10, e -> {
             if (!gameOver && gameStarted && !paused) {
-                updateGame();
+                if (rewinding) {
+                    stepBack();
+                } else {
+                    updateGame();
+                }
                 repaint();
             }
         });
     }
     private void updateGame() {
-        confineCursor();
-        player.update();
-        Level level = levels.get(currentLevel);
-        List<Enemy> enemies = level.getEnemies();
-        
-        // Update last played level
-        lastPlayedLevel = Math.max(lastPlayedLevel, currentLevel);
-    
-        // Move enemies
-        for (Enemy enemy : new ArrayList<>(enemies)) {
-            enemy.moveTowards(player.getX(), player.getY());
-        
-            if (enemy.collidesWith(player)) {
-                player.reduceHealth(enemy.getDamage());
-                if (player.getHealth() <= 0) {
-                    gameOver = true;
-                    gameTimer.stop();
-                    userManager.updateUserScore(currentUsername, calculateFinalScore());
-                    onGameOver.run(); // Trigger game-over screen
-                    return;
-                }
-            }
-        }
-       
-        // Update ricochets
-        for (Ricochet ricochet : new ArrayList<>(ricochets)) {
-            ricochet.move(getWidth(), getHeight());
-            
-            // Check collision with player
-            if (ricochet.collidesWith(player.getX(), player.getY(), player.getSize())) {
-                player.reduceHealth(ricochet.getDamage());
-                if (player.getHealth() <= 0) {
-                    gameOver = true;
-                    gameTimer.stop();
-                    userManager.updateUserScore(currentUsername, calculateFinalScore());
-                    onGameOver.run();
-                    return;
-                }
-            }
-            
-            // Check collision with enemies
-            for (Enemy enemy : new ArrayList<>(enemies)) {
-                if (ricochet.collidesWith(enemy.getX(), enemy.getY(), enemy.getSize())) {
-                    enemy.takeDamage(ricochet.getDamage());
-                    if (enemy.isDead()) {
-                        enemies.remove(enemy);
-                    }
-                }
-            }
+        SoundUtility.beginTick();
+        recordRewind();
+        syncSize();
+        if (inputSource == null) {
+            confineCursor();
+        } else {
+            pendingMoves = inputSource.next(world, sourceTarget);
+            targetX = sourceTarget[0];
+            targetY = sourceTarget[1];
         }
-       
-        // Fire missiles with cooldown
+        int moves = pendingMoves;
+        pendingMoves = 0;
+        recorder.input(world.getTick(), targetX, targetY, moves);
+        GameWorld.Outcome outcome = world.step(targetX, targetY, moves);
+        recorder.stepped(world.getTick(), world.stateHash());
+
+        byte[] state = saveState();
+        rewindBuffer.record(state);
         long currentTime = System.currentTimeMillis();
-        if (!enemies.isEmpty() && currentTime - lastMissileFiredTime >= MISSILE_COOLDOWN) {
-            Enemy nearestEnemy = findNearestEnemy(enemies);
-            if (nearestEnemy != null) {
-                player.fireMissile(nearestEnemy.getX(), nearestEnemy.getY());
-                lastMissileFiredTime = currentTime;
+        if (outcome == GameWorld.Outcome.PLAYING && currentTime - lastAutosaveTime >= AUTOSAVE_INTERVAL) {
+            if (savesToFiles) {
+                sessionFile.save(state);
             }
+            lastAutosaveTime = currentTime;
         }
-        // Update missiles
-        List<Missile> missiles = player.getMissiles();
-        for (Missile missile : new ArrayList<>(missiles)) {
-            if (!missile.isActive()) {
-                missiles.remove(missile);
-                continue;
-            }
-            Enemy targetEnemy = findNearestEnemy(enemies);
-            if (targetEnemy != null) {
-                missile.moveTowards(targetEnemy.getX(), targetEnemy.getY());
-                // Check for collisions between missile and enemies
-                for (Enemy enemy : new ArrayList<>(enemies)) {
-                    if (missileCollidesWithEnemy(missile, enemy)) {
-                        // Play impact sound BEFORE modifying the enemy and missile
-                        SoundUtility.playSE(SOUND_MISSILE_HIT);
-                        
-                        enemy.takeDamage(missile.getDamage());
-                        missile.setActive(false);
-                        
-                        if (enemy.isDead()) {
-                            enemies.remove(enemy); // Remove dead enemy
-                        }
-                        break;
-                    }
-                }
+
+        switch (outcome) {
+            case DIED -> {
+                gameOver = true;
+                gameTimer.stop();
+                finishLevelStats();
+                finishRun(calculateFinalScore(), outcome);
+                onGameOver.run(); // Trigger game-over screen
             }
-        }
-        // Check if level is complete
-        if (enemies.isEmpty()) {
-            if (currentLevel < levels.size() - 1) {
-                currentLevel++;
+            case LEVEL_CLEARED -> {
+                finishLevelStats();
                 gameTimer.stop();
-                // Initialize ricochets for the next level
-                initializeRicochets();
                 onLevelComplete.run();
-            } else {
-                // Level 10 completed - game is won
+            }
+            case WON -> {
+                // Level 12 completed - game is won
+                finishLevelStats();
                 gameOver = true;
                 gameWon = true;
                 gameTimer.stop();
-                userManager.updateUserScore(currentUsername, calculateFinalScore() * 2); // Bonus for winning
+                finishRun(calculateFinalScore() * 2, outcome); // Bonus for winning
                 
                 // Call victory screen instead of game over screen
                 SwingUtilities.invokeLater(() -> {
@@ -339,90 +395,38 @@ public class GamePanel extends JPanel {
                     }
                 });
             }
+            case PLAYING -> { }
         }
     }
-    private void initializeRicochets() {
-        ricochets.clear();
-    
-        int screenWidth = getWidth();
-        int screenHeight = getHeight();
-switch (currentLevel + 1) {
-    case 6 -> {
-        ricochets.add(new Ricochet(screenWidth / 2, 0, 15, 5, 6, 5, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(0, screenHeight / 3, 15, 7, 4, 6, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(screenWidth, screenHeight / 2, 15, -6, 5, 7, Ricochet.FIRE_STYLE));
-    }
-    case 7 -> {
-        ricochets.add(new Ricochet(0, screenHeight / 3, 15, 17, 11, 6, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(screenWidth, screenHeight / 3, 15, -7,11, 7, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 2, 0, 15, 9, 9, 8, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 2, screenHeight, 15, 1, -9, 9, Ricochet.FIRE_STYLE));
-    }
-    case 8 -> {
-        ricochets.add(new Ricochet(100, 100, 15, 15, 15, 8, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(screenWidth - 100, 100, 15, -7, 15, 8, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(100, screenHeight - 100, 15, 7, -7, 9, Ricochet.FIRE_STYLE));
-        ricochets.add(new Ricochet(screenWidth - 100, screenHeight - 100, 15, -7, -7, 7, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 2, 0, 15, 9, 9, 1, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 2, screenHeight, 15, 9, -9, 8, Ricochet.FIRE_STYLE));
-    }
-    case 9 -> {
-        ricochets.add(new Ricochet(100, 100, 15, 15, 15, 7, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(screenWidth - 100, 100, 15, -7, 15, 8, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(200, screenHeight / 2, 15, 13, 8, 1, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 2, 100, 15, 0, 6, 10, Ricochet.FIRE_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 4, 0, 15, 4, 4, 9, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(screenWidth, screenHeight / 4, 15, -8, 8, 8, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(0, screenHeight - 200, 15, 10, -5, 9, Ricochet.FIRE_STYLE));
-    }
-    case 10 -> {
-        ricochets.add(new Ricochet(100, 100, 15, 15, 15, 10, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(screenWidth - 100, 100, 15, -7, 15, 11, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(screenWidth, screenHeight / 3, 10, -9, 4, 5, Ricochet.FIRE_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 4, 0, 25, 5, 7, 7, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 2, screenHeight, 15, 6, -6, 8, Ricochet.FIRE_STYLE));
-        ricochets.add(new Ricochet(0, screenHeight / 2, 20, 8, 3, 7, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 2, 0, 12, -4, 10, 6, Ricochet.LIGHTNING_STYLE));
-    }
-    case 11 -> {
-        ricochets.add(new Ricochet(100, 100, 15, 15, 15, 7, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(screenWidth - 100, 100, 15, -7, 15, 7, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(100, 0, 15, 11, 8, 6, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(300, 0, 15, 11, 9, 5, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(500, 0, 15, 11, 8, 9, Ricochet.FIRE_STYLE));
-        ricochets.add(new Ricochet(0, 150, 15, 9, 0, 7, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(0, 350, 15, 10, 0, 6, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(0, 550, 15, 9, 0, 6, Ricochet.FIRE_STYLE));
-    }
-    case 12 -> {
-        ricochets.add(new Ricochet(100, 100, 15, 11, 9, 6, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(screenWidth, screenHeight / 3, 20, -13, 5, 5, Ricochet.FIRE_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 2, screenHeight, 25, 4, -11, 5, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 7, 0, 15, 5, 10, 8, Ricochet.LIGHTNING_STYLE));
-        ricochets.add(new Ricochet(screenWidth - 200, screenHeight - 200, 12, -10, -10, 8, Ricochet.FIRE_STYLE));
-        ricochets.add(new Ricochet(0, screenHeight / 4, 17, 15, 0, 9, Ricochet.WIND_STYLE));
-        ricochets.add(new Ricochet(screenWidth / 5, 0, 12, 0, 10, 7, Ricochet.LIGHTNING_STYLE));
-    }
-}
+    // Adds the counters of the level just won or lost to the user's totals
+    private void finishLevelStats() {
+        userManager.recordLevelStats(currentUsername, world.getFinishedLevel(), world.getFinishedLevelStats());
+    }
+    // Saves the score of a run that just ended, adds it to the user's history
+    // and keeps its replay
+    private void finishRun(int score, GameWorld.Outcome outcome) {
+        userManager.updateUserScore(currentUsername, score);
+        userManager.recordRun(currentUsername, score, world.getLastPlayedLevel() + 1, world.getRunTime());
+        if (!savesToFiles) {
+            return;
+        }
+        sessionFile.delete(); // Nothing left to resume
+        String name = LocalDateTime.now().format(REPLAY_NAME_TIME) + "-" + currentUsername.replaceAll("[^A-Za-z0-9_-]", "_") + ".replay";
+        ReplayRecorder.save(Paths.get(REPLAY_DIRECTORY), name, recorder.finish(world.getTick(), outcome), REPLAYS_KEPT);
     }
     
     public int calculateFinalScore() {
-        // Example scoring logic: Use the player's health and current level to calculate the score
-        return player.getHealth() * 10 + (currentLevel + 1) * 100;
+        return world.calculateFinalScore();
     }
     public void startNextLevel() {
-        if (currentLevel < levels.size()) {
+        if (world.getCurrentLevel() < world.getLevelCount()) {
             gameOver = false;
             // Preserve player stats between levels EXCEPT health which resets to 100
-            int currentMissileDamage = player.getMissileDamage();
-            int currentAttackSpeed = player.getAttackSpeed();
-            int currentMoveSpeed = player.getMoveSpeed();
-            
-            // Create new player with full health (100) but keep other upgrades
-            player = new Player(500, 500, 80, 100, currentMissileDamage, currentAttackSpeed, currentMoveSpeed);
-            
-            // Initialize ricochets for the new level
-            initializeRicochets();
+            Player player = world.getPlayer();
+            syncSize();
+            recorder.nextLevel(world.getTick(), player.getMissileDamage(), player.getAttackSpeed(), player.getMoveSpeed());
+            world.startNextLevel(player.getMissileDamage(), player.getAttackSpeed(), player.getMoveSpeed());
+            checkpoint();
             
             gameTimer.start();
             repaint();
@@ -432,22 +436,28 @@ switch (currentLevel + 1) {
         }
     }
     public void restartGame() {
+        // The checkpoint taken when the level began holds the player at full
+        // health with the upgrades chosen so far, which is where a restart goes
+        if (levelCheckpoint != null && levelAt(levelCheckpoint) == world.getLastPlayedLevel()) {
+            try {
+                restoreState(levelCheckpoint);
+                world.restartRunClock();
+                checkpoint();
+                startRecording();
+                startRestoredSession();
+                System.out.println("Game restarted at level: " + (world.getCurrentLevel() + 1));
+                return;
+            } catch (IOException e) {
+                System.err.println("Error restoring the level checkpoint: " + e.getMessage());
+            }
+        }
         gameOver = false;
         gameWon = false;
         gameStarted = true;
-        // Reset player with some upgrades maintained for game balance
-        int currentMissileDamage = player != null ? player.getMissileDamage() : 500;
-        int currentAttackSpeed = player != null ? player.getAttackSpeed() : 1000;
-        int currentMoveSpeed = player != null ? player.getMoveSpeed() : 6;
-        // Create a new player with full health but keep some upgrades
-        player = new Player(500, 500, 80, 100, currentMissileDamage, currentAttackSpeed, currentMoveSpeed);
-        // Reinitialize levels but maintain the progress
-        initializeLevels();
-        // Set the current level to the last played level
-        currentLevel = lastPlayedLevel;
-        // Clear and initialize ricochets for current level
-        ricochets.clear();
-        initializeRicochets();
+        syncSize();
+        world.restartAtLastLevel();
+        checkpoint();
+        startRecording();
         // Restart the game timer
         if (gameTimer.isRunning()) {
             gameTimer.stop();
@@ -455,8 +465,135 @@ switch (currentLevel + 1) {
         gameTimer.start();
         repaint();
         requestFocusInWindow();
-        System.out.println("Game restarted at level: " + (currentLevel + 1));
+        System.out.println("Game restarted at level: " + (world.getCurrentLevel() + 1));
+    }
+    // The whole session as a snapshot in the SessionFile layout. Takes a few
+    // microseconds, so it is fine on the game loop's thread.
+    public byte[] saveState() {
+        return world.saveSnapshot(currentUsername, System.currentTimeMillis());
     }
+
+    // Puts the session back as saveState() found it, paused until the game
+    // timer is started. Throws IOException, leaving the session as it was, if
+    // the snapshot is damaged or from another version.
+    public void restoreState(byte[] snapshot) throws IOException {
+        currentUsername = world.restoreSnapshot(snapshot);
+        pendingMoves = 0;
+        gameStarted = true;
+        gameOver = false;
+        gameWon = false;
+        paused = false;
+    }
+
+    // Offers to resume the session saved by a game that ended without
+    // finishing its run, after a crash or power loss. Returns whether it was
+    // resumed; if not, the saved session is dropped.
+    public boolean resumeSavedSession() {
+        byte[] saved = sessionFile.read();
+        if (saved == null) {
+            return false;
+        }
+        try {
+            int choice = JOptionPane.showConfirmDialog(this, "Resume the unfinished game of " + SessionFile.describe(saved) + "?",
+                    "Resume Game", JOptionPane.YES_NO_OPTION);
+            if (choice == JOptionPane.YES_OPTION) {
+                restoreState(saved);
+                levelCheckpoint = null; // A restart rebuilds the level instead
+                lastAutosaveTime = System.currentTimeMillis();
+                userManager.createUser(currentUsername, 0);
+                startRecording();
+                startRestoredSession();
+                return true;
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot resume the saved game session: " + e.getMessage());
+        }
+        sessionFile.delete();
+        return false;
+    }
+
+    // One tick of rewinding: puts back the session as it was REWIND_SPEED ticks earlier
+    private void stepBack() {
+        byte[] snapshot = rewindBuffer.back(REWIND_SPEED);
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            restoreState(snapshot);
+            rewound = true;
+        } catch (IOException e) {
+            System.err.println("Error rewinding: " + e.getMessage());
+            rewindBuffer.clear();
+        }
+    }
+
+    // Tells the recording where rewinding left the world, before anything else happens to it
+    private void recordRewind() {
+        if (rewound) {
+            rewound = false;
+            byte[] snapshot = saveState();
+            try {
+                world.restoreSnapshot(snapshot); // The replay starts again from exactly this
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot restore a snapshot just made", e);
+            }
+            recorder.restored(snapshot, world.getTick());
+        }
+    }
+
+    // Starts recording the run from the world as it is now
+    private void startRecording() {
+        byte[] start = saveState();
+        try {
+            world.restoreSnapshot(start); // Leaves nothing outside the snapshot that a replay could not have
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot restore a snapshot just made", e);
+        }
+        recorder = new ReplayRecorder(start, world.getTick());
+        rewound = false;
+    }
+
+    // Keeps the world the size of the panel, which ricochets bounce inside
+    private void syncSize() {
+        if (getWidth() != world.getWidth() || getHeight() != world.getHeight()) {
+            world.resize(getWidth(), getHeight());
+            if (recorder != null) {
+                recorder.resized(world.getTick(), getWidth(), getHeight());
+            }
+        }
+    }
+
+    private void startRestoredSession() {
+        rewindBuffer.clear();
+        if (gameTimer.isRunning()) {
+            gameTimer.stop();
+        }
+        gameTimer.start();
+        repaint();
+        requestFocusInWindow();
+    }
+
+    // Snapshot of a level just set up, kept for restarts and saved in case the game is closed
+    private void checkpoint() {
+        rewindBuffer.clear(); // Rewinding stops at the start of the level
+        levelCheckpoint = saveState();
+        if (savesToFiles) {
+            sessionFile.save(levelCheckpoint);
+        }
+        lastAutosaveTime = System.currentTimeMillis();
+    }
+
+    // Level of a snapshot this panel made, -1 if it cannot be read
+    private static int levelAt(byte[] snapshot) {
+        try {
+            ByteBuffer in = SessionFile.open(snapshot);
+            SessionFile.getString(in);
+            return in.getShort();
+        } catch (IOException | BufferUnderflowException e) {
+            return -1;
+        }
+    }
+
     public void setGameOver(boolean gameOver) {
         this.gameOver = gameOver;
         if (gameOver) {
@@ -468,164 +605,12 @@ switch (currentLevel + 1) {
         return gameOver;
     }
     public Player getPlayer() {
-        return player;
+        return world.getPlayer();
     }
     
     // Method to get the current level (for display)
     public int getCurrentLevel() {
-        return currentLevel + 1; // +1 because it's 0-indexed internally
-    }
-    // Methods to create enemies for each level
-    private List<Enemy> createLevel1Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(100, 100, 40, 2, 3, 100, 4));
-        enemies.add(new Enemy(450, 100, 40, 3, 3, 100, 4));
-        enemies.add(new Enemy(800, 100, 40, 4, 3, 100, 5));
-        enemies.add(new Enemy(1150, 100, 40, 3, 3, 100, 4));
-        enemies.add(new Enemy(1500, 100, 40, 3, 3, 100, 5));
-        return enemies;
-    }
-    private List<Enemy> createLevel2Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(100, 100, 40, 4, 4, 110, 10));
-        enemies.add(new Enemy(450, 100, 40, 3, 4, 100, 9));
-        enemies.add(new Enemy(800, 100, 40, 3, 4, 100, 9));
-        enemies.add(new Enemy(1150, 100, 40, 3, 4, 100, 10));
-        enemies.add(new Enemy(1500, 100, 40, 4, 4, 100, 10));
-        return enemies;
-    }
-    private List<Enemy> createLevel3Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(100, 100, 40, 3, 5, 110, 15));
-        enemies.add(new Enemy(450, 100, 40, 2, 5, 100, 15));
-        enemies.add(new Enemy(800, 100, 40, 5, 5, 100, 16));
-        enemies.add(new Enemy(1150, 100, 40, 4, 5, 100, 15));
-        enemies.add(new Enemy(1500, 100, 40, 3, 5, 100, 16));
-        return enemies;
-    }
-    private List<Enemy> createLevel4Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(100, 100, 40, 4, 6, 110, 20));
-        enemies.add(new Enemy(450, 100, 40, 4, 7, 100, 20));
-        enemies.add(new Enemy(800, 100, 40, 5, 8, 110, 21));
-        enemies.add(new Enemy(1150, 100, 40, 4, 8, 100, 20));
-        enemies.add(new Enemy(1500, 100, 40, 4, 9, 100, 20));
-        return enemies;
-    }
-    private List<Enemy> createLevel5Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(400, 100, 80, 5, 15, 210, 36));
-        enemies.add(new Enemy(200, 150, 40, 6, 9, 125, 26));
-        enemies.add(new Enemy(600, 150, 40, 6, 9, 125, 26));
-        return enemies;
-    }
-    private List<Enemy> createLevel6Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(100, 100, 45, 5, 9, 130, 26));
-        enemies.add(new Enemy(400, 100, 45, 4, 9, 120, 26));
-        enemies.add(new Enemy(700, 100, 45, 6, 10, 130, 27));
-        enemies.add(new Enemy(1000, 100, 45, 4, 11, 120, 25));
-        enemies.add(new Enemy(1300, 100, 45, 4, 23, 130, 26));
-        enemies.add(new Enemy(1600, 100, 45, 4, 20, 120, 25));
-        return enemies;
-    }
-    private List<Enemy> createLevel7Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(150, 110, 50, 4, 10, 155, 30));
-        enemies.add(new Enemy(450, 120, 50, 4, 11, 155, 30));
-        enemies.add(new Enemy(750, 90, 50, 6, 12, 150, 31));
-        enemies.add(new Enemy(1050, 120, 50, 4, 13, 155, 30));
-        enemies.add(new Enemy(1350, 110, 50, 4, 14, 150, 31));
-        return enemies;
-    }
-    private List<Enemy> createLevel8Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(100, 100, 55, 4, 11, 185, 32));
-        enemies.add(new Enemy(350, 120, 55, 4, 12, 180, 31));
-        enemies.add(new Enemy(600, 200, 55, 3, 13, 180, 32));
-        enemies.add(new Enemy(850, 150, 55, 4, 14, 180, 31));
-        enemies.add(new Enemy(1100, 100, 55, 3, 15, 180, 32));
-        enemies.add(new Enemy(1350, 120, 55, 4, 16, 180, 31));
-        return enemies;
-    }
-    private List<Enemy> createLevel9Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(100, 100, 55, 3, 12, 185, 33));
-        enemies.add(new Enemy(350, 130, 55, 5, 13, 180, 32));
-        enemies.add(new Enemy(600, 200, 55, 3, 14, 180, 33));
-        enemies.add(new Enemy(850, 150, 55, 4, 15, 180, 32));
-        enemies.add(new Enemy(1100, 100, 55, 3, 16, 180, 33));
-        enemies.add(new Enemy(1350, 130, 55, 4, 17, 180, 32));
-        return enemies;
-    }
-    private List<Enemy> createLevel10Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(100, 100, 55, 5, 13, 185, 36));
-        enemies.add(new Enemy(350, 140, 55, 3, 14, 180, 35));
-        enemies.add(new Enemy(600, 200, 55, 3, 15, 180, 36));
-        enemies.add(new Enemy(850, 150, 55, 3, 16, 180, 35));
-        enemies.add(new Enemy(1100, 100, 55, 3, 17, 180, 36));
-        enemies.add(new Enemy(1350, 140, 55, 2, 18, 180, 35));
-        return enemies;
-    }
-    
-    private List<Enemy> createLevel11Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(150, 120, 60, 5, 14, 210, 41));
-        enemies.add(new Enemy(400, 150, 60, 4, 15, 200, 40));
-        enemies.add(new Enemy(650, 180, 60, 3, 16, 200, 40));
-        enemies.add(new Enemy(900, 180, 60, 3, 17, 200, 40));
-        enemies.add(new Enemy(1150, 150, 60, 4, 18, 200, 41));
-        enemies.add(new Enemy(1400, 150, 60, 5, 19, 200, 41));
-        return enemies;
-    }
-    private List<Enemy> createLevel12Enemies() {
-        List<Enemy> enemies = new ArrayList<>();
-        enemies.add(new Enemy(700, 150, 150, 3, 30, 850, 72));
-        enemies.add(new Enemy(650, 250, 60, 4, 15, 510, 22));
-        enemies.add(new Enemy(1000, 250, 60, 5, 16, 510, 22));
-        enemies.add(new Enemy(900, 250, 60, 4, 17, 510, 22));
-        enemies.add(new Enemy(800, 350, 60, 5, 20, 510, 22));
-        return enemies;
-    }
-    private void initializeLevels() {
-        levels.clear();
-        // Level 1
-    levels.add(new Level(1, createLevel1Enemies(), "images/GundamBG.jpg"));
-    levels.add(new Level(2, createLevel2Enemies(), "images/bgace.jpg"));
-    levels.add(new Level(3, createLevel3Enemies(), "images/bgluffy.jpg"));
-    levels.add(new Level(4, createLevel4Enemies(), "images/bgZenitsu.jpg"));
-    levels.add(new Level(5, createLevel5Enemies(), "images/bgzoro.jpg"));
-    levels.add(new Level(6, createLevel6Enemies(), "images/bgrank3.jpg"));
-    levels.add(new Level(7, createLevel7Enemies(), "images/bgkenpachi.jpg"));
-    levels.add(new Level(8, createLevel8Enemies(), "images/bgItachi.jpg"));
-    levels.add(new Level(9, createLevel9Enemies(), "images/bgNetero.jpg"));
-    levels.add(new Level(10, createLevel10Enemies(), "images/bgGoku.jpg"));
-    levels.add(new Level(11, createLevel11Enemies(), "images/bgMadara.jpg"));
-    levels.add(new Level(12, createLevel12Enemies(), "images/BGfinal.jpg"));
-    }
-    private Enemy findNearestEnemy(List<Enemy> enemies) {
-        if (enemies.isEmpty()) {
-            return null;
-        }
-        Enemy nearest = null;
-        double minDistance = Double.MAX_VALUE;
-        for (Enemy enemy : enemies) {
-            double dx = enemy.getX() - player.getX();
-            double dy = enemy.getY() - player.getY();
-            double distance = Math.sqrt(dx * dx + dy * dy);
-            if (distance < minDistance) {
-                minDistance = distance;
-                nearest = enemy;
-            }
-        }
-        return nearest;
-    }
-    private boolean missileCollidesWithEnemy(Missile missile, Enemy enemy) {
-        int dx = missile.getX() - enemy.getX();
-        int dy = missile.getY() - enemy.getY();
-        int distance = (int) Math.sqrt(dx * dx + dy * dy);
-        return distance < (missile.getSize() / 2 + enemy.getSize() / 2); // Use proper size for missile
+        return world.getCurrentLevel() + 1; // +1 because it's 0-indexed internally
     }
     @Override
     public void addNotify() {
@@ -635,21 +620,8 @@ switch (currentLevel + 1) {
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
         if (gameStarted) {
-            Level currentLevelObj = levels.get(currentLevel);
-            Image backgroundImage = currentLevelObj.getBackgroundImage();
-            if (backgroundImage != null) {
-                g2.drawImage(backgroundImage, 0, 0, getWidth(), getHeight(), this);
-            }
-        g.setColor(new Color(245, 255, 250));
-        g.setFont(new Font("Garamond", Font.BOLD, 35));
-        g.drawString("Level: " + (currentLevel + 1), 750, 40);
-        // Health display with regeneration indicator
-        g.setColor(new Color(0, 255, 0));
-        g.drawString("HP: " + player.getHealth() + "/" + player.getMaxHealth(), 10, 40);
-        g.setColor(new Color(0, 200, 0, 150));
-        g.drawString("+5/sec", 10, 80); // Regeneration indicator
+            drawBackground(g, world, getWidth(), getHeight(), this);
             if (gameOver) {
                 g.setFont(new Font("Garamond", Font.BOLD, 40));
                 g.setColor(Color.WHITE);
@@ -664,21 +636,46 @@ switch (currentLevel + 1) {
                 g.setColor(Color.WHITE);
                 g.drawString("Game Paused", 300, 300);
             } else {
-                player.draw(g);
-                // Draw missiles
-                for (Missile missile : player.getMissiles()) {
-                    missile.draw(g);
-                }
-                // Draw enemies
-                for (Enemy enemy : levels.get(currentLevel).getEnemies()) {
-                    enemy.draw(g);
-                }
-                
-                // Draw ricochets
-                for (Ricochet ricochet : ricochets) {
-                    ricochet.draw(g);
+                if (rewinding) {
+                    g.setColor(Color.WHITE);
+                    g.drawString("<< Rewind", 400, 80);
                 }
+                drawEntities(g, world);
             }
         }
     }
-}
\ No newline at end of file
+
+    // Level background and the level and health display, over an area of width by height
+    static void drawBackground(Graphics g, GameWorld world, int width, int height, ImageObserver observer) {
+        Image backgroundImage = world.getLevel().getBackgroundImage();
+        if (backgroundImage != null) {
+            g.drawImage(backgroundImage, 0, 0, width, height, observer);
+        }
+        g.setColor(new Color(245, 255, 250));
+        g.setFont(new Font("Garamond", Font.BOLD, 35));
+        g.drawString("Level: " + (world.getCurrentLevel() + 1), 750, 40);
+        // Health display with regeneration indicator
+        g.setColor(new Color(0, 255, 0));
+        g.drawString("HP: " + world.getPlayer().getHealth() + "/" + world.getPlayer().getMaxHealth(), 10, 40);
+        g.setColor(new Color(0, 200, 0, 150));
+        g.drawString("+5/sec", 10, 80); // Regeneration indicator
+    }
+
+    static void drawEntities(Graphics g, GameWorld world) {
+        Player player = world.getPlayer();
+        player.draw(g);
+        // Draw missiles
+        for (Missile missile : player.getMissiles()) {
+            missile.draw(g);
+        }
+        // Draw enemies
+        for (Enemy enemy : world.getLevel().getEnemies()) {
+            enemy.draw(g);
+        }
+        
+        // Draw ricochets
+        for (Ricochet ricochet : world.getRicochets()) {
+            ricochet.draw(g);
+        }
+    }
+}
@@ -0,0 +1,643 @@
+// GameWorld.java
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+// The game itself without Swing: the player, the levels and their enemies,
+// the ricochets and missiles, moved on one tick at a time by step(). Time in
+// here is game time, TICK_MILLIS per tick, so cooldowns and regeneration work
+// out the same however the ticks are spaced in real time. The ricochets'
+// animation, the only thing that uses randomness, draws from a stream seeded
+// per run. A world restored from a snapshot and given the same inputs
+// therefore goes through exactly the same states, which Replay relies on.
+//
+// Not thread-safe; GamePanel drives it from the Swing timer.
+public class GameWorld {
+    public static final long TICK_MILLIS = 10; // Game time per tick, also the rate of GamePanel's timer
+    public static final int SOUND_MISSILE_HIT = SoundBank.SOUND_MISSILE_HIT;
+    public static final int HEADLESS_WIDTH = 1600;  // Play area of runs without a window, the window's size
+    public static final int HEADLESS_HEIGHT = 900;
+    private static final long MISSILE_COOLDOWN = 200; // Milliseconds between missiles
+
+    // How a tick ended
+    public enum Outcome { PLAYING, LEVEL_CLEARED, DIED, WON }
+
+    private int width, height;
+    private long seed;
+    private Random random;
+    private final List<Level> levels = new ArrayList<>();
+    private int currentLevel;
+    private int lastPlayedLevel;
+    private Player player;
+    private final List<Ricochet> ricochets = new ArrayList<>();
+    private CombatStats levelStats = new CombatStats(); // Counters for the level being played
+    private CombatStats finishedLevelStats; // Counters of the attempt the last tick ended
+    private int finishedLevel;
+    private long tick = 0; // Ticks played
+    private long runStartTick = 0;
+    private long lastMissileFiredTime = -MISSILE_COOLDOWN;
+    private ByteBuffer hashBuffer = ByteBuffer.allocate(1024);
+    private final CRC32C hash = new CRC32C();
+
+    public GameWorld(int width, int height) {
+        this.width = width;
+        this.height = height;
+        initializeLevels();
+    }
+
+    // Starts a run from the first level; seed drives the run's randomness
+    public void startRun(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+        runStartTick = tick;
+        // Reset player with initial stats
+        player = new Player(500, 500, 80, 100, 60, 700, 5, getTime());
+        currentLevel = 0;
+        lastPlayedLevel = 0;
+        lastMissileFiredTime = getTime() - MISSILE_COOLDOWN;
+        initializeLevels(); // Re-initialize levels
+        ricochets.clear(); // Clear any existing ricochets
+        levelStats = new CombatStats();
+    }
+
+    // Sets up the level after the one cleared, with a player at full health
+    // (100) and the given upgrades
+    public void startNextLevel(int missileDamage, int attackSpeed, int moveSpeed) {
+        player = new Player(500, 500, 80, 100, missileDamage, attackSpeed, moveSpeed, getTime());
+        // Initialize ricochets for the new level
+        initializeRicochets();
+        levelStats = new CombatStats();
+    }
+
+    // Starts a new run at the furthest level reached, keeping the player's upgrades
+    public void restartAtLastLevel() {
+        runStartTick = tick;
+        // Reset player with some upgrades maintained for game balance
+        int currentMissileDamage = player != null ? player.getMissileDamage() : 500;
+        int currentAttackSpeed = player != null ? player.getAttackSpeed() : 1000;
+        int currentMoveSpeed = player != null ? player.getMoveSpeed() : 6;
+        // Create a new player with full health but keep some upgrades
+        player = new Player(500, 500, 80, 100, currentMissileDamage, currentAttackSpeed, currentMoveSpeed, getTime());
+        // Reinitialize levels but maintain the progress
+        initializeLevels();
+        // Set the current level to the last played level
+        currentLevel = lastPlayedLevel;
+        // Clear and initialize ricochets for current level
+        ricochets.clear();
+        initializeRicochets();
+        levelStats = new CombatStats();
+    }
+
+    // Counts the run from now, for a run that restarts from a restored snapshot
+    public void restartRunClock() {
+        runStartTick = tick;
+    }
+
+    // Ricochets bounce off the edges of this area
+    public void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    // Plays one tick. The player first takes moves steps towards the target,
+    // one for each mouse movement since the last tick. When the tick ends the
+    // attempt at the level, its counters are in getFinishedLevelStats(); after
+    // LEVEL_CLEARED the world is on the next level, waiting for startNextLevel().
+    public Outcome step(int targetX, int targetY, int moves) {
+        tick++;
+        long currentTime = getTime();
+        levelStats.tick();
+        for (int i = 0; i < moves; i++) {
+            player.move(targetX, targetY);
+        }
+        player.update(currentTime);
+        Level level = levels.get(currentLevel);
+        List<Enemy> enemies = level.getEnemies();
+        
+        // Update last played level
+        lastPlayedLevel = Math.max(lastPlayedLevel, currentLevel);
+    
+        // Move enemies
+        for (Enemy enemy : new ArrayList<>(enemies)) {
+            enemy.moveTowards(player.getX(), player.getY());
+        
+            if (enemy.collidesWith(player)) {
+                int healthBefore = player.getHealth();
+                player.reduceHealth(enemy.getDamage());
+                levelStats.contactDamageTaken(healthBefore - player.getHealth()); // Health stops at 0
+                if (player.getHealth() <= 0) {
+                    finishLevel(false);
+                    return Outcome.DIED;
+                }
+            }
+        }
+       
+        // Update ricochets
+        for (Ricochet ricochet : new ArrayList<>(ricochets)) {
+            ricochet.move(width, height);
+            
+            // Check collision with player
+            if (ricochet.collidesWith(player.getX(), player.getY(), player.getSize())) {
+                int healthBefore = player.getHealth();
+                player.reduceHealth(ricochet.getDamage());
+                levelStats.ricochetDamageTaken(ricochet.getStyle(), healthBefore - player.getHealth());
+                if (player.getHealth() <= 0) {
+                    finishLevel(false);
+                    return Outcome.DIED;
+                }
+            }
+            
+            // Check collision with enemies
+            for (Enemy enemy : new ArrayList<>(enemies)) {
+                if (ricochet.collidesWith(enemy.getX(), enemy.getY(), enemy.getSize())) {
+                    levelStats.ricochetHit(enemy.takeDamage(ricochet.getDamage()));
+                    if (enemy.isDead()) {
+                        enemies.remove(enemy);
+                    }
+                }
+            }
+        }
+       
+        // Fire missiles with cooldown
+        if (!enemies.isEmpty() && currentTime - lastMissileFiredTime >= MISSILE_COOLDOWN) {
+            Enemy nearestEnemy = findNearestEnemy(enemies);
+            if (nearestEnemy != null) {
+                if (player.fireMissile(nearestEnemy.getX(), nearestEnemy.getY(), currentTime)) {
+                    levelStats.missileFired();
+                }
+                lastMissileFiredTime = currentTime;
+            }
+        }
+        // Update missiles
+        List<Missile> missiles = player.getMissiles();
+        for (Missile missile : new ArrayList<>(missiles)) {
+            if (!missile.isActive()) {
+                missiles.remove(missile);
+                continue;
+            }
+            Enemy targetEnemy = findNearestEnemy(enemies);
+            if (targetEnemy != null) {
+                missile.moveTowards(targetEnemy.getX(), targetEnemy.getY());
+                // Check for collisions between missile and enemies
+                for (Enemy enemy : new ArrayList<>(enemies)) {
+                    if (missileCollidesWithEnemy(missile, enemy)) {
+                        // Post impact sound BEFORE modifying the enemy and missile; hits in
+                        // the same tick are merged by the audio thread
+                        SoundUtility.postSE(SOUND_MISSILE_HIT);
+                        
+                        levelStats.missileHit(enemy.takeDamage(missile.getDamage()));
+                        missile.setActive(false);
+                        
+                        if (enemy.isDead()) {
+                            enemies.remove(enemy); // Remove dead enemy
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        // Check if level is complete
+        if (enemies.isEmpty()) {
+            finishLevel(true);
+            if (currentLevel < levels.size() - 1) {
+                currentLevel++;
+                // Initialize ricochets for the next level
+                initializeRicochets();
+                return Outcome.LEVEL_CLEARED;
+            }
+            return Outcome.WON;
+        }
+        return Outcome.PLAYING;
+    }
+
+    // Ends the attempt at the level: keeps its counters for the caller and starts new ones
+    private void finishLevel(boolean cleared) {
+        levelStats.finish(cleared);
+        finishedLevelStats = levelStats;
+        finishedLevel = currentLevel + 1;
+        levelStats = new CombatStats();
+    }
+
+    public int calculateFinalScore() {
+        // Example scoring logic: Use the player's health and current level to calculate the score
+        return player.getHealth() * 10 + (currentLevel + 1) * 100;
+    }
+
+    // The whole session as a snapshot in the SessionFile layout
+    public byte[] saveSnapshot(String username, long savedAt) {
+        ByteBuffer out = SessionFile.begin(SessionFile.stringSize(username) + stateSize(), savedAt);
+        SessionFile.putString(out, username);
+        writeState(out);
+        return SessionFile.finish(out);
+    }
+
+    // Puts back the state of a snapshot and returns its username. Throws
+    // IOException, leaving the world as it was, if the snapshot is damaged or
+    // from another version.
+    public String restoreSnapshot(byte[] snapshot) throws IOException {
+        ByteBuffer in = SessionFile.open(snapshot);
+        try {
+            String username = SessionFile.getString(in);
+            readState(in);
+            return username;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Saved game session cut short");
+        }
+    }
+
+    // CRC32C of everything a snapshot holds about the world; Replay checks
+    // that a replayed run goes through the same values
+    public int stateHash() {
+        int size = stateSize();
+        if (hashBuffer.capacity() < size) {
+            hashBuffer = ByteBuffer.allocate(Math.max(size, hashBuffer.capacity() * 2));
+        }
+        hashBuffer.clear();
+        writeState(hashBuffer);
+        hash.reset();
+        hash.update(hashBuffer.array(), 0, hashBuffer.position());
+        return (int) hash.getValue();
+    }
+
+    private int stateSize() {
+        return 36 + 1 + CombatStats.COUNTERS * 8 + 42 + player.getMissiles().size() * 21
+                + 2 + levels.get(currentLevel).getEnemies().size() * 32 + 2 + ricochets.size() * 25;
+    }
+
+    private void writeState(ByteBuffer out) {
+        long now = getTime();
+        List<Enemy> enemies = levels.get(currentLevel).getEnemies();
+        out.putShort((short) currentLevel).putShort((short) lastPlayedLevel);
+        out.putLong(tick).putLong(tick - runStartTick);
+        out.putShort((short) width).putShort((short) height).putLong(seed);
+        out.putInt((int) Math.min(Integer.MAX_VALUE, now - lastMissileFiredTime));
+        levelStats.writeState(out);
+        player.writeState(out, now);
+        out.putShort((short) enemies.size());
+        for (Enemy enemy : enemies) {
+            enemy.writeState(out);
+        }
+        out.putShort((short) ricochets.size());
+        for (Ricochet ricochet : ricochets) {
+            ricochet.writeState(out);
+        }
+    }
+
+    // Everything is read before anything is replaced
+    private void readState(ByteBuffer in) throws IOException {
+        int level = in.getShort();
+        int furthestLevel = in.getShort();
+        if (level < 0 || level >= levels.size() || furthestLevel < 0 || furthestLevel >= levels.size()) {
+            throw new IOException("Saved game session has no level " + (level + 1));
+        }
+        long restoredTick = in.getLong();
+        long runTicks = in.getLong();
+        int restoredWidth = in.getShort() & 0xFFFF;
+        int restoredHeight = in.getShort() & 0xFFFF;
+        long restoredSeed = in.getLong();
+        int missileAge = in.getInt();
+        long now = restoredTick * TICK_MILLIS;
+        // Ricochets' animation starts from a stream that depends only on the snapshot
+        Random restoredRandom = new Random(restoredSeed ^ restoredTick);
+        CombatStats stats;
+        Player restoredPlayer;
+        List<Enemy> enemies = new ArrayList<>();
+        List<Ricochet> restoredRicochets = new ArrayList<>();
+        try {
+            stats = CombatStats.readState(in);
+            restoredPlayer = Player.readState(in, now);
+            for (int i = in.getShort() & 0xFFFF; i > 0; i--) {
+                enemies.add(Enemy.readState(in));
+            }
+            for (int i = in.getShort() & 0xFFFF; i > 0; i--) {
+                restoredRicochets.add(Ricochet.readState(in, new Random(restoredRandom.nextLong())));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Saved game session is damaged: " + e.getMessage());
+        }
+
+        currentLevel = level;
+        lastPlayedLevel = furthestLevel;
+        tick = restoredTick;
+        runStartTick = restoredTick - runTicks;
+        width = restoredWidth;
+        height = restoredHeight;
+        seed = restoredSeed;
+        random = restoredRandom;
+        lastMissileFiredTime = now - missileAge;
+        levelStats = stats;
+        player = restoredPlayer;
+        // Levels after this one may have been played by an earlier run of this world
+        for (int i = level; i < levels.size(); i++) {
+            List<Enemy> levelEnemies = levels.get(i).getEnemies();
+            levelEnemies.clear();
+            levelEnemies.addAll(i == level ? enemies : createEnemies(i));
+        }
+        ricochets.clear();
+        ricochets.addAll(restoredRicochets);
+    }
+
+    // Game time in milliseconds
+    public long getTime() {
+        return tick * TICK_MILLIS;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    // Game time since the run began
+    public long getRunTime() {
+        return (tick - runStartTick) * TICK_MILLIS;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+
+    public Level getLevel() {
+        return levels.get(currentLevel);
+    }
+
+    // 0 for the first level
+    public int getCurrentLevel() {
+        return currentLevel;
+    }
+
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    public int getLastPlayedLevel() {
+        return lastPlayedLevel;
+    }
+
+    public List<Ricochet> getRicochets() {
+        return ricochets;
+    }
+
+    public CombatStats getLevelStats() {
+        return levelStats;
+    }
+
+    public CombatStats getFinishedLevelStats() {
+        return finishedLevelStats;
+    }
+
+    // Number, from 1, of the level whose attempt the last tick ended
+    public int getFinishedLevel() {
+        return finishedLevel;
+    }
+
+    private Ricochet ricochet(int x, int y, int size, int speedX, int speedY, int damage, int style) {
+        return new Ricochet(x, y, size, speedX, speedY, damage, style, new Random(random.nextLong()));
+    }
+
+    private void initializeRicochets() {
+        ricochets.clear();
+    
+        int screenWidth = width;
+        int screenHeight = height;
+switch (currentLevel + 1) {
+    case 6 -> {
+        ricochets.add(ricochet(screenWidth / 2, 0, 15, 5, 6, 5, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(0, screenHeight / 3, 15, 7, 4, 6, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(screenWidth, screenHeight / 2, 15, -6, 5, 7, Ricochet.FIRE_STYLE));
+    }
+    case 7 -> {
+        ricochets.add(ricochet(0, screenHeight / 3, 15, 17, 11, 6, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(screenWidth, screenHeight / 3, 15, -7,11, 7, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(screenWidth / 2, 0, 15, 9, 9, 8, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(screenWidth / 2, screenHeight, 15, 1, -9, 9, Ricochet.FIRE_STYLE));
+    }
+    case 8 -> {
+        ricochets.add(ricochet(100, 100, 15, 15, 15, 8, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(screenWidth - 100, 100, 15, -7, 15, 8, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(100, screenHeight - 100, 15, 7, -7, 9, Ricochet.FIRE_STYLE));
+        ricochets.add(ricochet(screenWidth - 100, screenHeight - 100, 15, -7, -7, 7, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(screenWidth / 2, 0, 15, 9, 9, 1, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(screenWidth / 2, screenHeight, 15, 9, -9, 8, Ricochet.FIRE_STYLE));
+    }
+    case 9 -> {
+        ricochets.add(ricochet(100, 100, 15, 15, 15, 7, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(screenWidth - 100, 100, 15, -7, 15, 8, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(200, screenHeight / 2, 15, 13, 8, 1, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(screenWidth / 2, 100, 15, 0, 6, 10, Ricochet.FIRE_STYLE));
+        ricochets.add(ricochet(screenWidth / 4, 0, 15, 4, 4, 9, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(screenWidth, screenHeight / 4, 15, -8, 8, 8, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(0, screenHeight - 200, 15, 10, -5, 9, Ricochet.FIRE_STYLE));
+    }
+    case 10 -> {
+        ricochets.add(ricochet(100, 100, 15, 15, 15, 10, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(screenWidth - 100, 100, 15, -7, 15, 11, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(screenWidth, screenHeight / 3, 10, -9, 4, 5, Ricochet.FIRE_STYLE));
+        ricochets.add(ricochet(screenWidth / 4, 0, 25, 5, 7, 7, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(screenWidth / 2, screenHeight, 15, 6, -6, 8, Ricochet.FIRE_STYLE));
+        ricochets.add(ricochet(0, screenHeight / 2, 20, 8, 3, 7, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(screenWidth / 2, 0, 12, -4, 10, 6, Ricochet.LIGHTNING_STYLE));
+    }
+    case 11 -> {
+        ricochets.add(ricochet(100, 100, 15, 15, 15, 7, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(screenWidth - 100, 100, 15, -7, 15, 7, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(100, 0, 15, 11, 8, 6, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(300, 0, 15, 11, 9, 5, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(500, 0, 15, 11, 8, 9, Ricochet.FIRE_STYLE));
+        ricochets.add(ricochet(0, 150, 15, 9, 0, 7, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(0, 350, 15, 10, 0, 6, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(0, 550, 15, 9, 0, 6, Ricochet.FIRE_STYLE));
+    }
+    case 12 -> {
+        ricochets.add(ricochet(100, 100, 15, 11, 9, 6, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(screenWidth, screenHeight / 3, 20, -13, 5, 5, Ricochet.FIRE_STYLE));
+        ricochets.add(ricochet(screenWidth / 2, screenHeight, 25, 4, -11, 5, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(screenWidth / 7, 0, 15, 5, 10, 8, Ricochet.LIGHTNING_STYLE));
+        ricochets.add(ricochet(screenWidth - 200, screenHeight - 200, 12, -10, -10, 8, Ricochet.FIRE_STYLE));
+        ricochets.add(ricochet(0, screenHeight / 4, 17, 15, 0, 9, Ricochet.WIND_STYLE));
+        ricochets.add(ricochet(screenWidth / 5, 0, 12, 0, 10, 7, Ricochet.LIGHTNING_STYLE));
+    }
+}
+    }
+
+    // Fresh enemies of a level, 0 being the first
+    private List<Enemy> createEnemies(int level) {
+        return switch (level) {
+            case 0 -> createLevel1Enemies();
+            case 1 -> createLevel2Enemies();
+            case 2 -> createLevel3Enemies();
+            case 3 -> createLevel4Enemies();
+            case 4 -> createLevel5Enemies();
+            case 5 -> createLevel6Enemies();
+            case 6 -> createLevel7Enemies();
+            case 7 -> createLevel8Enemies();
+            case 8 -> createLevel9Enemies();
+            case 9 -> createLevel10Enemies();
+            case 10 -> createLevel11Enemies();
+            default -> createLevel12Enemies();
+        };
+    }
+    // Methods to create enemies for each level
+    private List<Enemy> createLevel1Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(100, 100, 40, 2, 3, 100, 4));
+        enemies.add(new Enemy(450, 100, 40, 3, 3, 100, 4));
+        enemies.add(new Enemy(800, 100, 40, 4, 3, 100, 5));
+        enemies.add(new Enemy(1150, 100, 40, 3, 3, 100, 4));
+        enemies.add(new Enemy(1500, 100, 40, 3, 3, 100, 5));
+        return enemies;
+    }
+    private List<Enemy> createLevel2Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(100, 100, 40, 4, 4, 110, 10));
+        enemies.add(new Enemy(450, 100, 40, 3, 4, 100, 9));
+        enemies.add(new Enemy(800, 100, 40, 3, 4, 100, 9));
+        enemies.add(new Enemy(1150, 100, 40, 3, 4, 100, 10));
+        enemies.add(new Enemy(1500, 100, 40, 4, 4, 100, 10));
+        return enemies;
+    }
+    private List<Enemy> createLevel3Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(100, 100, 40, 3, 5, 110, 15));
+        enemies.add(new Enemy(450, 100, 40, 2, 5, 100, 15));
+        enemies.add(new Enemy(800, 100, 40, 5, 5, 100, 16));
+        enemies.add(new Enemy(1150, 100, 40, 4, 5, 100, 15));
+        enemies.add(new Enemy(1500, 100, 40, 3, 5, 100, 16));
+        return enemies;
+    }
+    private List<Enemy> createLevel4Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(100, 100, 40, 4, 6, 110, 20));
+        enemies.add(new Enemy(450, 100, 40, 4, 7, 100, 20));
+        enemies.add(new Enemy(800, 100, 40, 5, 8, 110, 21));
+        enemies.add(new Enemy(1150, 100, 40, 4, 8, 100, 20));
+        enemies.add(new Enemy(1500, 100, 40, 4, 9, 100, 20));
+        return enemies;
+    }
+    private List<Enemy> createLevel5Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(400, 100, 80, 5, 15, 210, 36));
+        enemies.add(new Enemy(200, 150, 40, 6, 9, 125, 26));
+        enemies.add(new Enemy(600, 150, 40, 6, 9, 125, 26));
+        return enemies;
+    }
+    private List<Enemy> createLevel6Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(100, 100, 45, 5, 9, 130, 26));
+        enemies.add(new Enemy(400, 100, 45, 4, 9, 120, 26));
+        enemies.add(new Enemy(700, 100, 45, 6, 10, 130, 27));
+        enemies.add(new Enemy(1000, 100, 45, 4, 11, 120, 25));
+        enemies.add(new Enemy(1300, 100, 45, 4, 23, 130, 26));
+        enemies.add(new Enemy(1600, 100, 45, 4, 20, 120, 25));
+        return enemies;
+    }
+    private List<Enemy> createLevel7Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(150, 110, 50, 4, 10, 155, 30));
+        enemies.add(new Enemy(450, 120, 50, 4, 11, 155, 30));
+        enemies.add(new Enemy(750, 90, 50, 6, 12, 150, 31));
+        enemies.add(new Enemy(1050, 120, 50, 4, 13, 155, 30));
+        enemies.add(new Enemy(1350, 110, 50, 4, 14, 150, 31));
+        return enemies;
+    }
+    private List<Enemy> createLevel8Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(100, 100, 55, 4, 11, 185, 32));
+        enemies.add(new Enemy(350, 120, 55, 4, 12, 180, 31));
+        enemies.add(new Enemy(600, 200, 55, 3, 13, 180, 32));
+        enemies.add(new Enemy(850, 150, 55, 4, 14, 180, 31));
+        enemies.add(new Enemy(1100, 100, 55, 3, 15, 180, 32));
+        enemies.add(new Enemy(1350, 120, 55, 4, 16, 180, 31));
+        return enemies;
+    }
+    private List<Enemy> createLevel9Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(100, 100, 55, 3, 12, 185, 33));
+        enemies.add(new Enemy(350, 130, 55, 5, 13, 180, 32));
+        enemies.add(new Enemy(600, 200, 55, 3, 14, 180, 33));
+        enemies.add(new Enemy(850, 150, 55, 4, 15, 180, 32));
+        enemies.add(new Enemy(1100, 100, 55, 3, 16, 180, 33));
+        enemies.add(new Enemy(1350, 130, 55, 4, 17, 180, 32));
+        return enemies;
+    }
+    private List<Enemy> createLevel10Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(100, 100, 55, 5, 13, 185, 36));
+        enemies.add(new Enemy(350, 140, 55, 3, 14, 180, 35));
+        enemies.add(new Enemy(600, 200, 55, 3, 15, 180, 36));
+        enemies.add(new Enemy(850, 150, 55, 3, 16, 180, 35));
+        enemies.add(new Enemy(1100, 100, 55, 3, 17, 180, 36));
+        enemies.add(new Enemy(1350, 140, 55, 2, 18, 180, 35));
+        return enemies;
+    }
+    
+    private List<Enemy> createLevel11Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(150, 120, 60, 5, 14, 210, 41));
+        enemies.add(new Enemy(400, 150, 60, 4, 15, 200, 40));
+        enemies.add(new Enemy(650, 180, 60, 3, 16, 200, 40));
+        enemies.add(new Enemy(900, 180, 60, 3, 17, 200, 40));
+        enemies.add(new Enemy(1150, 150, 60, 4, 18, 200, 41));
+        enemies.add(new Enemy(1400, 150, 60, 5, 19, 200, 41));
+        return enemies;
+    }
+    private List<Enemy> createLevel12Enemies() {
+        List<Enemy> enemies = new ArrayList<>();
+        enemies.add(new Enemy(700, 150, 150, 3, 30, 850, 72));
+        enemies.add(new Enemy(650, 250, 60, 4, 15, 510, 22));
+        enemies.add(new Enemy(1000, 250, 60, 5, 16, 510, 22));
+        enemies.add(new Enemy(900, 250, 60, 4, 17, 510, 22));
+        enemies.add(new Enemy(800, 350, 60, 5, 20, 510, 22));
+        return enemies;
+    }
+    private void initializeLevels() {
+        levels.clear();
+        // Level 1
+    levels.add(new Level(1, createLevel1Enemies(), "images/GundamBG.jpg"));
+    levels.add(new Level(2, createLevel2Enemies(), "images/bgace.jpg"));
+    levels.add(new Level(3, createLevel3Enemies(), "images/bgluffy.jpg"));
+    levels.add(new Level(4, createLevel4Enemies(), "images/bgZenitsu.jpg"));
+    levels.add(new Level(5, createLevel5Enemies(), "images/bgzoro.jpg"));
+    levels.add(new Level(6, createLevel6Enemies(), "images/bgrank3.jpg"));
+    levels.add(new Level(7, createLevel7Enemies(), "images/bgkenpachi.jpg"));
+    levels.add(new Level(8, createLevel8Enemies(), "images/bgItachi.jpg"));
+    levels.add(new Level(9, createLevel9Enemies(), "images/bgNetero.jpg"));
+    levels.add(new Level(10, createLevel10Enemies(), "images/bgGoku.jpg"));
+    levels.add(new Level(11, createLevel11Enemies(), "images/bgMadara.jpg"));
+    levels.add(new Level(12, createLevel12Enemies(), "images/BGfinal.jpg"));
+    }
+
+    private Enemy findNearestEnemy(List<Enemy> enemies) {
+        if (enemies.isEmpty()) {
+            return null;
+        }
+        Enemy nearest = null;
+        double minDistance = Double.MAX_VALUE;
+        for (Enemy enemy : enemies) {
+            double dx = enemy.getX() - player.getX();
+            double dy = enemy.getY() - player.getY();
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearest = enemy;
+            }
+        }
+        return nearest;
+    }
+    private boolean missileCollidesWithEnemy(Missile missile, Enemy enemy) {
+        int dx = missile.getX() - enemy.getX();
+        int dy = missile.getY() - enemy.getY();
+        int distance = (int) Math.sqrt(dx * dx + dy * dy);
+        return distance < (missile.getSize() / 2 + enemy.getSize() / 2); // Use proper size for missile
+    }
+}
@@ -0,0 +1,14 @@
+// InputSource.java
+// Where the player's movement comes from when no one is at the mouse: a
+// scripted policy (see Autopilot) that GamePanel, BalanceRunner and Autopilot's
+// own headless runs ask for the input of every tick. GameWorld.step() takes
+// the player that many steps towards the target, as for that many mouse
+// movements.
+//
+// A source may keep state from tick to tick, so each game gets its own.
+public interface InputSource {
+    // Sets the target for the next tick in target[0] and target[1] and
+    // returns the number of steps the player takes towards it. The world is
+    // as the last tick left it and must not be changed.
+    int next(GameWorld world, int[] target);
+}
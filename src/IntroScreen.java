@@ -1,5 +1,6 @@
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
@@ -13,16 +14,8 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.RoundRectangle2D;
-import java.io.File;
-import java.io.IOException;
-import java.util.List;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.BorderFactory;
-import javax.swing.DefaultListModel;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JDialog;
@@ -40,8 +33,7 @@ public class IntroScreen extends JPanel {
     private final JLabel titleLabel;
     private Image backgroundImage;
     private UserManager userManager;
-    private String clickSound;
-    private final static SoundEffect se = new SoundEffect();
+    private final int clickSound = SoundBank.SOUND_CLICK; // Played from the shared sound bank
     // Custom colors
     private final Color BUTTON_COLOR = new Color(127, 255, 212); //bg text button
     private final Color BUTTON_HOVER_COLOR = new Color(147, 112, 219); //hover color
@@ -73,8 +65,6 @@ public class IntroScreen extends JPanel {
             BorderFactory.createLineBorder(new Color(0, 0, 0, 150), 1, true)
         ));
         add(titleLabel);
-        // Use a relative path for the click sound
-        clickSound = "sound/uwuSE.wav";
         
         // Create styled buttons
         playButton = createStyledButton("Play the Game", 150, 200);
@@ -85,28 +75,23 @@ public class IntroScreen extends JPanel {
         // Add action listeners to buttons
         playButton.addActionListener(e -> {
             System.out.println("Play button clicked!");
-            se.setFile(clickSound);
-            se.play();
+            SoundUtility.playSE(clickSound);
             onPlay.run();
         });
         creditsButton.addActionListener(e -> {
-            se.setFile(clickSound);
-            se.play();
+            SoundUtility.playSE(clickSound);
             onCredits.run();
         });
         settingsButton.addActionListener(e -> {
-            se.setFile(clickSound);
-            se.play();
+            SoundUtility.playSE(clickSound);
             onSettings.run();
         });
         viewScoresButton.addActionListener(e -> {
-            se.setFile(clickSound);
-            se.play();
+            SoundUtility.playSE(clickSound);
             showUserManagementDialog();
         });
         exitButton.addActionListener(_ -> {
-            se.setFile(clickSound);
-            se.play();
+            SoundUtility.playSE(clickSound);
             int choice = JOptionPane.showConfirmDialog(this, 
                 "Are you sure you want to exit?", 
                 "Confirm Exit", 
@@ -220,7 +205,7 @@ public class IntroScreen extends JPanel {
     private void showUserManagementDialog() {
         // Create a custom dialog
         JDialog dialog = new JDialog((JFrame) getTopLevelAncestor(), "User Management", true);
-        dialog.setSize(500, 400);
+        dialog.setSize(500, 450);
         dialog.setLocationRelativeTo(this);
         dialog.setLayout(new BorderLayout());
         
@@ -233,19 +218,50 @@ public class IntroScreen extends JPanel {
         JLabel dialogTitleLabel = new JLabel("HIGH SCORE", SwingConstants.CENTER);
         dialogTitleLabel.setFont(new Font("Times New Roman", Font.BOLD, 22));
         dialogTitleLabel.setForeground(DIALOG_TEXT_COLOR);
-        mainPanel.add(dialogTitleLabel, BorderLayout.NORTH);
         
-        // Create the list model and populate with users
-        DefaultListModel<String> userListModel = new DefaultListModel<>();
-        refreshUserList(userListModel);
+        // Buttons choosing which scores the list shows
+        JPanel windowPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
+        windowPanel.setBackground(DIALOG_BG_COLOR);
+        JButton todayButton = createDialogButton("Today");
+        JButton weekButton = createDialogButton("This Week");
+        JButton allTimeButton = createDialogButton("All Time");
+        windowPanel.add(todayButton);
+        windowPanel.add(weekButton);
+        windowPanel.add(allTimeButton);
+        
+        JPanel headerPanel = new JPanel(new BorderLayout(0, 10));
+        headerPanel.setBackground(DIALOG_BG_COLOR);
+        headerPanel.add(dialogTitleLabel, BorderLayout.NORTH);
+        headerPanel.add(windowPanel, BorderLayout.SOUTH);
+        mainPanel.add(headerPanel, BorderLayout.NORTH);
+        
+        // Create the list model; rows are read from the leaderboard as they scroll into view
+        LeaderboardListModel userListModel = new LeaderboardListModel(userManager);
         
         // Create the list with custom rendering
-        JList<String> userList = new JList<>(userListModel);
+        JList<User> userList = new JList<>(userListModel);
         userList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         userList.setFont(new Font("Garamond", Font.PLAIN, 16));
         userList.setForeground(DIALOG_TEXT_COLOR);
         userList.setBackground(new Color(70, 30, 100));
         userList.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        userList.setCellRenderer(new DefaultListCellRenderer() {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                    boolean isSelected, boolean cellHasFocus) {
+                User user = (User) value;
+                String text = user == null ? "" : (index + 1) + ". " + user.getUsername() + ": " + user.getScore();
+                ScoreBatch.Standing standing = user == null ? null : userManager.getGlobalStanding(user.getUsername());
+                if (standing != null) {
+                    text += "  (global #" + standing.rank + ")";
+                }
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        // Every row has the same height, so the list never has to render them all to lay out
+        userList.setPrototypeCellValue(new User("WWWWWWWWWWWWWWWWWWWW", 999999));
         
         // Put the list in a scroll pane
         JScrollPane scrollPane = new JScrollPane(userList);
@@ -253,6 +269,33 @@ public class IntroScreen extends JPanel {
         scrollPane.setBorder(BorderFactory.createLineBorder(new Color(100, 50, 150), 2));
         mainPanel.add(scrollPane, BorderLayout.CENTER);
         
+        // Shown in place of the list while there are no users
+        JLabel emptyLabel = new JLabel("No users available yet", SwingConstants.CENTER);
+        emptyLabel.setFont(new Font("Garamond", Font.PLAIN, 16));
+        emptyLabel.setForeground(DIALOG_TEXT_COLOR);
+        emptyLabel.setOpaque(true);
+        emptyLabel.setBackground(new Color(70, 30, 100));
+        showUserListOrPlaceholder(scrollPane, userList, emptyLabel);
+        
+        todayButton.addActionListener(_ -> {
+            SoundUtility.playSE(clickSound);
+            dialogTitleLabel.setText("TODAY'S BEST");
+            emptyLabel.setText("No scores today yet");
+            showWindow(WindowedLeaderboard.Window.TODAY, userListModel, scrollPane, userList, emptyLabel);
+        });
+        weekButton.addActionListener(_ -> {
+            SoundUtility.playSE(clickSound);
+            dialogTitleLabel.setText("THIS WEEK'S BEST");
+            emptyLabel.setText("No scores this week yet");
+            showWindow(WindowedLeaderboard.Window.THIS_WEEK, userListModel, scrollPane, userList, emptyLabel);
+        });
+        allTimeButton.addActionListener(_ -> {
+            SoundUtility.playSE(clickSound);
+            dialogTitleLabel.setText("HIGH SCORE");
+            emptyLabel.setText("No users available yet");
+            showWindow(WindowedLeaderboard.Window.ALL_TIME, userListModel, scrollPane, userList, emptyLabel);
+        });
+        
         // Create buttons panel
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
         buttonPanel.setBackground(DIALOG_BG_COLOR);
@@ -260,27 +303,10 @@ public class IntroScreen extends JPanel {
         // Create button for deleting selected user
         JButton deleteButton = createDialogButton("Delete User");
         deleteButton.addActionListener(_ -> {
-            se.setFile(clickSound);
-            se.play();
-            int selectedIndex = userList.getSelectedIndex();
-            if (selectedIndex != -1) {
-                String selectedUser = userListModel.getElementAt(selectedIndex);
-                
-                // Skip handling for the "No users available yet" message
-                if (selectedUser.equals("No users available yet")) {
-                    return;
-                }
-                
-                // Improved parsing to extract just the username
-                // Format is: "1. username: score"
-                String username = selectedUser.split("\\.")[1]; // Split by the period after rank number
-                if (username != null) {
-                    username = username.trim(); // Remove leading/trailing spaces
-                    int colonIndex = username.lastIndexOf(':');
-                    if (colonIndex > 0) {
-                        username = username.substring(0, colonIndex).trim(); // Extract just the username part
-                    }
-                }
+            SoundUtility.playSE(clickSound);
+            User selectedUser = userList.getSelectedValue();
+            if (selectedUser != null) {
+                String username = selectedUser.getUsername(); // The store's key, never parsed from display text
                 
                 int choice = JOptionPane.showConfirmDialog(dialog, 
                     "Are you sure you want to delete user '" + username + "'?", 
@@ -290,7 +316,9 @@ public class IntroScreen extends JPanel {
                 
                 if (choice == JOptionPane.YES_OPTION) {
                     userManager.deleteUser(username);
-                    refreshUserList(userListModel);
+                    userList.clearSelection();
+                    userListModel.refresh();
+                    showUserListOrPlaceholder(scrollPane, userList, emptyLabel);
                 }
             } else {
                 JOptionPane.showMessageDialog(dialog, 
@@ -300,16 +328,34 @@ public class IntroScreen extends JPanel {
             }
         });
         
+        // Create button for showing the selected user's combat totals
+        JButton statsButton = createDialogButton("Combat Stats");
+        statsButton.addActionListener(_ -> {
+            SoundUtility.playSE(clickSound);
+            User selectedUser = userList.getSelectedValue();
+            if (selectedUser != null) {
+                JOptionPane.showMessageDialog(dialog, 
+                    describeCombatStats(selectedUser.getUsername()), 
+                    "Combat Stats: " + selectedUser.getUsername(), 
+                    JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(dialog, 
+                    "Please select a user first", 
+                    "No Selection", 
+                    JOptionPane.WARNING_MESSAGE);
+            }
+        });
+        
         // Create button for closing the dialog
         JButton closeButton = createDialogButton("Close");
         closeButton.addActionListener(_ -> {
-            se.setFile(clickSound);
-            se.play();
+            SoundUtility.playSE(clickSound);
             dialog.dispose();
         });
         
         // Add buttons to the panel
         buttonPanel.add(deleteButton);
+        buttonPanel.add(statsButton);
         buttonPanel.add(closeButton);
         mainPanel.add(buttonPanel, BorderLayout.SOUTH);
         
@@ -320,51 +366,38 @@ public class IntroScreen extends JPanel {
     }
     
     
-    private void refreshUserList(DefaultListModel<String> model) {
-        model.clear();
-        List<User> users = userManager.getAllUsers();
-        if (users.isEmpty()) {
-            model.addElement("No users available yet");
-        } else {
-            // Sort users by score (highest to lowest)
-            users.sort((u1, u2) -> Integer.compare(u2.getScore(), u1.getScore()));
-            
-            // Add users to list with their rank number
-            for (int i = 0; i < users.size(); i++) {
-                User user = users.get(i);
-                model.addElement((i + 1) + ". " + user.getUsername() + ": " + user.getScore());
+    // One line per level the user has played; levels are only reached in
+    // order, so the first level never attempted ends the list
+    private String describeCombatStats(String username) {
+        StringBuilder text = new StringBuilder();
+        for (int level = 1; ; level++) {
+            CombatStats stats = userManager.getCombatStats(username, level);
+            if (stats.get(CombatStats.ATTEMPTS) == 0) {
+                break;
             }
+            text.append(String.format("Level %d: cleared %d of %d, accuracy %.0f%%, damage taken %d, played %d:%02d%n",
+                    level, stats.get(CombatStats.CLEARS), stats.get(CombatStats.ATTEMPTS),
+                    stats.getAccuracy() * 100, stats.getDamageTaken(),
+                    stats.get(CombatStats.PLAY_MILLIS) / 60000, stats.get(CombatStats.PLAY_MILLIS) / 1000 % 60));
         }
+        return text.length() == 0 ? "No levels finished yet" : text.toString();
     }
-    public static class SoundEffect {
-        Clip clip;
-        public void setFile(String soundFileName) {
-            try {
-                File file = new File(soundFileName);
-                if (!file.exists()) {
-                    System.err.println("Sound file not found: " + file.getAbsolutePath());
-                    return;
-                }
-                AudioInputStream sound = AudioSystem.getAudioInputStream(file);
-                clip = AudioSystem.getClip();
-                clip.open(sound);
-            } catch (UnsupportedAudioFileException | IOException | LineUnavailableException e) {
-                System.err.println("Error loading sound: " + e.getMessage());
-            }
-        }
-        public void play() {
-            if (clip != null) {
-                clip.setFramePosition(0);
-                clip.start();
-            }
-        }
+
+    private void showWindow(WindowedLeaderboard.Window window, LeaderboardListModel userListModel,
+            JScrollPane scrollPane, JList<User> userList, JLabel emptyLabel) {
+        userList.clearSelection();
+        userListModel.setWindow(window);
+        userList.ensureIndexIsVisible(0);
+        showUserListOrPlaceholder(scrollPane, userList, emptyLabel);
     }
 
+    private void showUserListOrPlaceholder(JScrollPane scrollPane, JList<User> userList, JLabel emptyLabel) {
+        scrollPane.setViewportView(userList.getModel().getSize() == 0 ? emptyLabel : userList);
+    }
     public class ButtonHandler implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent event) {
-            se.setFile(clickSound);
-            se.play();
+            SoundUtility.playSE(clickSound);
         }
     }
 
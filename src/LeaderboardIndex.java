@@ -0,0 +1,246 @@
+// LeaderboardIndex.java
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Users ordered by score (highest first, ties by name), kept as a treap where
+// every node knows the size of its subtree. Adding, removing, finding a
+// user's rank and jumping to the n-th place are all O(log n), so the
+// leaderboard never has to be sorted.
+//
+// Nodes are never changed once built; an update copies the O(log n) nodes on
+// its path and shares the rest with the previous tree. Updates must be
+// serialized by the caller, but queries need no lock: each one reads the root
+// once, and snapshot() freezes a version for a series of queries in O(1).
+public class LeaderboardIndex {
+    private volatile Node root;
+
+    public LeaderboardIndex() {
+    }
+
+    private LeaderboardIndex(Node root) {
+        this.root = root;
+    }
+
+    // Read-only copy of the current version; later updates do not affect it
+    public LeaderboardIndex snapshot() {
+        return new LeaderboardIndex(root);
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public void add(String username, int score) {
+        root = insert(root, score, username);
+    }
+
+    // Adds users none of which are in the index yet. The batch is built into a
+    // tree of its own and joined in one pass, which copies far fewer nodes
+    // than adding them one at a time.
+    public void addAll(Collection<User> users) {
+        List<User> sorted = new ArrayList<>(users);
+        sorted.sort((a, b) -> a.getScore() != b.getScore()
+                ? Integer.compare(b.getScore(), a.getScore())
+                : a.getUsername().compareTo(b.getUsername()));
+        root = union(root, build(sorted, 0, sorted.size()));
+    }
+
+    // Removes the entry for username, which must have been added with this score
+    public void remove(String username, int score) {
+        root = remove(root, score, username);
+    }
+
+    // Moves username from oldScore to newScore; queries see either the old or the new version
+    public void rescore(String username, int oldScore, int newScore) {
+        root = insert(remove(root, oldScore, username), newScore, username);
+    }
+
+    // 1 for the top score, or -1 if username/score is not in the index
+    public int rank(String username, int score) {
+        int ahead = 0;
+        Node node = root;
+        while (node != null) {
+            int compare = compare(score, username, node);
+            if (compare == 0) {
+                return ahead + size(node.left) + 1;
+            } else if (compare < 0) {
+                node = node.left;
+            } else {
+                ahead += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    public List<User> topN(int k) {
+        return page(0, k);
+    }
+
+    // Up to limit users starting at the given 0-based position
+    public List<User> page(int offset, int limit) {
+        Node top = root;
+        List<User> page = new ArrayList<>(Math.max(0, Math.min(limit, size(top) - offset)));
+        collect(top, offset, offset + limit, page);
+        return page;
+    }
+
+    // User at the given 0-based position, or null past the end
+    public User get(int position) {
+        Node node = root;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (position < leftSize) {
+                node = node.left;
+            } else if (position == leftSize) {
+                return new User(node.username, node.score);
+            } else {
+                position -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    // In-order walk that skips whole subtrees outside [from, to)
+    private static void collect(Node node, int from, int to, List<User> out) {
+        if (node == null || from >= to) {
+            return;
+        }
+        int leftSize = size(node.left);
+        if (from < leftSize) {
+            collect(node.left, from, to, out);
+        }
+        if (from <= leftSize && leftSize < to) {
+            out.add(new User(node.username, node.score));
+        }
+        if (to > leftSize + 1) {
+            collect(node.right, from - leftSize - 1, to - leftSize - 1, out);
+        }
+    }
+
+    // Order of (score, username) relative to node: negative if it ranks higher
+    private static int compare(int score, String username, Node node) {
+        if (score != node.score) {
+            return score > node.score ? -1 : 1;
+        }
+        return username.compareTo(node.username);
+    }
+
+    private static Node insert(Node node, int score, String username) {
+        Node[] parts = split(node, score, username);
+        return merge(merge(parts[0], new Node(username, score, null, null)), parts[1]);
+    }
+
+    // Splits into entries ranking above (score, username) and the rest
+    private static Node[] split(Node node, int score, String username) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (compare(score, username, node) > 0) {
+            Node[] parts = split(node.right, score, username);
+            return new Node[] {node.with(node.left, parts[0]), parts[1]};
+        } else {
+            Node[] parts = split(node.left, score, username);
+            return new Node[] {parts[0], node.with(parts[1], node.right)};
+        }
+    }
+
+    // Joins two trees where every entry of left ranks above every entry of right
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            return left.with(left.left, merge(left.right, right));
+        } else {
+            return right.with(merge(left, right.left), right.right);
+        }
+    }
+
+    // Tree of sorted[from, to), which is in leaderboard order
+    private static Node build(List<User> sorted, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        if (to - from == 1) {
+            User user = sorted.get(from);
+            return new Node(user.getUsername(), user.getScore(), null, null);
+        }
+        int mid = (from + to) >>> 1;
+        return merge(build(sorted, from, mid), build(sorted, mid, to));
+    }
+
+    // Joins two trees that have no entries in common, in any order
+    private static Node union(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority < b.priority) {
+            Node swap = a;
+            a = b;
+            b = swap;
+        }
+        Node[] parts = split(b, a.score, a.username);
+        return a.with(union(a.left, parts[0]), union(a.right, parts[1]));
+    }
+
+    private static Node remove(Node node, int score, String username) {
+        if (node == null) {
+            return null;
+        }
+        int compare = compare(score, username, node);
+        if (compare == 0) {
+            return merge(node.left, node.right);
+        } else if (compare < 0) {
+            Node left = remove(node.left, score, username);
+            return left == node.left ? node : node.with(left, node.right);
+        } else {
+            Node right = remove(node.right, score, username);
+            return right == node.right ? node : node.with(node.left, right);
+        }
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node {
+        final String username;
+        final int score;
+        final int priority;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(String username, int score, Node left, Node right) {
+            this(username, score, priorityOf(username), left, right);
+        }
+
+        private Node(String username, int score, int priority, Node left, Node right) {
+            this.username = username;
+            this.score = score;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + size(right) + 1;
+        }
+
+        Node with(Node left, Node right) {
+            return new Node(username, score, priority, left, right);
+        }
+
+        // Scrambled name hash, so the shape does not depend on insertion order
+        private static int priorityOf(String username) {
+            int h = username.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
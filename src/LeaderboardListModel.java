@@ -0,0 +1,90 @@
+// LeaderboardListModel.java
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.AbstractListModel;
+
+// List model over a snapshot of UserManager's leaderboard, highest score
+// first. Rows are fetched a page at a time as the list asks for them, and only
+// the last few pages are kept, so a JList over any number of users opens
+// instantly. The snapshot keeps rows consistent while other threads change
+// scores; refresh() moves to the current version.
+// Lists using it should set a prototype cell value so Swing does not measure
+// every row.
+//
+// setWindow() switches to today's or this week's best scores instead, of
+// which only the top RECENT_ROWS are shown.
+public class LeaderboardListModel extends AbstractListModel<User> {
+    private static final long serialVersionUID = 1L;
+    private static final int PAGE_SIZE = 100;
+    private static final int CACHED_PAGES = 8;
+    private static final int RECENT_ROWS = 100;
+
+    private final transient UserManager userManager;
+    private WindowedLeaderboard.Window window = WindowedLeaderboard.Window.ALL_TIME;
+    private transient LeaderboardIndex leaderboard;
+    private transient List<User> recent; // Rows of a window other than ALL_TIME
+    private int size;
+    private final Map<Integer, List<User>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<User>> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    public LeaderboardListModel(UserManager userManager) {
+        this.userManager = userManager;
+        this.leaderboard = userManager.getLeaderboardSnapshot();
+        this.size = leaderboard.size();
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public User getElementAt(int index) {
+        if (recent != null) {
+            return index < recent.size() ? recent.get(index) : null;
+        }
+        int pageNumber = index / PAGE_SIZE;
+        List<User> page = pages.get(pageNumber);
+        if (page == null) {
+            page = leaderboard.page(pageNumber * PAGE_SIZE, PAGE_SIZE);
+            pages.put(pageNumber, page);
+        }
+        int offset = index % PAGE_SIZE;
+        return offset < page.size() ? page.get(offset) : null;
+    }
+
+    // Shows the best scores set within window
+    public void setWindow(WindowedLeaderboard.Window window) {
+        this.window = window;
+        refresh();
+    }
+
+    // Drops cached rows and tells the list to re-read them, after the store changed
+    public void refresh() {
+        int oldSize = size;
+        pages.clear();
+        if (window == WindowedLeaderboard.Window.ALL_TIME) {
+            recent = null;
+            leaderboard = userManager.getLeaderboardSnapshot();
+            size = leaderboard.size();
+        } else {
+            recent = userManager.getTopUsers(window, RECENT_ROWS);
+            size = recent.size();
+        }
+        if (size < oldSize) {
+            fireIntervalRemoved(this, size, oldSize - 1);
+        } else if (size > oldSize) {
+            fireIntervalAdded(this, oldSize, size - 1);
+        }
+        if (size > 0) {
+            fireContentsChanged(this, 0, size - 1);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+// LeaderboardService.java
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+// Stand-in for the central leaderboard: keeps every player's best score across
+// all cabinets, in memory, and takes ScoreBatch requests over HTTP at /scores.
+// It remembers the next event number it expects from each cabinet and skips
+// events below it, so a batch sent twice (after a lost response, or by two
+// game processes of one cabinet at once) counts once. Keeping only the best
+// score also makes replaying events harmless if the service restarts and
+// forgets those numbers.
+//
+// Usage: java LeaderboardService [port]
+public class LeaderboardService {
+    public static final int DEFAULT_PORT = 8765;
+
+    private final Map<String, Integer> bestScores = new HashMap<>();
+    private final LeaderboardIndex leaderboard = new LeaderboardIndex();
+    private final Map<Long, Long> nextSequences = new HashMap<>(); // By cabinet id
+    private long eventsApplied = 0;
+    private long batchesReceived = 0;
+
+    // Applies a batch and returns the response to send back
+    public synchronized byte[] handle(byte[] request) throws IOException {
+        ScoreBatch batch = ScoreBatch.decodeRequest(request);
+        long next = nextSequences.getOrDefault(batch.cabinetId, Long.MIN_VALUE);
+        Set<String> players = new LinkedHashSet<>();
+        for (ScoreOutbox.Event event : batch.events) {
+            players.add(event.username);
+            if (event.sequence < next) {
+                continue; // Already applied
+            }
+            Integer best = bestScores.get(event.username);
+            if (best == null) {
+                bestScores.put(event.username, event.score);
+                leaderboard.add(event.username, event.score);
+            } else if (event.score > best) {
+                bestScores.put(event.username, event.score);
+                leaderboard.rescore(event.username, best, event.score);
+            }
+            next = event.sequence + 1;
+            eventsApplied++;
+        }
+        nextSequences.put(batch.cabinetId, next);
+        batchesReceived++;
+        List<ScoreBatch.Standing> standings = new ArrayList<>(players.size());
+        for (String username : players) {
+            int best = bestScores.get(username);
+            standings.add(new ScoreBatch.Standing(username, best, leaderboard.rank(username, best)));
+        }
+        return ScoreBatch.encodeResponse(next, standings);
+    }
+
+    public synchronized String summary() {
+        return nextSequences.size() + " cabinets, " + bestScores.size() + " players, "
+                + batchesReceived + " batches, " + eventsApplied + " runs";
+    }
+
+    public HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/scores", this::exchange);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        return server;
+    }
+
+    private void exchange(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] response;
+            try (InputStream in = exchange.getRequestBody()) {
+                response = handle(in.readAllBytes());
+            } catch (IOException e) {
+                byte[] message = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(400, message.length);
+                exchange.getResponseBody().write(message);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        LeaderboardService service = new LeaderboardService();
+        service.start(port);
+        System.out.println("Leaderboard service listening on http://localhost:" + port + "/scores");
+        String last = "";
+        while (true) {
+            Thread.sleep(10_000);
+            String summary = service.summary();
+            if (!summary.equals(last)) {
+                System.out.println(summary);
+                last = summary;
+            }
+        }
+    }
+}
@@ -5,11 +5,12 @@ import javax.swing.*;
 public class Level {
     private final int levelNumber;
     private final List<Enemy> enemies;
-    private final Image backgroundImage;
+    private final String backgroundImagePath;
+    private Image backgroundImage; // Loaded when first drawn, so worlds run without a screen load no images
     public Level(int levelNumber, List<Enemy> enemies, String backgroundImagePath) {
         this.levelNumber = levelNumber;
         this.enemies = enemies;
-        this.backgroundImage = new ImageIcon(backgroundImagePath).getImage();
+        this.backgroundImagePath = backgroundImagePath;
     }
     public int getLevelNumber() {
         return levelNumber;
@@ -18,6 +19,9 @@ public class Level {
         return enemies;
     }
     public Image getBackgroundImage() {
+        if (backgroundImage == null) {
+            backgroundImage = new ImageIcon(backgroundImagePath).getImage();
+        }
         return backgroundImage;
     }
 }
\ No newline at end of file
@@ -8,13 +8,6 @@ import java.awt.RenderingHints;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.RoundRectangle2D;
-import java.io.File;
-import java.io.IOException;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
@@ -27,8 +20,7 @@ public class LevelUpScreen extends JPanel {
     private final JLabel selectUpgradeLabel, levelUpTitleLabel;
     
     private Image backgroundImage;
-    private String clickSound;
-    private final static SoundEffect se = new SoundEffect();
+    private final int clickSound = SoundBank.SOUND_LEVEL_UP; // Played from the shared sound bank
     
     // Custom colors
     private final Color BUTTON_COLOR = new Color(0,255,0);  // button bg color
@@ -70,23 +62,18 @@ public class LevelUpScreen extends JPanel {
         addIconToButton(addDamageButton, "⚔️", "Deal more damage to enemies");
         addIconToButton(addProjectileSpeedButton, "💨", "Move faster across the battlefield");
         addIconToButton(addAttackSpeedButton, "⚡", "Attack more frequently");
-        // Use a relative path for the click sound
-        clickSound = "sound/LevelUpSE.wav";
         addDamageButton.addActionListener(e -> {
-            se.setFile(clickSound);
-            se.play();
+            SoundUtility.playSE(clickSound);
             onAddDamage.run();
             onNextLevel.run(); // Make sure to trigger the next level after upgrade
         });
         addProjectileSpeedButton.addActionListener(e -> {
-            se.setFile(clickSound);
-            se.play();
+            SoundUtility.playSE(clickSound);
             onAddProjectileSpeed.run();
             onNextLevel.run(); // Make sure to trigger the next level after upgrade
         });
         addAttackSpeedButton.addActionListener(e -> {
-            se.setFile(clickSound);
-            se.play();
+            SoundUtility.playSE(clickSound);
             onAddAttackSpeed.run();
             onNextLevel.run(); // Make sure to trigger the next level after upgrade
         });
@@ -147,29 +134,6 @@ public class LevelUpScreen extends JPanel {
         // Modify button text to include icon
         button.setText(icon + " " + button.getText());
     }
-    public static class SoundEffect {
-        private Clip clip;
-        public void setFile(String soundFileName) {
-    try {
-        File file = new File(soundFileName);
-        if (!file.exists()) {
-            System.err.println("Sound file not found: " + file.getAbsolutePath());
-            return;
-        }
-        AudioInputStream sound = AudioSystem.getAudioInputStream(file);
-        clip = AudioSystem.getClip();
-        clip.open(sound);
-    } catch (UnsupportedAudioFileException | IOException | LineUnavailableException e) {
-        System.err.println("Error loading sound: " + e.getMessage());
-    }
-}
-        public void play() {
-            if (clip != null) {
-                clip.setFramePosition(0);
-                clip.start();
-            }
-        }
-    }
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
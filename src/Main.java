@@ -1,12 +1,35 @@
 import java.awt.CardLayout;
+import java.util.Random;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 
+// Usage: java Main [--autopilot stationary|circle|flee|dodge|wander [--seed s]]
+// With --autopilot the game plays itself without stopping: upgrades are
+// picked at random and a lost or won game starts again at once. The seed
+// drives both the policy and the upgrades, so a run can be played again; it
+// is printed at start. Autopilot runs are soak runs and leave no trace: the
+// users, scores, stats, session and replays stay in memory, and nothing is
+// sent to a leaderboard service.
 public class Main {
     
     public static void main(String[] args) {
+        String autopilot = null;
+        long seed = System.nanoTime();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--autopilot" -> autopilot = args[i + 1];
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        InputSource autopilotInput = autopilot == null ? null : Autopilot.create(autopilot, seed);
+        Random autopilotUpgrades = new Random(seed);
+        if (autopilot != null) {
+            System.out.println("Autopilot " + autopilot + ", seed " + seed);
+        }
+        String autopilotPolicy = autopilot; // For the lambdas below
         SwingUtilities.invokeLater(() -> {
             // Create the game window
             JFrame frame = new JFrame("Shooter Game");
@@ -18,11 +41,16 @@ public class Main {
             JPanel mainPanel = new JPanel(cardLayout);
             frame.add(mainPanel);
             
+            // Load every sound effect once, before any screen can play one
+            SoundUtility.loadSoundBank();
+            
             // Create the MusicPlayer instance
             MusicPlayer musicPlayer = new MusicPlayer();
             
             // Create the UserManager instance
-            UserManager userManager = new UserManager();
+            UserManager userManager = autopilotPolicy == null ? UserManager.open() : UserManager.openInMemory();
+            // Flush any pending saves however the game exits
+            Runtime.getRuntime().addShutdownHook(new Thread(userManager::shutdown, "UserManager-shutdown"));
             
             // Create a temporary dummy runnable for game-related actions that will be initialized later
             Runnable dummyAction = () -> System.out.println("This action will be replaced later");
@@ -47,23 +75,41 @@ public class Main {
             );
             
             //the GamePanel
+            GamePanel[] autopilotPanel = new GamePanel[1]; // The panel, for its own callbacks
             GamePanel gamePanel = new GamePanel(
                 () -> {
+                    if (autopilotPolicy != null) {
+                        Autopilot.chooseUpgrade(autopilotUpgrades).apply(autopilotPanel[0].getPlayer());
+                        SwingUtilities.invokeLater(autopilotPanel[0]::startNextLevel);
+                        return;
+                    }
                     cardLayout.show(mainPanel, "levelUp"); // Show level-up screen when a level is completed
                 },
                 () -> {
+                    if (autopilotPolicy != null) {
+                        SwingUtilities.invokeLater(autopilotPanel[0]::restartGame);
+                        return;
+                    }
                     // Show game-over screen when the player dies
                     cardLayout.show(mainPanel, "gameOver");
                     gameOverScreen.onShow(); 
                 },
                 () -> {
+                    if (autopilotPolicy != null) {
+                        SwingUtilities.invokeLater(autopilotPanel[0]::startGame);
+                        return;
+                    }
                     // Show victory screen when player wins
                     System.out.println("Victory condition triggered");
                     cardLayout.show(mainPanel, "victory");
                     victoryScreen.onShow(); 
                 },
-                userManager // Pass the UserManager instance
+                userManager, // Pass the UserManager instance
+                autopilotPolicy == null ? null : "Autopilot-" + autopilotPolicy
             );
+            autopilotPanel[0] = gamePanel;
+            gamePanel.setInputSource(autopilotInput);
+            gamePanel.setSavesToFiles(autopilotPolicy == null);
     
             // Now update the actions with the properly initialized gamePanel
             gameOverScreen.setRestartAction(() -> {
@@ -93,7 +139,10 @@ public class Main {
             // Intro screen
             IntroScreen introScreen = new IntroScreen(
                 () -> {
-                    gamePanel.startGame(); // Start the game when Play is clicked
+                    // Start the game when Play is clicked, unless the player picks up an unfinished one
+                    if (!gamePanel.resumeSavedSession()) {
+                        gamePanel.startGame();
+                    }
                     cardLayout.show(mainPanel, "game");
                 },
                 () -> JOptionPane.showMessageDialog(frame, "Credits:\n(Hazel + AJ + JL + Emilley)"), // Show credits
@@ -110,17 +159,17 @@ public class Main {
             // Level-up screen
             LevelUpScreen levelUpScreen = new LevelUpScreen(
                 () -> {
-                    gamePanel.getPlayer().increaseMissileDamage(12); // Add 12 damage
+                    Upgrade.MISSILE_DAMAGE.apply(gamePanel.getPlayer());
                     cardLayout.show(mainPanel, "game");
                     gamePanel.startNextLevel();
                 },
                 () -> {
-                    gamePanel.getPlayer().increaseMoveSpeed(2); // Increase move speed
+                    Upgrade.MOVE_SPEED.apply(gamePanel.getPlayer());
                     cardLayout.show(mainPanel, "game");
                     gamePanel.startNextLevel();
                 },
                 () -> {
-                    gamePanel.getPlayer().increaseAttackSpeed(80); // Reduce attack delay by 80ms
+                    Upgrade.ATTACK_SPEED.apply(gamePanel.getPlayer());
                     cardLayout.show(mainPanel, "game");
                     gamePanel.startNextLevel();
                 },
@@ -136,6 +185,10 @@ public class Main {
             cardLayout.show(mainPanel, "intro");
             
             frame.setVisible(true);
+            if (autopilotPolicy != null) {
+                cardLayout.show(mainPanel, "game");
+                gamePanel.startGame();
+            }
             
             // Play the intro music - NOW WITH RELATIVE PATHS
             musicPlayer.loadMusic("sound/BGdontsaaword.wav", "sound/BGIzzo.wav");
@@ -4,6 +4,7 @@ import java.awt.Graphics2D;
 import java.awt.MultipleGradientPaint.CycleMethod;
 import java.awt.RadialGradientPaint;
 import java.awt.geom.Point2D;
+import java.nio.ByteBuffer;
 
 public class Missile {
     private int x, y;
@@ -23,10 +24,15 @@ public class Missile {
     private final int[] trailY = new int[TRAIL_LENGTH];
     
     // Sound effect indices (define these as constants in your game class)
-    public static final int SOUND_MISSILE_FIRE = 0;
-    public static final int SOUND_MISSILE_HIT = 1;
+    public static final int SOUND_MISSILE_FIRE = SoundBank.SOUND_MISSILE_FIRE;
+    public static final int SOUND_MISSILE_HIT = SoundBank.SOUND_MISSILE_HIT;
     
     public Missile(int x, int y, int speed, int damage) {
+        this(x, y, speed, damage, true);
+    }
+
+    // launched is false for a missile restored from a snapshot, which is already in flight
+    private Missile(int x, int y, int speed, int damage, boolean launched) {
         this.x = x;
         this.y = y;
         this.speed = speed;
@@ -39,8 +45,22 @@ public class Missile {
             trailY[i] = y;
         }
         
-        // Play missile launch sound effect
-        SoundUtility.playSE(SOUND_MISSILE_FIRE);
+        // Post missile launch sound effect to the audio thread
+        if (launched) {
+            SoundUtility.postSE(SOUND_MISSILE_FIRE);
+        }
+    }
+
+    // Appends the missile to a session snapshot; the trail is left out
+    void writeState(ByteBuffer out) {
+        out.putInt(x).putInt(y).putInt(speed).putInt(damage).put((byte) (active ? 1 : 0)).putFloat(hue);
+    }
+
+    static Missile readState(ByteBuffer in) {
+        Missile missile = new Missile(in.getInt(), in.getInt(), in.getInt(), in.getInt(), false);
+        missile.active = in.get() != 0;
+        missile.hue = in.getFloat();
+        return missile;
     }
     
     public void moveTowards(int targetX, int targetY) {
@@ -71,8 +91,8 @@ public class Missile {
     // Add this method to handle missile hit/explosion
     public void hit() {
         this.active = false;
-        // Play missile hit/explosion sound effect
-        SoundUtility.playSE(SOUND_MISSILE_HIT);
+        // Post missile hit/explosion sound effect to the audio thread
+        SoundUtility.postSE(SOUND_MISSILE_HIT);
     }
     
     public void draw(Graphics g) {
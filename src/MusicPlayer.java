@@ -1,85 +1,35 @@
-import java.io.File;
-import java.io.IOException;
-
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.FloatControl;
-import javax.sound.sampled.LineEvent;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.UnsupportedAudioFileException;
-
 public class MusicPlayer {
-    private final Clip[] clips = new Clip[2];
-    private int currentIndex = 0;
-    private final FloatControl[] volumeControls = new FloatControl[2];
+    private MusicStream stream;
     private boolean isMuted = false;
     private float currentVolume = 0.75f; // Default volume
+    private int crossfadeMillis = 0; // 0 = gapless hard cut between tracks
 
     public void loadMusic(String filePath1, String filePath2) {
-        try {
-            clips[0] = AudioSystem.getClip();
-            clips[1] = AudioSystem.getClip();
-
-            AudioInputStream audioStream1 = AudioSystem.getAudioInputStream(new File(filePath1));
-            AudioInputStream audioStream2 = AudioSystem.getAudioInputStream(new File(filePath2));
-
-            clips[0].open(audioStream1);
-            clips[1].open(audioStream2);
-
-            volumeControls[0] = (FloatControl) clips[0].getControl(FloatControl.Type.MASTER_GAIN);
-            volumeControls[1] = (FloatControl) clips[1].getControl(FloatControl.Type.MASTER_GAIN);
-
-            setVolume(currentVolume);
-
-            // Set listeners for when each clip finishes
-            clips[0].addLineListener(e -> {
-                if (e.getType() == LineEvent.Type.STOP && !isMuted) {
-                    playNext(1); // After clip[0], play clip[1]
-                }
-            });
-
-            clips[1].addLineListener(e -> {
-                if (e.getType() == LineEvent.Type.STOP && !isMuted) {
-                    playNext(0); // After clip[1], play clip[0]
-                }
-            });
-
-        } catch (LineUnavailableException | IOException | UnsupportedAudioFileException e) {
-            e.printStackTrace(System.err);
+        // Tracks are streamed from disk as they play, so loading only swaps the playlist
+        if (stream != null) {
+            stream.close();
         }
+        stream = new MusicStream(filePath1, filePath2); // After track 1, play track 2, and back again
+        stream.setVolume(currentVolume);
+        stream.setCrossfadeMillis(crossfadeMillis);
     }
 
     public void play() {
-        if (!isMuted && clips[currentIndex] != null) {
-            clips[currentIndex].setFramePosition(0);
-            clips[currentIndex].start();
-        }
-    }
-
-    private void playNext(int nextIndex) {
-        if (!isMuted) {
-            clips[currentIndex].stop();
-            currentIndex = nextIndex;
-            clips[currentIndex].setFramePosition(0);
-            clips[currentIndex].start();
+        if (!isMuted && stream != null) {
+            stream.start();
         }
     }
 
     public void stop() {
-        if (clips[currentIndex] != null && clips[currentIndex].isRunning()) {
-            clips[currentIndex].stop();
+        if (stream != null && stream.isPlaying()) {
+            stream.stop();
         }
     }
 
     public void setVolume(float volume) {
         currentVolume = volume;
-        for (FloatControl control : volumeControls) {
-            if (control != null) {
-                float range = control.getMaximum() - control.getMinimum();
-                float gain = (range * volume) + control.getMinimum();
-                control.setValue(gain);
-            }
+        if (stream != null) {
+            stream.setVolume(volume);
         }
     }
 
@@ -100,4 +50,28 @@ public class MusicPlayer {
     public float getVolume() {
         return currentVolume;
     }
+
+    public void setCrossfadeMillis(int millis) {
+        crossfadeMillis = millis;
+        if (stream != null) {
+            stream.setCrossfadeMillis(millis);
+        }
+    }
+
+    // Track transition metrics from the stream, for tuning and diagnostics
+    public int getTransitionCount() {
+        return stream != null ? stream.getTransitionCount() : 0;
+    }
+
+    public long getLastTransitionNanos() {
+        return stream != null ? stream.getLastTransitionNanos() : 0;
+    }
+
+    public int getTransitionUnderruns() {
+        return stream != null ? stream.getTransitionUnderruns() : 0;
+    }
+
+    public AudioStats getStats() {
+        return stream != null ? stream.getStats() : null;
+    }
 }
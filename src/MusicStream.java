@@ -0,0 +1,287 @@
+import java.io.IOException;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+// Streams one or more tracks through a single SourceDataLine on its own thread.
+// Tracks are played in order and wrap around, and only a couple of small
+// buffers are held at any time, so a long track costs no more memory than a short one.
+//
+// Transitions are scheduled by the stream itself rather than by line events:
+// early in each track the next one is opened and its first few hundred
+// milliseconds are decoded, and when the current track runs out the rest of
+// the same write is filled from that buffer, so the handover lands on the exact
+// frame with no gap. An optional crossfade overlaps the end of one track with
+// the start of the next.
+public class MusicStream {
+    private static final int CHUNK_FRAMES = 2048;       // ~46ms per write at 44.1kHz
+    private static final int LINE_BUFFER_FRAMES = 8192; // ~186ms queued in the line
+    private static final int PREBUFFER_FRAMES = 13230;  // ~300ms of the next track
+
+    private final String[] tracks;
+    private int currentIndex = 0;
+    private SourceDataLine line;
+    private FloatControl volumeControl;
+    private float volume = 0.75f;
+    private volatile int crossfadeFrames = 0;
+    private Thread playbackThread;
+    private volatile boolean running = false;
+
+    // Transition metrics, written by the stream thread
+    private volatile int transitionCount = 0;
+    private volatile long lastTransitionNanos = 0;  // Time spent switching readers at the handover
+    private volatile long lastPrebufferNanos = 0;   // Time spent opening and pre-decoding the next track
+    private volatile int transitionUnderruns = 0;   // Handovers where the line had already run dry
+    private final AudioStats stats = new AudioStats();
+
+    public MusicStream(String... tracks) {
+        this.tracks = tracks.clone();
+    }
+
+    // Starts the current track from the beginning
+    public synchronized void start() {
+        stop();
+        try {
+            openLine();
+        } catch (LineUnavailableException e) {
+            e.printStackTrace(System.err);
+            return;
+        }
+        running = true;
+        line.start();
+        playbackThread = new Thread(this::streamLoop, "MusicStream");
+        playbackThread.setDaemon(true);
+        playbackThread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (line != null) {
+            line.stop();
+            line.flush(); // Unblocks a write() that is waiting for space
+        }
+        if (playbackThread != null) {
+            try {
+                playbackThread.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            playbackThread = null;
+        }
+    }
+
+    // Stops playback and gives the line back to the system
+    public synchronized void close() {
+        stop();
+        if (line != null) {
+            line.close();
+            line = null;
+            volumeControl = null;
+        }
+    }
+
+    public boolean isPlaying() {
+        return running;
+    }
+
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    public synchronized void setVolume(float volume) {
+        this.volume = volume;
+        applyVolume();
+    }
+
+    public float getVolume() {
+        return volume;
+    }
+
+    // 0 switches tracks with a hard cut on the exact frame boundary
+    public void setCrossfadeMillis(int millis) {
+        crossfadeFrames = (int) (Math.max(0, millis) * PcmStreamReader.OUTPUT_FORMAT.getSampleRate() / 1000);
+    }
+
+    public int getTransitionCount() {
+        return transitionCount;
+    }
+
+    public long getLastTransitionNanos() {
+        return lastTransitionNanos;
+    }
+
+    public long getLastPrebufferNanos() {
+        return lastPrebufferNanos;
+    }
+
+    public int getTransitionUnderruns() {
+        return transitionUnderruns;
+    }
+
+    // Buffer fill and underruns of the music line
+    public AudioStats getStats() {
+        return stats;
+    }
+
+    private void openLine() throws LineUnavailableException {
+        if (line != null) {
+            return;
+        }
+        line = AudioSystem.getSourceDataLine(PcmStreamReader.OUTPUT_FORMAT);
+        line.open(PcmStreamReader.OUTPUT_FORMAT, LINE_BUFFER_FRAMES * PcmStreamReader.OUTPUT_FORMAT.getFrameSize());
+        if (line.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
+            volumeControl = (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
+        }
+        applyVolume();
+    }
+
+    private void applyVolume() {
+        if (volumeControl != null) {
+            float range = volumeControl.getMaximum() - volumeControl.getMinimum();
+            float gain = (range * volume) + volumeControl.getMinimum();
+            volumeControl.setValue(gain);
+        }
+    }
+
+    private void streamLoop() {
+        short[] samples = new short[CHUNK_FRAMES * 2];
+        short[] fadeSamples = new short[CHUNK_FRAMES * 2];
+        byte[] bytes = new byte[CHUNK_FRAMES * 4];
+        SourceDataLine out = line;
+        Track current = null;
+        Track next = null;
+
+        try {
+            current = new Track(tracks[currentIndex], 0);
+            while (running) {
+                long trackPosition = current.position;
+                int frames = current.read(samples, 0, CHUNK_FRAMES);
+
+                if (next != null) {
+                    crossfade(current, next, trackPosition, frames, samples, fadeSamples);
+                }
+
+                if (frames < CHUNK_FRAMES) {
+                    // Current track ended inside this chunk: carry on with the next
+                    // one from the very next frame of the same write
+                    long handoverStart = System.nanoTime();
+                    if (next == null) {
+                        next = prebufferNext(0);
+                    }
+                    frames += next.read(samples, frames, CHUNK_FRAMES - frames);
+                    current.close();
+                    current = next;
+                    next = null;
+                    currentIndex = (currentIndex + 1) % tracks.length; // Alternate to the next track
+                    if (out.available() >= out.getBufferSize()) {
+                        transitionUnderruns++;
+                    }
+                    lastTransitionNanos = System.nanoTime() - handoverStart;
+                    transitionCount++;
+                }
+
+                PcmStreamReader.toBytes(samples, frames * 2, bytes);
+                stats.recordWrite(out.getBufferSize() - out.available(), out.getBufferSize());
+                out.write(bytes, 0, frames * 4);
+
+                if (next == null && running) {
+                    // Prepared while the line still holds plenty of the current track
+                    next = prebufferNext(PREBUFFER_FRAMES);
+                }
+            }
+        } catch (IOException | UnsupportedAudioFileException e) {
+            System.err.println("Error streaming music: " + e.getMessage());
+            e.printStackTrace(System.err);
+            running = false;
+        } finally {
+            closeQuietly(current);
+            closeQuietly(next);
+        }
+    }
+
+    private Track prebufferNext(int prebufferFrames) throws IOException, UnsupportedAudioFileException {
+        long start = System.nanoTime();
+        Track track = new Track(tracks[(currentIndex + 1) % tracks.length], prebufferFrames);
+        lastPrebufferNanos = System.nanoTime() - start;
+        return track;
+    }
+
+    // Blends the start of next into the tail of current. trackPosition is the
+    // frame of current that samples[0] holds.
+    private void crossfade(Track current, Track next, long trackPosition, int frames,
+                           short[] samples, short[] fadeSamples) throws IOException {
+        int fade = crossfadeFrames;
+        if (fade == 0 || current.length <= 0) {
+            return;
+        }
+        fade = (int) Math.min(fade, current.length / 2);
+        long fadeStart = current.length - fade;
+        int first = (int) Math.max(0, fadeStart - trackPosition);
+        if (first >= frames) {
+            return;
+        }
+        int overlap = next.read(fadeSamples, 0, frames - first);
+        for (int k = 0; k < overlap; k++) {
+            float t = (trackPosition + first + k - fadeStart + 0.5f) / fade;
+            int i = (first + k) * 2;
+            samples[i] = (short) (samples[i] * (1 - t) + fadeSamples[k * 2] * t);
+            samples[i + 1] = (short) (samples[i + 1] * (1 - t) + fadeSamples[k * 2 + 1] * t);
+        }
+    }
+
+    private static void closeQuietly(Track track) {
+        if (track != null) {
+            try {
+                track.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    // A track being read, with the first part optionally decoded ahead of time
+    private static final class Track {
+        final PcmStreamReader reader;
+        final long length; // In output frames, or <= 0 if unknown
+        final short[] prebuffer;
+        int prebufferFrames;
+        int prebufferPosition = 0;
+        long position = 0;
+
+        Track(String path, int prebufferFrames) throws IOException, UnsupportedAudioFileException {
+            reader = new PcmStreamReader(path);
+            length = reader.getFrameLength();
+            prebuffer = new short[prebufferFrames * 2];
+            int filled = 0;
+            int count;
+            while (filled < prebufferFrames && (count = reader.read(prebuffer, filled, prebufferFrames - filled)) > 0) {
+                filled += count;
+            }
+            this.prebufferFrames = filled;
+        }
+
+        // Returns fewer than frames only once the track has ended
+        int read(short[] out, int offset, int frames) throws IOException {
+            int total = Math.min(frames, prebufferFrames - prebufferPosition);
+            if (total > 0) {
+                System.arraycopy(prebuffer, prebufferPosition * 2, out, offset * 2, total * 2);
+                prebufferPosition += total;
+            }
+            while (total < frames) {
+                int count = reader.read(out, offset + total, frames - total);
+                if (count <= 0) {
+                    break;
+                }
+                total += count;
+            }
+            position += total;
+            return total;
+        }
+
+        void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+// Reads a sound file a chunk at a time and hands out 16-bit stereo frames at
+// OUTPUT_FORMAT's sample rate, whatever the file was recorded at. Only a small
+// read buffer is held, so memory use does not grow with the length of the file.
+public class PcmStreamReader implements Closeable {
+    public static final AudioFormat OUTPUT_FORMAT = new AudioFormat(44100f, 16, 2, true, false);
+
+    private static final int READ_BUFFER_BYTES = 8192;
+
+    private final AudioInputStream stream;
+    private final int channels;
+    private final int frameBytes;
+    private final double step; // Source frames advanced per output frame
+    private final long outputFrameLength;
+    private final byte[] readBuffer;
+    private int readPos = 0;
+    private int readLimit = 0;
+
+    // Linear interpolation state: output frames lie between prev and cur
+    private short prevL, prevR, curL, curR;
+    private double phase = 0.0;
+    private boolean primed = false;
+    private boolean endOfStream = false;
+
+    public PcmStreamReader(String filePath) throws IOException, UnsupportedAudioFileException {
+        AudioInputStream source = AudioSystem.getAudioInputStream(new File(filePath));
+        AudioFormat sourceFormat = source.getFormat();
+        AudioFormat decodedFormat = new AudioFormat(sourceFormat.getSampleRate(), 16,
+                sourceFormat.getChannels(), true, false);
+        if (!sourceFormat.matches(decodedFormat)) {
+            source = AudioSystem.getAudioInputStream(decodedFormat, source);
+        }
+        this.stream = source;
+        this.channels = decodedFormat.getChannels();
+        this.frameBytes = channels * 2;
+        this.step = decodedFormat.getSampleRate() / OUTPUT_FORMAT.getSampleRate();
+        this.readBuffer = new byte[READ_BUFFER_BYTES - READ_BUFFER_BYTES % frameBytes];
+        long sourceFrames = source.getFrameLength();
+        this.outputFrameLength = sourceFrames <= 0 ? AudioSystem.NOT_SPECIFIED
+                : (long) ((sourceFrames - 1) / step) + 1;
+    }
+
+    // Number of frames read() will produce in total, or AudioSystem.NOT_SPECIFIED
+    // if the file does not say how long it is
+    public long getFrameLength() {
+        return outputFrameLength;
+    }
+
+    // Fills out[] with up to frames interleaved stereo frames starting at offset
+    // (in frames). Returns the number of frames read, or -1 once the file is done.
+    public int read(short[] out, int offset, int frames) throws IOException {
+        if (!primed) {
+            if (!nextSourceFrame()) {
+                return -1;
+            }
+            prevL = curL;
+            prevR = curR;
+            if (!nextSourceFrame()) {
+                // Single-frame file: hold it for one output frame
+                curL = prevL;
+                curR = prevR;
+            }
+            primed = true;
+        }
+        if (endOfStream) {
+            return -1;
+        }
+
+        int written = 0;
+        int index = offset * 2;
+        while (written < frames) {
+            while (phase >= 1.0) {
+                prevL = curL;
+                prevR = curR;
+                if (!nextSourceFrame()) {
+                    endOfStream = true;
+                    return written == 0 ? -1 : written;
+                }
+                phase -= 1.0;
+            }
+            if (phase == 0.0) {
+                out[index++] = prevL;
+                out[index++] = prevR;
+            } else {
+                out[index++] = (short) (prevL + (curL - prevL) * phase);
+                out[index++] = (short) (prevR + (curR - prevR) * phase);
+            }
+            phase += step;
+            written++;
+        }
+        return written;
+    }
+
+    // Reads a whole file into memory; only meant for short sound effects
+    public static short[] readFully(String filePath) throws IOException, UnsupportedAudioFileException {
+        try (PcmStreamReader reader = new PcmStreamReader(filePath)) {
+            short[] chunk = new short[4096 * 2];
+            short[] samples = new short[chunk.length];
+            int frames = 0;
+            int count;
+            while ((count = reader.read(chunk, 0, chunk.length / 2)) > 0) {
+                if ((frames + count) * 2 > samples.length) {
+                    samples = Arrays.copyOf(samples, Math.max(samples.length * 2, (frames + count) * 2));
+                }
+                System.arraycopy(chunk, 0, samples, frames * 2, count * 2);
+                frames += count;
+            }
+            return Arrays.copyOf(samples, frames * 2);
+        }
+    }
+
+    private boolean nextSourceFrame() throws IOException {
+        if (readLimit - readPos < frameBytes) {
+            int leftover = readLimit - readPos;
+            System.arraycopy(readBuffer, readPos, readBuffer, 0, leftover);
+            readPos = 0;
+            readLimit = leftover;
+            while (readLimit < frameBytes) {
+                int count = stream.read(readBuffer, readLimit, readBuffer.length - readLimit);
+                if (count < 0) {
+                    return false;
+                }
+                readLimit += count;
+            }
+        }
+        short left = (short) ((readBuffer[readPos] & 0xFF) | (readBuffer[readPos + 1] << 8));
+        short right = channels == 1 ? left
+                : (short) ((readBuffer[readPos + 2] & 0xFF) | (readBuffer[readPos + 3] << 8));
+        readPos += frameBytes;
+        curL = left;
+        curR = right;
+        return true;
+    }
+
+    // Converts interleaved samples to little-endian bytes for a SourceDataLine
+    public static void toBytes(short[] samples, int sampleCount, byte[] out) {
+        for (int i = 0, j = 0; i < sampleCount; i++, j += 2) {
+            out[j] = (byte) samples[i];
+            out[j + 1] = (byte) (samples[i] >> 8);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
@@ -2,6 +2,7 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import javax.imageio.ImageIO;
@@ -14,14 +15,17 @@ public class Player {
     private int missileDamage;
     private int attackSpeed; // milliseconds between attacks
     private int moveSpeed;
-    private long lastAttackTime;
+    private long lastAttackTime; // Game time, see GameWorld
     private long lastRegenTime;  // Added to track regeneration
     private List<Missile> missiles;
     private BufferedImage playerImage;
     private static final int REGEN_AMOUNT = 5;  // HP to regenerate per second
     private static final long REGEN_INTERVAL = 1000;  // 1 second in milliseconds
+    // Read once and shared: a new Player is made at every level start and restore
+    private static final BufferedImage PLAYER_IMAGE = loadImage();
 
-    public Player(int x, int y, int size, int health, int missileDamage, int attackSpeed, int moveSpeed) {
+    // now is the game time the player appears at
+    public Player(int x, int y, int size, int health, int missileDamage, int attackSpeed, int moveSpeed, long now) {
         this.x = x;
         this.y = y;
         this.size = size;
@@ -31,20 +35,52 @@ public class Player {
         this.attackSpeed = attackSpeed;
         this.moveSpeed = moveSpeed;
         this.missiles = new ArrayList<>();
-        this.lastAttackTime = System.currentTimeMillis();
-        this.lastRegenTime = System.currentTimeMillis();  // Initialize regeneration timer
+        this.lastAttackTime = now;
+        this.lastRegenTime = now;  // Initialize regeneration timer
         
-        // Load player image
+        this.playerImage = PLAYER_IMAGE;
+    }
+
+    private static BufferedImage loadImage() {
         try {
-            playerImage = ImageIO.read(new File("images/player.png"));
+            return ImageIO.read(new File("images/player.png"));
         } catch (IOException e) {
             System.err.println("Error loading player image: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Appends the player and its missiles to a session snapshot. Timers are
+    // stored as time elapsed before now, so they carry on in a later session.
+    void writeState(ByteBuffer out, long now) {
+        out.putInt(x).putInt(y).putInt(size).putInt(health).putInt(maxHealth)
+                .putInt(missileDamage).putInt(attackSpeed).putInt(moveSpeed)
+                .putInt(elapsed(now, lastAttackTime)).putInt(elapsed(now, lastRegenTime));
+        out.putShort((short) missiles.size());
+        for (Missile missile : missiles) {
+            missile.writeState(out);
         }
     }
 
+    static Player readState(ByteBuffer in, long now) {
+        int x = in.getInt(), y = in.getInt(), size = in.getInt(), health = in.getInt(), maxHealth = in.getInt();
+        Player player = new Player(x, y, size, health, in.getInt(), in.getInt(), in.getInt(), now);
+        player.maxHealth = maxHealth;
+        player.lastAttackTime = now - in.getInt();
+        player.lastRegenTime = now - in.getInt();
+        int missileCount = in.getShort() & 0xFFFF;
+        for (int i = 0; i < missileCount; i++) {
+            player.missiles.add(Missile.readState(in));
+        }
+        return player;
+    }
+
+    private static int elapsed(long now, long then) {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, now - then));
+    }
+
     // Call this method in your game loop to update regeneration
-    public void update() {
-        long currentTime = System.currentTimeMillis();
+    public void update(long currentTime) {
         if (currentTime - lastRegenTime >= REGEN_INTERVAL) {
             health = Math.min(maxHealth, health + REGEN_AMOUNT);
             lastRegenTime = currentTime;
@@ -69,15 +105,17 @@ public class Player {
         }
     }
 
-    public void fireMissile(int targetX, int targetY) {
-        long currentTime = System.currentTimeMillis();
+    // Returns whether a missile was fired; it is not while the attack cooldown runs
+    public boolean fireMissile(int targetX, int targetY, long currentTime) {
         // Only fire if attack cooldown has passed
         if (currentTime - lastAttackTime >= attackSpeed) {
             // Create missile at player position
             Missile missile = new Missile(x + size/2, y + size/2, 8, missileDamage);
             missiles.add(missile);
             lastAttackTime = currentTime;
+            return true;
         }
+        return false;
     }
 
     public void draw(Graphics g) {
@@ -0,0 +1,232 @@
+// Replay.java
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// A recorded run, made by ReplayRecorder, that can be played again through a
+// GameWorld without a screen. The run starts from a session snapshot; after
+// that only the inputs are kept, and because the world is deterministic they
+// lead to the same states. The file:
+//
+//   magic "DTRP" (4) | version (1) | recorded at, epoch ms (8) | snapshot length (varint) | snapshot
+//   events: tick step (varint) | kind (1) | data
+//
+// The tick step is from the previous event; an event is tagged with the ticks
+// the world had played when it happened. The kinds:
+//
+//   MOVE        x step, y step, zigzag (varint each) | moves (varint)  The target and mouse movements of the next tick
+//   PAUSE       The player paused or went on; game time stands still either way
+//   NEXT_LEVEL  missile damage, attack delay, move speed (varint each)  startNextLevel() with these upgrades
+//   RESIZE      width, height (varint each)
+//   SNAPSHOT    length (varint) | snapshot  The world was put back to this state (rewinding); ticks go on from its own
+//   HASH        chain (4)  Running hash of every tick's GameWorld.stateHash(), written every HASH_INTERVAL ticks
+//   END         outcome (1) | chain (4)
+//
+// A tick without a MOVE takes no steps towards the last target. Playing checks
+// each HASH, so a run that goes differently is caught within HASH_INTERVAL
+// ticks of where it parted.
+//
+// Usage: java Replay file...  plays each file and reports whether it matched
+public class Replay {
+    static final int MAGIC = 0x44545250; // "DTRP"
+    static final byte VERSION = 1;
+    static final int HASH_INTERVAL = 10;
+
+    static final byte MOVE = 0;
+    static final byte PAUSE = 1;
+    static final byte NEXT_LEVEL = 2;
+    static final byte RESIZE = 3;
+    static final byte SNAPSHOT = 4;
+    static final byte HASH = 5;
+    static final byte END = 6;
+
+    public final long recordedAt;
+    private final byte[] start;
+    private final byte[] data;
+    private final int eventsOffset;
+
+    private Replay(long recordedAt, byte[] start, byte[] data, int eventsOffset) {
+        this.recordedAt = recordedAt;
+        this.start = start;
+        this.data = data;
+        this.eventsOffset = eventsOffset;
+    }
+
+    public static Replay read(Path path) throws IOException {
+        return decode(Files.readAllBytes(path));
+    }
+
+    public static Replay decode(byte[] data) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        try {
+            if (in.getInt() != MAGIC || in.get() != VERSION) {
+                throw new IOException("Not a replay");
+            }
+            long recordedAt = in.getLong();
+            byte[] start = new byte[readCount(in)];
+            in.get(start);
+            return new Replay(recordedAt, start, data, in.position());
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Replay cut short");
+        }
+    }
+
+    // The snapshot the run starts from
+    public byte[] getStart() {
+        return start.clone();
+    }
+
+    // Plays the run from its start, checking every hash on the way
+    public Result play() throws IOException {
+        return play(null);
+    }
+
+    // As play(), calling the observer after every tick
+    public Result play(TickObserver observer) throws IOException {
+        GameWorld world = new GameWorld(0, 0);
+        world.restoreSnapshot(start);
+        ByteBuffer in = ByteBuffer.wrap(data, eventsOffset, data.length - eventsOffset);
+        long eventTick = world.getTick();
+        long firstTick = eventTick;
+        int targetX = 0;
+        int targetY = 0;
+        int moves = 0;
+        int chain = 0;
+        int pauses = 0;
+        GameWorld.Outcome outcome = GameWorld.Outcome.PLAYING;
+        try {
+            while (true) {
+                eventTick += readVarint(in);
+                byte kind = in.get();
+                while (world.getTick() < eventTick) {
+                    outcome = world.step(targetX, targetY, moves);
+                    moves = 0;
+                    chain = chain(chain, world.stateHash());
+                    if (observer != null) {
+                        observer.ticked(world, outcome);
+                    }
+                }
+                switch (kind) {
+                    case MOVE -> {
+                        targetX += (int) unzigzag(readVarint(in));
+                        targetY += (int) unzigzag(readVarint(in));
+                        moves = (int) readVarint(in);
+                    }
+                    case PAUSE -> pauses++;
+                    case NEXT_LEVEL -> world.startNextLevel((int) readVarint(in), (int) readVarint(in), (int) readVarint(in));
+                    case RESIZE -> world.resize((int) readVarint(in), (int) readVarint(in));
+                    case SNAPSHOT -> {
+                        byte[] snapshot = new byte[readCount(in)];
+                        in.get(snapshot);
+                        world.restoreSnapshot(snapshot);
+                        eventTick = world.getTick();
+                    }
+                    case HASH -> {
+                        int expected = in.getInt();
+                        if (expected != chain) {
+                            return new Result(world, eventTick - firstTick, outcome, pauses, eventTick);
+                        }
+                    }
+                    case END -> {
+                        GameWorld.Outcome expectedOutcome = GameWorld.Outcome.values()[in.get()];
+                        int expected = in.getInt();
+                        boolean matched = expected == chain && expectedOutcome == outcome;
+                        return new Result(world, eventTick - firstTick, outcome, pauses, matched ? -1 : eventTick);
+                    }
+                    default -> throw new IOException("Unknown event " + kind + " in replay");
+                }
+            }
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Replay cut short");
+        }
+    }
+
+    // Called after each tick of play()
+    public interface TickObserver {
+        void ticked(GameWorld world, GameWorld.Outcome outcome);
+    }
+
+    // How a replayed run went
+    public static final class Result {
+        public final long ticks;
+        public final GameWorld.Outcome outcome;
+        public final int level; // Level reached, from 1
+        public final int score;
+        public final int pauses;
+        public final long mismatchTick; // Tick of the first hash that did not match, -1 if all did
+
+        Result(GameWorld world, long ticks, GameWorld.Outcome outcome, int pauses, long mismatchTick) {
+            this.ticks = ticks;
+            this.outcome = outcome;
+            this.level = world.getCurrentLevel() + 1;
+            this.score = world.calculateFinalScore();
+            this.pauses = pauses;
+            this.mismatchTick = mismatchTick;
+        }
+
+        public boolean matched() {
+            return mismatchTick < 0;
+        }
+
+        @Override
+        public String toString() {
+            return (matched() ? "matched" : "DIFFERED by tick " + mismatchTick) + ": " + ticks + " ticks, "
+                    + outcome + " on level " + level + ", score " + score + ", " + pauses + " pauses";
+        }
+    }
+
+    // Mixes one tick's state hash into the running hash
+    static int chain(int chain, int stateHash) {
+        return (Integer.rotateLeft(chain, 5) ^ stateHash) * 0x9E3779B1;
+    }
+
+    static long readVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Bad varint in replay");
+    }
+
+    // A length, which cannot be more than the bytes left
+    private static int readCount(ByteBuffer in) throws IOException {
+        long count = readVarint(in);
+        if (count > in.remaining()) {
+            throw new IOException("Bad length in replay");
+        }
+        return (int) count;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void main(String[] args) {
+        int differed = 0;
+        for (String file : args) {
+            try {
+                long start = System.nanoTime();
+                Result result = read(Paths.get(file)).play();
+                System.out.printf("%s: %s (%.1f ms)%n", file, result, (System.nanoTime() - start) / 1e6);
+                if (!result.matched()) {
+                    differed++;
+                }
+            } catch (IOException e) {
+                System.out.println(file + ": " + e.getMessage());
+                differed++;
+            }
+        }
+        System.exit(differed == 0 ? 0 : 1);
+    }
+}
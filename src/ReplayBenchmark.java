@@ -0,0 +1,288 @@
+// ReplayBenchmark.java
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// Headless benchmark of whole game ticks. Plays a corpus of recorded runs
+// (see Replay) through GameWorld as fast as it can, optionally drawing every
+// tick into an offscreen image the way GamePanel draws the screen, and
+// reports for each level the ticks played, ticks/s, tick time percentiles and
+// bytes allocated per tick. A first round warms up the JIT and checks that
+// every replay still plays as recorded; replays that no longer do are left
+// out, as they no longer show what was played.
+//
+// The results are also written as CSV, one row per level and an "all" row,
+// so runs on two builds can be compared line by line:
+//
+//   mode,level,ticks,ticks_per_second,p50_us,p99_us,max_us,bytes_per_tick
+//
+// Tick times include GameWorld.stateHash(), which the recorder takes every
+// tick during live play too. The first tick of each replay is not timed, as
+// it includes loading the start snapshot.
+//
+// Usage: java ReplayBenchmark [--render] [--rounds n] [--out file] [replay file or directory...]
+// Plays the replays directory when no files are given.
+public class ReplayBenchmark {
+    private static final String HEADER = "mode,level,ticks,ticks_per_second,p50_us,p99_us,max_us,bytes_per_tick";
+    private static final int LEVELS = 12;
+    private static final int HIGH_LEVELS_FROM = 8; // Levels with the most ricochets, from 1
+
+    private final List<Replay> replays;
+    private final boolean render;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Per level, of the round being played
+    private final long[][] tickNanos = new long[LEVELS][];
+    private final int[] ticks = new int[LEVELS];
+    private final long[] allocated = new long[LEVELS];
+
+    // Where the replay being played is
+    private BufferedImage frame;
+    private int level;
+    private long lastNanos = -1;
+    private long lastAllocated;
+    private boolean countOnly = false; // Warming up: ticks are counted, not timed
+
+    private ReplayBenchmark(List<Replay> replays, boolean render) {
+        this.replays = replays;
+        this.render = render;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean render = false;
+        int rounds = 5;
+        Path out = Paths.get("benchmark-results.csv");
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--render" -> render = true;
+                case "--rounds" -> rounds = Integer.parseInt(args[++i]);
+                case "--out" -> out = Paths.get(args[++i]);
+                default -> addReplays(Paths.get(args[i]), files);
+            }
+        }
+        if (files.isEmpty()) {
+            addReplays(Paths.get("replays"), files);
+        }
+
+        List<Replay> replays = new ArrayList<>();
+        for (Path file : files) {
+            try {
+                replays.add(Replay.read(file));
+            } catch (IOException e) {
+                System.out.println(file + ": " + e.getMessage() + ", skipped");
+            }
+        }
+        if (replays.isEmpty()) {
+            System.out.println("No replays to play");
+            System.exit(1);
+        }
+
+        ReplayBenchmark benchmark = new ReplayBenchmark(replays, render);
+        benchmark.warmUp();
+        if (benchmark.replays.isEmpty()) {
+            System.out.println("No replay plays as recorded");
+            System.exit(1);
+        }
+        benchmark.reportCoverage();
+        if (Arrays.stream(benchmark.ticks).sum() == 0) {
+            System.out.println("The replays play no ticks");
+            System.exit(1);
+        }
+
+        long[][] allNanos = new long[LEVELS][];
+        int[] allTicks = new int[LEVELS];
+        long[] allAllocated = new long[LEVELS];
+        long wallNanos = 0;
+        for (int i = 0; i < LEVELS; i++) {
+            allNanos[i] = new long[benchmark.ticks[i] * rounds];
+        }
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            benchmark.playRound();
+            wallNanos += System.nanoTime() - start;
+            for (int i = 0; i < LEVELS; i++) {
+                System.arraycopy(benchmark.tickNanos[i], 0, allNanos[i], allTicks[i], benchmark.ticks[i]);
+                allTicks[i] += benchmark.ticks[i];
+                allAllocated[i] += benchmark.allocated[i];
+            }
+        }
+
+        String mode = render ? "rendered" : "simulation";
+        List<String> rows = new ArrayList<>();
+        System.out.println(benchmark.replays.size() + " replays, " + rounds + " rounds, " + mode);
+        System.out.println("level    ticks  ticks/s  p50(us)  p99(us)  max(us)  bytes/tick");
+        long[] merged = new long[Arrays.stream(allTicks).sum()];
+        int mergedCount = 0;
+        long mergedAllocated = 0;
+        for (int i = 0; i < LEVELS; i++) {
+            if (allTicks[i] > 0) {
+                rows.add(row(mode, String.valueOf(i + 1), allNanos[i], allTicks[i], allAllocated[i]));
+                System.arraycopy(allNanos[i], 0, merged, mergedCount, allTicks[i]);
+                mergedCount += allTicks[i];
+                mergedAllocated += allAllocated[i];
+            }
+        }
+        rows.add(row(mode, "all", merged, mergedCount, mergedAllocated));
+        System.out.printf("Overall %.0f ticks/s including replay overhead%n", mergedCount * 1e9 / wallNanos);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (String row : rows) {
+                writer.write(row);
+                writer.write('\n');
+            }
+        }
+        System.out.println("Results written to " + out);
+    }
+
+    // A file, or the replays in a directory in name order
+    private static void addReplays(Path path, List<Path> files) throws IOException {
+        if (!Files.isDirectory(path)) {
+            files.add(path);
+            return;
+        }
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.replay")) {
+            stream.forEach(found::add);
+        }
+        found.sort(null);
+        files.addAll(found);
+    }
+
+    // Plays every replay once, dropping those that no longer match, then
+    // once more to count the ticks per level so timed rounds never grow an array
+    private void warmUp() {
+        countOnly = true;
+        for (int i = 0; i < replays.size(); i++) {
+            Replay replay = replays.get(i);
+            try {
+                Replay.Result result = play(replay);
+                if (!result.matched()) {
+                    System.out.println("Replay recorded at " + replay.recordedAt + " " + result + ", left out");
+                    replays.remove(i--);
+                }
+            } catch (IOException e) {
+                System.out.println("Replay recorded at " + replay.recordedAt + ": " + e.getMessage() + ", left out");
+                replays.remove(i--);
+            }
+        }
+        playRound();
+        countOnly = false;
+        for (int i = 0; i < LEVELS; i++) {
+            tickNanos[i] = new long[ticks[i]];
+        }
+    }
+
+    private void reportCoverage() {
+        StringBuilder missing = new StringBuilder();
+        for (int i = 0; i < LEVELS; i++) {
+            if (ticks[i] == 0) {
+                missing.append(missing.length() == 0 ? "" : ", ").append(i + 1);
+            }
+        }
+        if (missing.length() > 0) {
+            System.out.println("The replays play no ticks on level " + missing
+                    + (missingHighLevel() ? "; the ricochet-heavy levels are not all covered" : ""));
+        }
+    }
+
+    private boolean missingHighLevel() {
+        for (int i = HIGH_LEVELS_FROM - 1; i < LEVELS; i++) {
+            if (ticks[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void playRound() {
+        startRound();
+        for (Replay replay : replays) {
+            try {
+                play(replay);
+            } catch (IOException e) {
+                throw new IllegalStateException("Replay stopped playing: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void startRound() {
+        Arrays.fill(ticks, 0);
+        Arrays.fill(allocated, 0);
+    }
+
+    private Replay.Result play(Replay replay) throws IOException {
+        lastNanos = -1;
+        return replay.play(this::ticked);
+    }
+
+    private void ticked(GameWorld world, GameWorld.Outcome outcome) {
+        if (render) {
+            draw(world);
+        }
+        long now = System.nanoTime();
+        long allocatedNow = threads.getCurrentThreadAllocatedBytes();
+        if (lastNanos >= 0) {
+            if (countOnly) {
+                ticks[level]++;
+            } else {
+                tickNanos[level][ticks[level]++] = now - lastNanos;
+                allocated[level] += allocatedNow - lastAllocated;
+            }
+        }
+        level = Math.min(world.getCurrentLevel(), LEVELS - 1);
+        lastAllocated = threads.getCurrentThreadAllocatedBytes();
+        lastNanos = System.nanoTime();
+    }
+
+    // Draws the tick as GamePanel would while playing
+    private void draw(GameWorld world) {
+        int width = Math.max(1, world.getWidth());
+        int height = Math.max(1, world.getHeight());
+        if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+            frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics2D g = frame.createGraphics();
+        try {
+            GamePanel.drawBackground(g, world, width, height, null);
+            GamePanel.drawEntities(g, world);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static String row(String mode, String level, long[] nanos, int count, long allocatedBytes) {
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long n : sorted) {
+            total += n;
+        }
+        double ticksPerSecond = total == 0 ? 0 : count * 1e9 / total;
+        double p50 = percentile(sorted, 50) / 1e3;
+        double p99 = percentile(sorted, 99) / 1e3;
+        double max = sorted[count - 1] / 1e3;
+        double bytesPerTick = (double) allocatedBytes / count;
+        System.out.printf("%5s  %7d  %7.0f  %7.1f  %7.1f  %7.1f  %10.0f%n", level, count, ticksPerSecond, p50, p99, max, bytesPerTick);
+        return String.format(Locale.ROOT, "%s,%s,%d,%.0f,%.2f,%.2f,%.2f,%.0f", mode, level, count, ticksPerSecond, p50, p99, max, bytesPerTick);
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
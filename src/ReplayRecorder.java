@@ -0,0 +1,145 @@
+// ReplayRecorder.java
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Writes down a run in the Replay format while GamePanel plays it. The panel
+// reports every input, tick and change as it happens; finish() gives the
+// file. Inputs are kept only for ticks that have any, so a minute of play is
+// a few KB to a few tens of KB depending on how much the mouse moves.
+public class ReplayRecorder {
+    // Files are written off the game loop, one at a time
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ReplayWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+    private long eventTick;   // Tick of the last event written
+    private long steppedTick; // Ticks the world had played after the last step
+    private int targetX = 0;
+    private int targetY = 0;
+    private int chain = 0;
+
+    // start is the snapshot of the world the run starts from; it should be
+    // restored from it, so no state outside the snapshot can differ
+    public ReplayRecorder(byte[] start, long startTick) {
+        writeInt(Replay.MAGIC);
+        out.write(Replay.VERSION);
+        writeLong(System.currentTimeMillis());
+        writeVarint(start.length);
+        out.write(start, 0, start.length);
+        eventTick = startTick;
+        steppedTick = startTick;
+    }
+
+    // The input for the tick about to be played at tick
+    public void input(long tick, int x, int y, int moves) {
+        if (moves == 0) {
+            return; // The target only matters when the player moves
+        }
+        event(tick, Replay.MOVE);
+        writeVarint(Replay.zigzag(x - targetX));
+        writeVarint(Replay.zigzag(y - targetY));
+        writeVarint(moves);
+        targetX = x;
+        targetY = y;
+    }
+
+    // After each tick, with the world's GameWorld.stateHash()
+    public void stepped(long tick, int stateHash) {
+        chain = Replay.chain(chain, stateHash);
+        steppedTick = tick;
+        if (tick % Replay.HASH_INTERVAL == 0) {
+            event(tick, Replay.HASH);
+            writeInt(chain);
+        }
+    }
+
+    public void pauseToggled(long tick) {
+        event(tick, Replay.PAUSE);
+    }
+
+    public void nextLevel(long tick, int missileDamage, int attackSpeed, int moveSpeed) {
+        event(tick, Replay.NEXT_LEVEL);
+        writeVarint(missileDamage);
+        writeVarint(attackSpeed);
+        writeVarint(moveSpeed);
+    }
+
+    public void resized(long tick, int width, int height) {
+        event(tick, Replay.RESIZE);
+        writeVarint(width);
+        writeVarint(height);
+    }
+
+    // The world was put back to an earlier snapshot, which it was restored
+    // from; tick numbers go on from the snapshot's
+    public void restored(byte[] snapshot, long snapshotTick) {
+        event(steppedTick, Replay.SNAPSHOT); // Tagged with the last tick played, so the hashes before it still line up
+        writeVarint(snapshot.length);
+        out.write(snapshot, 0, snapshot.length);
+        eventTick = snapshotTick;
+        steppedTick = snapshotTick;
+    }
+
+    // Ends the recording with how the run ended and returns the file's bytes
+    public byte[] finish(long tick, GameWorld.Outcome outcome) {
+        event(tick, Replay.END);
+        out.write(outcome.ordinal());
+        writeInt(chain);
+        return out.toByteArray();
+    }
+
+    // Writes a finished recording into directory in the background, then
+    // removes the oldest files there beyond keep
+    public static void save(Path directory, String name, byte[] replay, int keep) {
+        WRITER.execute(() -> {
+            try {
+                Files.createDirectories(directory);
+                Files.write(directory.resolve(name), replay);
+                List<Path> files = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.replay")) {
+                    stream.forEach(files::add);
+                }
+                Collections.sort(files); // Names start with the time they were recorded
+                for (int i = 0; i < files.size() - keep; i++) {
+                    Files.deleteIfExists(files.get(i));
+                }
+            } catch (IOException e) {
+                System.err.println("Error saving replay " + name + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void event(long tick, byte kind) {
+        writeVarint(tick - eventTick);
+        out.write(kind);
+        eventTick = tick;
+    }
+
+    private void writeInt(int value) {
+        out.write(ByteBuffer.allocate(4).putInt(value).array(), 0, 4);
+    }
+
+    private void writeLong(long value) {
+        out.write(ByteBuffer.allocate(8).putLong(value).array(), 0, 8);
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,202 @@
+// RewindBuffer.java
+import java.io.ByteArrayOutputStream;
+
+// The last stretch of a session, one snapshot (see SessionFile) per game tick,
+// for rewinding. Every keyframeInterval-th tick is kept whole; the ticks
+// between are kept as deltas from the tick before:
+//
+//   snapshot length (varint) | per run of changed bytes: gap from the end of the previous run (varint) | length (varint) | bytes
+//
+// Snapshots lay entities out one after another in fixed-size fields, so an
+// enemy, missile or ricochet that did not move or take damage costs nothing,
+// and one that did costs a few bytes. When the buffer is full, or over its
+// byte budget, the oldest keyframe goes together with the deltas that need it.
+// Not thread-safe; GamePanel uses it on the game loop's thread.
+public class RewindBuffer {
+    private static final int MERGE_GAP = 2; // Unchanged bytes cheaper to repeat than to start a new run
+
+    private final int capacity;
+    private final int keyframeInterval;
+    private final long maxBytes;
+    private final byte[][] frames;
+    private final boolean[] keyframes;
+    private int head = 0; // Oldest frame
+    private int size = 0;
+    private long bytes = 0;
+    private byte[] newest; // Whole snapshot of the newest frame, which the next delta is taken from
+    private int sinceKeyframe = 0; // Frames recorded after the newest keyframe
+
+    // capacity is in ticks and must hold at least two keyframes' worth
+    public RewindBuffer(int capacity, int keyframeInterval, long maxBytes) {
+        if (keyframeInterval <= 0 || capacity < 2 * keyframeInterval) {
+            throw new IllegalArgumentException("Rewind buffer must hold at least two keyframe intervals");
+        }
+        this.capacity = capacity;
+        this.keyframeInterval = keyframeInterval;
+        this.maxBytes = maxBytes;
+        this.frames = new byte[capacity][];
+        this.keyframes = new boolean[capacity];
+    }
+
+    // Adds the snapshot of the tick that just ended
+    public void record(byte[] snapshot) {
+        boolean keyframe = size == 0 || sinceKeyframe + 1 >= keyframeInterval;
+        byte[] frame = snapshot;
+        if (!keyframe) {
+            frame = delta(newest, snapshot);
+            if (frame.length >= snapshot.length) {
+                frame = snapshot; // Everything moved, e.g. an enemy early in the list died
+                keyframe = true;
+            }
+        }
+        if (size == capacity) {
+            dropOldest();
+        }
+        int index = (head + size) % capacity;
+        frames[index] = frame;
+        keyframes[index] = keyframe;
+        size++;
+        bytes += frame.length;
+        while (bytes > maxBytes && size > 1) {
+            dropOldest();
+        }
+        newest = snapshot;
+        sinceKeyframe = keyframe ? 0 : sinceKeyframe + 1;
+    }
+
+    // Steps back by up to ticks frames, forgetting the ones after, and returns
+    // the snapshot reached; null if there is nothing recorded
+    public byte[] back(int ticks) {
+        if (size == 0) {
+            return null;
+        }
+        int target = Math.max(0, size - 1 - ticks);
+        byte[] snapshot = get(target);
+        for (int i = target + 1; i < size; i++) {
+            int index = (head + i) % capacity;
+            bytes -= frames[index].length;
+            frames[index] = null;
+        }
+        size = target + 1;
+        newest = snapshot;
+        sinceKeyframe = 0;
+        for (int i = target; !keyframes[(head + i) % capacity]; i--) {
+            sinceKeyframe++;
+        }
+        return snapshot;
+    }
+
+    // Snapshot of a recorded tick, 0 being the oldest, without changing the
+    // buffer; a replay can step through them in order
+    public byte[] get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("No frame " + position + " of " + size);
+        }
+        int keyframe = position;
+        while (!keyframes[(head + keyframe) % capacity]) {
+            keyframe--; // The oldest frame is always a keyframe
+        }
+        byte[] snapshot = frames[(head + keyframe) % capacity];
+        for (int i = keyframe + 1; i <= position; i++) {
+            snapshot = apply(snapshot, frames[(head + i) % capacity]);
+        }
+        return snapshot;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Bytes held by the recorded frames
+    public long memoryBytes() {
+        return bytes;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            frames[(head + i) % capacity] = null;
+        }
+        head = 0;
+        size = 0;
+        bytes = 0;
+        newest = null;
+        sinceKeyframe = 0;
+    }
+
+    // Drops the oldest frame, and the deltas after it that no longer have a keyframe
+    private void dropOldest() {
+        do {
+            bytes -= frames[head].length;
+            frames[head] = null;
+            head = (head + 1) % capacity;
+            size--;
+        } while (size > 0 && !keyframes[head]);
+        if (size == 0) {
+            newest = null; // Start again from a keyframe
+        }
+    }
+
+    static byte[] delta(byte[] from, byte[] to) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeVarint(out, to.length);
+        int common = Math.min(from.length, to.length);
+        int written = 0; // End of the previous run
+        int i = 0;
+        while (i < to.length) {
+            if (i < common && from[i] == to[i]) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int end = i + 1;
+            int same = 0;
+            while (end < to.length && same <= MERGE_GAP) {
+                same = end < common && from[end] == to[end] ? same + 1 : 0;
+                end++;
+            }
+            if (same > MERGE_GAP) {
+                end -= same;
+            }
+            writeVarint(out, start - written);
+            writeVarint(out, end - start);
+            out.write(to, start, end - start);
+            written = end;
+            i = end;
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] apply(byte[] from, byte[] delta) {
+        int[] position = {0};
+        byte[] to = new byte[readVarint(delta, position)];
+        System.arraycopy(from, 0, to, 0, Math.min(from.length, to.length));
+        int offset = 0;
+        while (position[0] < delta.length) {
+            offset += readVarint(delta, position);
+            int length = readVarint(delta, position);
+            System.arraycopy(delta, position[0], to, offset, length);
+            position[0] += length;
+            offset += length;
+        }
+        return to;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.awt.Graphics2D;
 import java.awt.MultipleGradientPaint.CycleMethod;
 import java.awt.RadialGradientPaint;
 import java.awt.geom.Point2D;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -149,7 +150,8 @@ public class Ricochet {
         }
     }
     
-    public Ricochet(int x, int y, int size, int speedX, int speedY, int damage, int style) {
+    // random drives the animation only
+    public Ricochet(int x, int y, int size, int speedX, int speedY, int damage, int style, Random random) {
         this.x = x;
         this.y = y;
         this.size = size;
@@ -157,7 +159,7 @@ public class Ricochet {
         this.speedY = speedY;
         this.damage = damage;
         this.style = style;
-        this.random = new Random();
+        this.random = random;
         
         // Initialize style-specific properties
         initializeStyle();
@@ -166,6 +168,15 @@ public class Ricochet {
         updateAnimationElements();
     }
     
+    // Appends the ricochet to a session snapshot; its animation is rebuilt on restore
+    void writeState(ByteBuffer out) {
+        out.putInt(x).putInt(y).putInt(size).putInt(speedX).putInt(speedY).putInt(damage).put((byte) style);
+    }
+
+    static Ricochet readState(ByteBuffer in, Random random) {
+        return new Ricochet(in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.get(), random);
+    }
+    
     private void initializeStyle() {
         switch (style) {
             case LIGHTNING_STYLE -> {
@@ -309,6 +320,26 @@ public class Ricochet {
         // Update animation elements
         updateAnimationElements();
     }
+
+    // Fills xs and ys with where the ricochet will be after each of the next
+    // xs.length ticks, bouncing as move() does, without moving it
+    public void predict(int panelWidth, int panelHeight, int[] xs, int[] ys) {
+        int px = x, py = y, vx = speedX, vy = speedY;
+        for (int i = 0; i < xs.length; i++) {
+            px += vx;
+            py += vy;
+            if (px <= 0 || px >= panelWidth - size) {
+                vx = -vx;
+                px = Math.max(0, Math.min(px, panelWidth - size));
+            }
+            if (py <= 0 || py >= panelHeight - size) {
+                vy = -vy;
+                py = Math.max(0, Math.min(py, panelHeight - size));
+            }
+            xs[i] = px;
+            ys[i] = py;
+        }
+    }
     
     public void draw(Graphics g) {
         Graphics2D g2d = (Graphics2D) g;
@@ -468,8 +499,13 @@ double swirl3 = windAngle + Math.PI * 4 / 3;
     
     // Method to check collision with player or enemy
     public boolean collidesWith(int otherX, int otherY, int otherSize) {
-        int dx = (x + size/2) - (otherX + otherSize/2);
-        int dy = (y + size/2) - (otherY + otherSize/2);
+        return collidesAt(x, y, otherX, otherY, otherSize);
+    }
+    
+    // As collidesWith(), for the ricochet at atX, atY, e.g. a position from predict()
+    public boolean collidesAt(int atX, int atY, int otherX, int otherY, int otherSize) {
+        int dx = (atX + size/2) - (otherX + otherSize/2);
+        int dy = (atY + size/2) - (otherY + otherSize/2);
         int distance = (int) Math.sqrt(dx * dx + dy * dy);
         
         return distance < (size/2 + otherSize/2);
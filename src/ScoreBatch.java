@@ -0,0 +1,228 @@
+// ScoreBatch.java
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Wire format between ScoreSubmitter and LeaderboardService. A request carries
+// a run of consecutive outbox events from one cabinet:
+//
+//   magic "DTSB" (4) | version (1) | cabinet id (8) | first sequence (8) | event count (varint)
+//   per event: sequence step (varint) | time step, zigzag (varint) | score, zigzag (varint) | level (varint) | name
+//
+// Steps are from the previous event (the first sequence, and time 0, for the
+// first one), so a consecutive event usually costs a byte for its number and
+// two or three for its time. A name is a varint index into the names already
+// sent in this batch; an index equal to their count means a new name follows
+// as varint length and UTF-8 bytes. The response:
+//
+//   magic "DTSR" (4) | version (1) | next sequence (8) | standing count (varint)
+//   per standing: name as varint length and UTF-8 | best score, zigzag (varint) | rank (varint)
+//
+// "Next sequence" is the first event of the cabinet the service has not seen,
+// and the standings are the service-wide best score and rank of every player
+// in the request.
+public class ScoreBatch {
+    private static final int REQUEST_MAGIC = 0x44545342; // "DTSB"
+    private static final int RESPONSE_MAGIC = 0x44545352; // "DTSR"
+    private static final byte VERSION = 1;
+
+    public final long cabinetId;
+    public final List<ScoreOutbox.Event> events;
+
+    private ScoreBatch(long cabinetId, List<ScoreOutbox.Event> events) {
+        this.cabinetId = cabinetId;
+        this.events = events;
+    }
+
+    // events must be in sequence order
+    public static byte[] encodeRequest(long cabinetId, List<ScoreOutbox.Event> events) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + events.size() * 8);
+        writeInt(out, REQUEST_MAGIC);
+        out.write(VERSION);
+        long firstSequence = events.isEmpty() ? 0 : events.get(0).sequence;
+        writeLong(out, cabinetId);
+        writeLong(out, firstSequence);
+        writeVarint(out, events.size());
+        Map<String, Integer> names = new HashMap<>();
+        long lastSequence = firstSequence;
+        long lastTime = 0;
+        for (ScoreOutbox.Event event : events) {
+            writeVarint(out, event.sequence - lastSequence);
+            writeVarint(out, zigzag(event.finishedAt - lastTime));
+            writeVarint(out, zigzag(event.score));
+            writeVarint(out, event.level);
+            Integer index = names.get(event.username);
+            if (index != null) {
+                writeVarint(out, index);
+            } else {
+                writeVarint(out, names.size());
+                names.put(event.username, names.size());
+                writeString(out, event.username);
+            }
+            lastSequence = event.sequence;
+            lastTime = event.finishedAt;
+        }
+        return out.toByteArray();
+    }
+
+    public static ScoreBatch decodeRequest(byte[] data) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        try {
+            if (in.getInt() != REQUEST_MAGIC || in.get() != VERSION) {
+                throw new IOException("Not a score batch");
+            }
+            long cabinetId = in.getLong();
+            long sequence = in.getLong();
+            int count = readCount(in);
+            List<ScoreOutbox.Event> events = new ArrayList<>(count);
+            List<String> names = new ArrayList<>();
+            long time = 0;
+            for (int i = 0; i < count; i++) {
+                sequence += readVarint(in);
+                time += unzigzag(readVarint(in));
+                int score = (int) unzigzag(readVarint(in));
+                int level = (int) readVarint(in);
+                long index = readVarint(in);
+                if (index == names.size()) {
+                    names.add(readString(in));
+                } else if (index > names.size()) {
+                    throw new IOException("Bad name index in score batch");
+                }
+                events.add(new ScoreOutbox.Event(sequence, names.get((int) index), score, level, time));
+            }
+            return new ScoreBatch(cabinetId, events);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Score batch cut short");
+        }
+    }
+
+    public static byte[] encodeResponse(long nextSequence, List<Standing> standings) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + standings.size() * 16);
+        writeInt(out, RESPONSE_MAGIC);
+        out.write(VERSION);
+        writeLong(out, nextSequence);
+        writeVarint(out, standings.size());
+        for (Standing standing : standings) {
+            writeString(out, standing.username);
+            writeVarint(out, zigzag(standing.bestScore));
+            writeVarint(out, standing.rank);
+        }
+        return out.toByteArray();
+    }
+
+    public static Response decodeResponse(byte[] data) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        try {
+            if (in.getInt() != RESPONSE_MAGIC || in.get() != VERSION) {
+                throw new IOException("Not a score batch response");
+            }
+            long nextSequence = in.getLong();
+            int count = readCount(in);
+            List<Standing> standings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String username = readString(in);
+                int bestScore = (int) unzigzag(readVarint(in));
+                int rank = (int) readVarint(in);
+                standings.add(new Standing(username, bestScore, rank));
+            }
+            return new Response(nextSequence, standings);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Score batch response cut short");
+        }
+    }
+
+    // What the service answered
+    public static final class Response {
+        public final long nextSequence;
+        public final List<Standing> standings;
+
+        Response(long nextSequence, List<Standing> standings) {
+            this.nextSequence = nextSequence;
+            this.standings = standings;
+        }
+    }
+
+    // A player's place on the service's leaderboard, 1 being the best
+    public static final class Standing {
+        public final String username;
+        public final int bestScore;
+        public final int rank;
+
+        public Standing(String username, int bestScore, int rank) {
+            this.username = username;
+            this.bestScore = bestScore;
+            this.rank = rank;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + rank + " " + username + " (" + bestScore + ")";
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            out.write(value >>> shift);
+        }
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        writeInt(out, (int) (value >>> 32));
+        writeInt(out, (int) value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Bad varint in score batch");
+    }
+
+    // A count or length, which cannot be more than the bytes left
+    private static int readCount(ByteBuffer in) throws IOException {
+        long count = readVarint(in);
+        if (count > in.remaining()) {
+            throw new IOException("Bad count in score batch");
+        }
+        return (int) count;
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[readCount(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,276 @@
+// ScoreHistory.java
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Every finished run of one user, stored as a byte stream of varints:
+//
+//   time since the previous run in ms | score | level reached | duration in ms
+//
+// A typical run takes 8-10 bytes, so tens of thousands of runs stay well under
+// a megabyte. Timestamps never go backwards, which keeps the deltas small and
+// lets a checkpoint every CHECKPOINT_INTERVAL runs (absolute time and byte
+// offset) jump straight to the start of a time window.
+public class ScoreHistory {
+    private static final int CHECKPOINT_INTERVAL = 64;
+
+    private byte[] data = new byte[64];
+    private int length = 0;
+    private int runCount = 0;
+    private long lastTimestamp = 0;
+    private long[] checkpointTimes = new long[4];  // Time of the first run after each checkpoint
+    private long[] checkpointBases = new long[4];  // Time its delta is relative to
+    private int[] checkpointOffsets = new int[4];
+    private int checkpointCount = 0;
+
+    // One finished run
+    public static final class Run {
+        public final long timestamp;
+        public final int score;
+        public final int level;
+        public final int durationMillis;
+
+        Run(long timestamp, int score, int level, int durationMillis) {
+            this.timestamp = timestamp;
+            this.score = score;
+            this.level = level;
+            this.durationMillis = durationMillis;
+        }
+    }
+
+    // Aggregate over the runs in a time window
+    public static final class Summary {
+        private final int[] sortedScores;
+        private final long totalScore;
+
+        Summary(int[] sortedScores, long totalScore) {
+            this.sortedScores = sortedScores;
+            this.totalScore = totalScore;
+        }
+
+        public int getCount() {
+            return sortedScores.length;
+        }
+
+        public int getBest() {
+            return sortedScores.length == 0 ? 0 : sortedScores[sortedScores.length - 1];
+        }
+
+        public double getAverage() {
+            return sortedScores.length == 0 ? 0 : (double) totalScore / sortedScores.length;
+        }
+
+        // Nearest-rank percentile, p from 0 to 100
+        public int getPercentile(double p) {
+            if (sortedScores.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(p / 100.0 * sortedScores.length);
+            return sortedScores[Math.max(0, Math.min(sortedScores.length - 1, rank - 1))];
+        }
+    }
+
+    // Rebuilds a history from its encoded bytes. Returns the number of bytes that
+    // held complete runs; anything after that (a run cut short by a crash) is ignored.
+    public int load(byte[] encoded, int offset, int count) {
+        int end = offset + count;
+        int position = offset;
+        long[] fields = new long[4];
+        while (position < end) {
+            int next = decode(encoded, position, end, fields);
+            if (next < 0) {
+                break;
+            }
+            append(lastTimestamp + fields[0], (int) fields[1], (int) fields[2], (int) fields[3]);
+            position = next;
+        }
+        return position - offset;
+    }
+
+    public void add(long timestamp, int score, int level, int durationMillis) {
+        append(Math.max(timestamp, lastTimestamp), score, level, durationMillis);
+    }
+
+    private void append(long timestamp, int score, int level, int durationMillis) {
+        if (runCount % CHECKPOINT_INTERVAL == 0) {
+            if (checkpointCount == checkpointTimes.length) {
+                checkpointTimes = Arrays.copyOf(checkpointTimes, checkpointCount * 2);
+                checkpointBases = Arrays.copyOf(checkpointBases, checkpointCount * 2);
+                checkpointOffsets = Arrays.copyOf(checkpointOffsets, checkpointCount * 2);
+            }
+            checkpointTimes[checkpointCount] = timestamp;
+            checkpointBases[checkpointCount] = lastTimestamp;
+            checkpointOffsets[checkpointCount] = length;
+            checkpointCount++;
+        }
+        ensureCapacity(length + 4 * 10);
+        length = writeVarint(data, length, timestamp - lastTimestamp);
+        length = writeVarint(data, length, zigzag(score));
+        length = writeVarint(data, length, Math.max(0, level));
+        length = writeVarint(data, length, Math.max(0, durationMillis));
+        lastTimestamp = timestamp;
+        runCount++;
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    // Runs from the given 0-based run number to the newest
+    public List<Run> getRunsFrom(int first) {
+        List<Run> runs = new ArrayList<>(Math.max(0, runCount - first));
+        if (first >= runCount) {
+            return runs;
+        }
+        int checkpoint = Math.max(0, first) / CHECKPOINT_INTERVAL;
+        long timestamp = checkpointBases[checkpoint];
+        int position = checkpointOffsets[checkpoint];
+        long[] fields = new long[4];
+        for (int run = checkpoint * CHECKPOINT_INTERVAL; run < runCount; run++) {
+            position = decode(data, position, length, fields);
+            timestamp += fields[0];
+            if (run >= first) {
+                runs.add(new Run(timestamp, (int) fields[1], (int) fields[2], (int) fields[3]));
+            }
+        }
+        return runs;
+    }
+
+    // Encodes runs to follow a run at previousTimestamp, as they would be appended
+    public static byte[] encode(long previousTimestamp, List<Run> runs) {
+        ScoreHistory encoded = new ScoreHistory();
+        encoded.lastTimestamp = previousTimestamp;
+        for (Run run : runs) {
+            encoded.add(run.timestamp, run.score, run.level, run.durationMillis);
+        }
+        return encoded.getEncoded(0);
+    }
+
+    // Size of the encoded runs in bytes
+    public int getEncodedLength() {
+        return length;
+    }
+
+    // Encoded bytes from offset to the end, for appending to a file
+    public byte[] getEncoded(int offset) {
+        return Arrays.copyOfRange(data, offset, length);
+    }
+
+    // Runs with from <= timestamp < to, oldest first
+    public List<Run> getRuns(long from, long to) {
+        List<Run> runs = new ArrayList<>();
+        scan(from, to, (timestamp, score, level, duration) -> runs.add(new Run(timestamp, score, level, duration)));
+        return runs;
+    }
+
+    public Summary summarize(long from, long to) {
+        ScoreCollector collector = new ScoreCollector();
+        scan(from, to, collector);
+        int[] sorted = Arrays.copyOf(collector.scores, collector.count);
+        Arrays.sort(sorted);
+        return new Summary(sorted, collector.total);
+    }
+
+    public Summary summarizeAll() {
+        return summarize(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private interface RunVisitor {
+        void visit(long timestamp, int score, int level, int durationMillis);
+    }
+
+    private static final class ScoreCollector implements RunVisitor {
+        int[] scores = new int[16];
+        int count = 0;
+        long total = 0;
+
+        @Override
+        public void visit(long timestamp, int score, int level, int durationMillis) {
+            if (count == scores.length) {
+                scores = Arrays.copyOf(scores, count * 2);
+            }
+            scores[count++] = score;
+            total += score;
+        }
+    }
+
+    // Decodes only from the last checkpoint before from
+    private void scan(long from, long to, RunVisitor visitor) {
+        if (checkpointCount == 0) {
+            return;
+        }
+        int low = 0;
+        int high = checkpointCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (checkpointTimes[mid] < from) { // Every run before it is older than from
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        long timestamp = checkpointBases[low];
+        int position = checkpointOffsets[low];
+        long[] fields = new long[4];
+        while (position < length) {
+            position = decode(data, position, length, fields);
+            timestamp += fields[0];
+            if (timestamp >= to) {
+                break;
+            }
+            if (timestamp >= from) {
+                visitor.visit(timestamp, (int) fields[1], (int) fields[2], (int) fields[3]);
+            }
+        }
+    }
+
+    // Reads one run into fields (delta, score, level, duration); returns the
+    // position after it, or -1 if the run does not fit before end
+    private static int decode(byte[] bytes, int position, int end, long[] fields) {
+        for (int field = 0; field < 4; field++) {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                if (position >= end || shift > 63) {
+                    return -1;
+                }
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+                shift += 7;
+            }
+            fields[field] = value;
+        }
+        fields[1] = unzigzag(fields[1]);
+        return position;
+    }
+
+    private static int writeVarint(byte[] bytes, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    private static long zigzag(int value) {
+        return (((long) value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static long unzigzag(long value) {
+        return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > data.length) {
+            data = Arrays.copyOf(data, Math.max(needed, data.length * 2));
+        }
+    }
+}
@@ -0,0 +1,267 @@
+// ScoreHistoryStore.java
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Run histories for all users, one file per user under HISTORY_DIR. A file is
+// a small header followed by the ScoreHistory encoding, so new runs are simply
+// appended. Histories are read on first use and kept in memory; takeUnsaved(),
+// write() and markSaved() save whatever was added since the last save. Runs
+// only count as saved once markSaved() sees that write() got them to disk, so
+// a failed write leaves them to be taken again by the next save. Callers
+// synchronize access to everything except write(), which runs under the
+// users.dat file lock.
+//
+// Another game process may append to the same file. write() notices because
+// the file is not the size it expected, re-encodes its runs to follow the
+// other process's, and markSaved() reloads the file to pick up their runs.
+public class ScoreHistoryStore {
+    private static final String HISTORY_DIR = "history";
+    private static final byte[] MAGIC = {'D', 'T', 'S', 'H'};
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+    private static final int MAX_PLAIN_NAME_BYTES = 100;
+
+    private final Path directory = Paths.get(HISTORY_DIR);
+    private final Map<String, Cached> histories = new HashMap<>();
+    private final Set<String> deleted = new HashSet<>();
+
+    // A loaded history and how much of it is already in its file
+    private static final class Cached {
+        final ScoreHistory history;
+        int savedRuns = 0;
+        long savedSize = 0; // Expected file size, header included; 0 if there is no file
+        long savedTimestamp = 0;
+
+        Cached(ScoreHistory history) {
+            this.history = history;
+        }
+    }
+
+    // Runs to append to one file, and what write() made of them
+    public static final class Unsaved {
+        private final Cached cached;
+        private final int fromRun; // Index in the history of the first of runs
+        final List<ScoreHistory.Run> runs;
+        final byte[] encoded;
+        final long expectedSize;
+        private long writtenSize = -1; // File size after the runs were appended; -1 until they are
+        private boolean changedElsewhere = false;
+
+        private Unsaved(Cached cached, int fromRun, List<ScoreHistory.Run> runs, byte[] encoded, long expectedSize) {
+            this.cached = cached;
+            this.fromRun = fromRun;
+            this.runs = runs;
+            this.encoded = encoded;
+            this.expectedSize = expectedSize;
+        }
+    }
+
+    public ScoreHistory get(String username) {
+        return cached(username).history;
+    }
+
+    public void recordRun(String username, long timestamp, int score, int level, int durationMillis) {
+        get(username).add(timestamp, score, level, durationMillis);
+    }
+
+    public void delete(String username) {
+        histories.put(username, new Cached(new ScoreHistory()));
+        deleted.add(username);
+    }
+
+    // Runs added since the last save, per user. They stay unsaved until
+    // markSaved() is given them back after write().
+    public Map<String, Unsaved> takeUnsaved() {
+        Map<String, Unsaved> unsaved = new HashMap<>();
+        for (Map.Entry<String, Cached> entry : histories.entrySet()) {
+            Cached cached = entry.getValue();
+            ScoreHistory history = cached.history;
+            if (history.getRunCount() > cached.savedRuns) {
+                List<ScoreHistory.Run> runs = history.getRunsFrom(cached.savedRuns);
+                byte[] encoded = ScoreHistory.encode(cached.savedTimestamp, runs);
+                unsaved.put(entry.getKey(), new Unsaved(cached, cached.savedRuns, runs, encoded, cached.savedSize));
+            }
+        }
+        return unsaved;
+    }
+
+    // Counts the runs write() appended as saved, whether or not it finished,
+    // and reloads the files another process had appended to. Runs it did not
+    // get to are taken again by the next takeUnsaved().
+    public void markSaved(Map<String, Unsaved> unsaved) {
+        Set<String> changedElsewhere = new HashSet<>();
+        for (Map.Entry<String, Unsaved> entry : unsaved.entrySet()) {
+            Unsaved runs = entry.getValue();
+            if (runs.writtenSize < 0) {
+                continue;
+            }
+            // The user may have been deleted since; their new history starts over
+            Cached cached = runs.cached;
+            cached.savedRuns = runs.fromRun + runs.runs.size();
+            cached.savedSize = runs.writtenSize;
+            cached.savedTimestamp = runs.runs.get(runs.runs.size() - 1).timestamp;
+            if (runs.changedElsewhere && histories.get(entry.getKey()) == cached) {
+                changedElsewhere.add(entry.getKey());
+            }
+        }
+        reload(changedElsewhere);
+    }
+
+    public Set<String> takeDeleted() {
+        Set<String> taken = new HashSet<>(deleted);
+        deleted.clear();
+        return taken;
+    }
+
+    // Deletes the files in deletedUsers, then appends the unsaved runs,
+    // recording in each Unsaved whether it was written. If appending to a file
+    // fails, the file is cut back to where it was.
+    public void write(Set<String> deletedUsers, Map<String, Unsaved> unsaved) throws IOException {
+        for (String username : deletedUsers) {
+            Files.deleteIfExists(fileFor(username));
+        }
+        if (unsaved.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(directory);
+        for (Map.Entry<String, Unsaved> entry : unsaved.entrySet()) {
+            Unsaved runs = entry.getValue();
+            try (FileChannel channel = FileChannel.open(fileFor(entry.getKey()), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long end = channel.size();
+                long start = end;
+                byte[] encoded = runs.encoded;
+                if (end != runs.expectedSize && !(end == 0 && runs.expectedSize <= HEADER_SIZE)) {
+                    // Someone else wrote here since we read it: follow on from their last run
+                    runs.changedElsewhere = true;
+                    ScoreHistory current = new ScoreHistory();
+                    end = readInto(channel, current);
+                    channel.truncate(end); // Drop a run cut short by a crash
+                    encoded = ScoreHistory.encode(current.getLastTimestamp(), runs.runs);
+                }
+                if (end < HEADER_SIZE) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    header.put(MAGIC).put(VERSION).flip();
+                    channel.truncate(0);
+                    channel.write(header, 0);
+                    end = HEADER_SIZE;
+                }
+                ByteBuffer bytes = ByteBuffer.wrap(encoded);
+                try {
+                    while (bytes.hasRemaining()) {
+                        end += channel.write(bytes, end);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    channel.truncate(start); // No half-written runs for the retry to follow
+                    throw e;
+                }
+                runs.writtenSize = end;
+            }
+        }
+    }
+
+    // Re-reads histories that another process appended to, keeping runs added here since
+    private void reload(Set<String> usernames) {
+        for (String username : usernames) {
+            Cached old = histories.remove(username);
+            Cached fresh = cached(username);
+            if (old != null) {
+                for (ScoreHistory.Run run : old.history.getRunsFrom(old.savedRuns)) {
+                    fresh.history.add(run.timestamp, run.score, run.level, run.durationMillis);
+                }
+            }
+        }
+    }
+
+    private Cached cached(String username) {
+        Cached cached = histories.get(username);
+        if (cached == null) {
+            cached = load(username);
+            histories.put(username, cached);
+        }
+        return cached;
+    }
+
+    private Cached load(String username) {
+        Cached cached = new Cached(new ScoreHistory());
+        Path file = fileFor(username);
+        if (deleted.contains(username) || !Files.exists(file)) {
+            return cached;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // A run cut short by a crash is left in the file; the next write() drops it
+            cached.savedSize = readInto(channel, cached.history);
+            cached.savedRuns = cached.history.getRunCount();
+            cached.savedTimestamp = cached.history.getLastTimestamp();
+        } catch (IOException e) {
+            System.err.println("Error loading score history for " + username + ": " + e.getMessage());
+        }
+        return cached;
+    }
+
+    // Loads the runs in channel into history. Returns the file size they account
+    // for, or 0 if the file is empty or unreadable.
+    private static long readInto(FileChannel channel, ScoreHistory history) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Score history too large");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // Keep reading until the whole file is in
+        }
+        byte[] bytes = buffer.array();
+        if (buffer.position() < HEADER_SIZE || !startsWithMagic(bytes) || bytes[MAGIC.length] != VERSION) {
+            if (size > 0) {
+                System.err.println("Replacing unreadable score history file.");
+            }
+            return 0;
+        }
+        return HEADER_SIZE + history.load(bytes, HEADER_SIZE, buffer.position() - HEADER_SIZE);
+    }
+
+    private static boolean startsWithMagic(byte[] bytes) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Path fileFor(String username) {
+        return directory.resolve(fileNameFor(username) + ".runs");
+    }
+
+    // Usernames can hold any character, so files are named by the hex of their
+    // UTF-8 bytes, or of their SHA-256 when that would make the name too long
+    static String fileNameFor(String username) {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_PLAIN_NAME_BYTES) {
+            try {
+                bytes = MessageDigest.getInstance("SHA-256").digest(bytes);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // Every JVM has SHA-256
+            }
+        }
+        StringBuilder name = new StringBuilder();
+        for (byte b : bytes) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return name.toString();
+    }
+}
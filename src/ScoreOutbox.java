@@ -0,0 +1,263 @@
+// ScoreOutbox.java
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+// Finished runs waiting to be reported to the leaderboard service, kept on
+// disk so none are lost while the service is unreachable or the game is
+// closed. Every game process on the cabinet shares the file, taking a lock on
+// it around each access, and only the process holding the sender claim sends,
+// so the same events do not go out twice. The file starts with a header:
+//
+//   magic "DTSO" (4) | version (4) | cabinet id (8) | first sequence (8) | next unsent (8)
+//
+// The cabinet id is picked at random when the file is created. Events follow
+// as fixed-size records, numbered from the first sequence on:
+//
+//   finished at, epoch ms (8) | score (4) | level (2) | name length (1) | CRC32 of the bytes before it and the name (4) | name (45, zero padded)
+//
+// Events before "next unsent" have been accepted by the service. Once all of
+// them have, the records are dropped and the numbering carries on from there,
+// so the service can recognize an event it has already seen by its number.
+public class ScoreOutbox implements Closeable {
+    private static final int MAGIC = 0x4454534F; // "DTSO"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 64;
+    private static final int RECORD_HEADER_SIZE = 19;
+    public static final int MAX_NAME_BYTES = RECORD_SIZE - RECORD_HEADER_SIZE;
+
+    // Byte locked by the process that sends, far past anything written; the
+    // data lock covers everything before it
+    private static final long SENDER_LOCK_POSITION = Long.MAX_VALUE - 1;
+
+    private final FileChannel channel;
+    private final long cabinetId;
+    private FileLock senderLock; // Held until close() once this process claims sending
+
+    public ScoreOutbox(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = lockData();
+            try {
+                if (channel.size() < HEADER_SIZE || readAt(0, 4).getInt(0) != MAGIC) {
+                    channel.truncate(0);
+                    writeHeader(UUID.randomUUID().getMostSignificantBits(), 0, 0);
+                    channel.force(true);
+                }
+                cabinetId = readAt(8, 8).getLong(0);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Whether a name is short enough to be queued
+    public static boolean fits(String username) {
+        return username.getBytes(StandardCharsets.UTF_8).length <= MAX_NAME_BYTES;
+    }
+
+    public long cabinetId() {
+        return cabinetId;
+    }
+
+    // Makes this process the cabinet's sender if no other process is. Returns
+    // whether it is; the claim lasts until close() or the process ends.
+    public synchronized boolean claimSending() throws IOException {
+        if (senderLock == null) {
+            senderLock = channel.tryLock(SENDER_LOCK_POSITION, 1, false);
+        }
+        return senderLock != null;
+    }
+
+    // Appends the events in one write and forces them to disk
+    public synchronized void append(List<Event> events) throws IOException {
+        if (events.isEmpty()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(events.size() * RECORD_SIZE);
+        CRC32 crc = new CRC32();
+        for (Event event : events) {
+            byte[] name = event.username.getBytes(StandardCharsets.UTF_8);
+            int start = buffer.position();
+            buffer.putLong(event.finishedAt);
+            buffer.putInt(event.score);
+            buffer.putShort((short) Math.max(0, Math.min(0xFFFF, event.level)));
+            buffer.put((byte) name.length);
+            crc.reset();
+            crc.update(buffer.array(), start, RECORD_HEADER_SIZE - 4);
+            crc.update(name, 0, name.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(name);
+            buffer.position(start + RECORD_SIZE); // Rest of the record stays zero
+        }
+        buffer.flip();
+        FileLock lock = lockData();
+        try {
+            firstSequence();
+            long end = recordsEnd(); // Overwrites a record a crash cut short
+            while (buffer.hasRemaining()) {
+                end += channel.write(buffer, end);
+            }
+            channel.force(false);
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Up to max of the oldest events the service has not accepted yet. A
+    // record damaged by a crash ends the outbox; it and anything after it are
+    // dropped.
+    public synchronized List<Event> readPending(int max) throws IOException {
+        List<Event> events = new ArrayList<>();
+        FileLock lock = lockData();
+        try {
+            long first = firstSequence();
+            long sequence = readAt(24, 8).getLong(0);
+            long position = HEADER_SIZE + (sequence - first) * RECORD_SIZE;
+            long end = recordsEnd();
+            byte[] name = new byte[MAX_NAME_BYTES];
+            CRC32 crc = new CRC32();
+            while (position < end && events.size() < max) {
+                ByteBuffer record = readAt(position, RECORD_SIZE);
+                long finishedAt = record.getLong();
+                int score = record.getInt();
+                int level = record.getShort() & 0xFFFF;
+                int nameLength = record.get() & 0xFF;
+                int checksum = record.getInt();
+                if (nameLength > MAX_NAME_BYTES) {
+                    truncateDamaged(position);
+                    break;
+                }
+                record.get(name, 0, nameLength);
+                crc.reset();
+                crc.update(record.array(), 0, RECORD_HEADER_SIZE - 4);
+                crc.update(name, 0, nameLength);
+                if ((int) crc.getValue() != checksum) {
+                    truncateDamaged(position);
+                    break;
+                }
+                events.add(new Event(sequence++, new String(name, 0, nameLength, StandardCharsets.UTF_8),
+                        score, level, finishedAt));
+                position += RECORD_SIZE;
+            }
+        } finally {
+            lock.release();
+        }
+        return events;
+    }
+
+    // Records that the service has every event numbered below nextUnsent. If
+    // that is all of them, the outbox is emptied.
+    public synchronized void markSent(long nextUnsent) throws IOException {
+        FileLock lock = lockData();
+        try {
+            long first = firstSequence();
+            long sequence = readAt(24, 8).getLong(0);
+            long last = first + (recordsEnd() - HEADER_SIZE) / RECORD_SIZE; // One past the newest event
+            nextUnsent = Math.min(nextUnsent, last);
+            if (nextUnsent <= sequence) {
+                return; // Another process got there first
+            }
+            if (nextUnsent == last) {
+                channel.truncate(HEADER_SIZE); // firstSequence() finishes the job after a crash here
+                writeHeader(cabinetId, last, last);
+            } else {
+                writeHeader(cabinetId, first, nextUnsent);
+            }
+            channel.force(false);
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Events not yet accepted by the service
+    public synchronized long pendingCount() throws IOException {
+        FileLock lock = lockData();
+        try {
+            return firstSequence() + (recordsEnd() - HEADER_SIZE) / RECORD_SIZE - readAt(24, 8).getLong(0);
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private FileLock lockData() throws IOException {
+        return channel.lock(0, SENDER_LOCK_POSITION, false);
+    }
+
+    // Number of the first record. If the file holds fewer records than the
+    // header says were sent, emptying it was cut short; the header is fixed
+    // so that the next event gets the next unsent number.
+    private long firstSequence() throws IOException {
+        ByteBuffer header = readAt(0, HEADER_SIZE);
+        long first = header.getLong(16);
+        long nextUnsent = header.getLong(24);
+        if (first + (recordsEnd() - HEADER_SIZE) / RECORD_SIZE < nextUnsent) {
+            channel.truncate(HEADER_SIZE);
+            writeHeader(cabinetId, nextUnsent, nextUnsent);
+            return nextUnsent;
+        }
+        return first;
+    }
+
+    // End of the last whole record
+    private long recordsEnd() throws IOException {
+        return HEADER_SIZE + (channel.size() - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+    }
+
+    private void truncateDamaged(long position) throws IOException {
+        System.err.println("Dropping " + (channel.size() - position) + " damaged bytes from the score outbox.");
+        channel.truncate(position);
+    }
+
+    private void writeHeader(long cabinetId, long firstSequence, long nextUnsent) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(cabinetId).putLong(firstSequence).putLong(nextUnsent).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private ByteBuffer readAt(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // Keep reading until the whole range is in
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // One finished run. The sequence is -1 until the event is in the outbox.
+    public static final class Event {
+        final long sequence;
+        final String username;
+        final int score;
+        final int level;
+        final long finishedAt;
+
+        public Event(long sequence, String username, int score, int level, long finishedAt) {
+            this.sequence = sequence;
+            this.username = username;
+            this.score = score;
+            this.level = level;
+            this.finishedAt = finishedAt;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+// ScoreSubmitter.java
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// Reports finished runs to the central leaderboard service. submit() only
+// queues the run in memory and returns; a background thread writes it to the
+// ScoreOutbox, then sends everything the service has not accepted, oldest
+// first, up to MAX_BATCH runs per ScoreBatch request. When the service cannot
+// be reached the runs stay in the outbox, and the thread tries again after a
+// delay that doubles from FIRST_RETRY_MS up to MAX_RETRY_MS, so runs pile up
+// on disk rather than in memory and go out in a few large batches once the
+// service is back, including those left from earlier sessions.
+//
+// Game processes on one cabinet share the outbox, but only the one holding its
+// sender claim sends. Every process looks at the outbox each POLL_INTERVAL_MS,
+// so runs another process saved go out within that time, and a process takes
+// over the claim when the sender exits.
+//
+// The service answers each batch with the players' standings, which are passed
+// to the results callback on the submitter's thread.
+public class ScoreSubmitter {
+    // Set to the service's URL, e.g. -Dleaderboard.url=http://localhost:8765/scores
+    public static final String URL_PROPERTY = "leaderboard.url";
+    private static final String OUTBOX_FILE = "scores.outbox";
+    private static final int MAX_BATCH = 256;
+    private static final long POLL_INTERVAL_MS = 5000;
+    private static final long FIRST_RETRY_MS = 1000;
+    private static final long MAX_RETRY_MS = 60_000;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(3);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final long SHUTDOWN_GRACE_MS = 2000; // For a batch in flight before it is cancelled
+
+    private final URI service;
+    private final ScoreOutbox outbox;
+    private final Consumer<List<ScoreBatch.Standing>> onResults;
+    private final HttpClient client;
+    private final ScheduledThreadPoolExecutor worker;
+    private final SubmissionStats stats = new SubmissionStats();
+    private final Queue<ScoreOutbox.Event> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private volatile CompletableFuture<?> inFlight; // The request being sent, for shutdown() to cancel
+
+    // Only touched by the worker thread, and by shutdown() once it has stopped
+    private final List<ScoreOutbox.Event> unsaved = new ArrayList<>(); // Taken from incoming, not yet in the outbox
+    private long retryDelayMs = 0;  // 0 while the service is answering
+    private long nextAttemptAt = 0; // No sending before this time while backing off
+
+    public ScoreSubmitter(URI service, Consumer<List<ScoreBatch.Standing>> onResults) throws IOException {
+        this.service = service;
+        this.outbox = new ScoreOutbox(Paths.get(OUTBOX_FILE));
+        this.onResults = onResults;
+        this.client = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+        this.worker = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "ScoreSubmitter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        worker.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        requestDrain(); // Sends whatever earlier sessions left in the outbox
+        worker.scheduleWithFixedDelay(this::requestDrain, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // The submitter for the URL in URL_PROPERTY, or null if it is not set or
+    // the outbox cannot be opened
+    public static ScoreSubmitter fromSystemProperty(Consumer<List<ScoreBatch.Standing>> onResults) {
+        String url = System.getProperty(URL_PROPERTY);
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        try {
+            return new ScoreSubmitter(URI.create(url), onResults);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Scores will not be reported to " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Queues a finished run. Never blocks.
+    public void submit(String username, int score, int level, long finishedAt) {
+        if (!ScoreOutbox.fits(username)) {
+            System.err.println("Not reporting the score of " + username + ": the name is too long.");
+            return;
+        }
+        incoming.add(new ScoreOutbox.Event(-1, username, score, level, finishedAt));
+        stats.recordQueued();
+        requestDrain();
+    }
+
+    public SubmissionStats getStats() {
+        return stats;
+    }
+
+    private void requestDrain() {
+        if (drainScheduled.compareAndSet(false, true) && !worker.isShutdown()) {
+            worker.execute(this::drain);
+        }
+    }
+
+    // Saves queued runs, then sends if this process is the sender and is not
+    // backing off; a retry is already scheduled in that case
+    private void drain() {
+        drainScheduled.set(false);
+        if (!saveIncoming() || System.currentTimeMillis() < nextAttemptAt) {
+            return;
+        }
+        try {
+            if (outbox.claimSending()) {
+                sendPending();
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading the score outbox: " + e.getMessage());
+        }
+    }
+
+    private boolean saveIncoming() {
+        for (ScoreOutbox.Event event; (event = incoming.poll()) != null; ) {
+            unsaved.add(event);
+        }
+        if (unsaved.isEmpty()) {
+            return true;
+        }
+        try {
+            outbox.append(unsaved);
+            stats.recordPersisted(unsaved.size());
+            unsaved.clear();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving scores to the outbox: " + e.getMessage());
+            backOff();
+            return false;
+        }
+    }
+
+    private void sendPending() {
+        try {
+            while (!worker.isShutdown()) {
+                List<ScoreOutbox.Event> batch = outbox.readPending(MAX_BATCH);
+                stats.recordPending(outbox.pendingCount(), batch.isEmpty() ? 0 : batch.get(0).finishedAt);
+                if (batch.isEmpty()) {
+                    return;
+                }
+                byte[] body = ScoreBatch.encodeRequest(outbox.cabinetId(), batch);
+                HttpRequest request = HttpRequest.newBuilder(service)
+                        .timeout(REQUEST_TIMEOUT)
+                        .header("Content-Type", "application/octet-stream")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                        .build();
+                long start = System.nanoTime();
+                HttpResponse<byte[]> response = send(request);
+                if (response == null) {
+                    return; // Cancelled by shutdown(); the batch stays in the outbox
+                }
+                long roundTripMillis = (System.nanoTime() - start) / 1_000_000;
+                if (response.statusCode() != 200) {
+                    throw new IOException("the service answered " + response.statusCode());
+                }
+                ScoreBatch.Response result = ScoreBatch.decodeResponse(response.body());
+                outbox.markSent(result.nextSequence);
+                recordAccepted(batch, body.length, roundTripMillis, result.nextSequence);
+                if (retryDelayMs != 0) {
+                    System.out.println("Leaderboard service is reachable again.");
+                    retryDelayMs = 0;
+                }
+                onResults.accept(result.standings);
+            }
+        } catch (IOException e) {
+            if (retryDelayMs == 0) {
+                System.err.println("Cannot report scores to " + service + ", will keep trying: "
+                        + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+            }
+            backOff();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Sent asynchronously so that shutdown() can cancel it without
+    // interrupting this thread, which would close the outbox's channel.
+    // Returns null if shutdown() cancelled it.
+    private HttpResponse<byte[]> send(HttpRequest request) throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<byte[]>> call = client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        inFlight = call;
+        try {
+            return call.get();
+        } catch (CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            if (worker.isShutdown()) {
+                return null; // The client may report the cancel as a failure
+            }
+            throw e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+        } finally {
+            inFlight = null;
+        }
+    }
+
+    private void recordAccepted(List<ScoreOutbox.Event> batch, int bytes, long roundTripMillis, long nextSequence) {
+        long now = System.currentTimeMillis();
+        long totalLag = 0;
+        long maxLag = 0;
+        int accepted = 0;
+        for (ScoreOutbox.Event event : batch) {
+            if (event.sequence < nextSequence) {
+                long lag = Math.max(0, now - event.finishedAt);
+                totalLag += lag;
+                maxLag = Math.max(maxLag, lag);
+                accepted++;
+            }
+        }
+        stats.recordBatch(accepted, bytes, roundTripMillis, totalLag, maxLag);
+    }
+
+    // Schedules the next try, doubling the delay each time, with some jitter so
+    // cabinets that lost the service together do not all come back at once
+    private void backOff() {
+        stats.recordFailure();
+        retryDelayMs = retryDelayMs == 0 ? FIRST_RETRY_MS : Math.min(MAX_RETRY_MS, retryDelayMs * 2);
+        long delay = retryDelayMs / 2 + ThreadLocalRandom.current().nextLong(retryDelayMs / 2 + 1);
+        nextAttemptAt = System.currentTimeMillis() + delay;
+        if (!worker.isShutdown()) {
+            worker.schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Stops sending and saves runs still queued; the outbox keeps them for the
+    // next session. A batch in flight gets SHUTDOWN_GRACE_MS to finish and is
+    // then cancelled; if it did reach the service, the service recognizes its
+    // runs by their numbers when they are sent again. Only once the worker has
+    // stopped are its unsaved runs taken over and the outbox closed.
+    public void shutdown() {
+        worker.shutdown();
+        long graceEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_GRACE_MS);
+        boolean interrupted = false;
+        while (!worker.isTerminated()) {
+            CompletableFuture<?> request = inFlight;
+            if (request != null && System.nanoTime() - graceEnd > 0) {
+                request.cancel(true);
+            }
+            try {
+                worker.awaitTermination(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true; // Still wait: the worker may be writing to the outbox
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        List<ScoreOutbox.Event> remaining = new ArrayList<>(unsaved); // Runs the worker failed to save
+        unsaved.clear();
+        for (ScoreOutbox.Event event; (event = incoming.poll()) != null; ) {
+            remaining.add(event);
+        }
+        try {
+            outbox.append(remaining);
+            stats.recordPersisted(remaining.size());
+        } catch (IOException e) {
+            System.err.println("Error saving scores to the outbox, " + remaining.size() + " runs lost: " + e.getMessage());
+        }
+        try {
+            outbox.close();
+        } catch (IOException e) {
+            // Everything written was forced to disk
+        }
+        System.out.println("Score submission: " + stats);
+    }
+}
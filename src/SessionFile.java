@@ -0,0 +1,160 @@
+// SessionFile.java
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+// A snapshot of a game session in progress, as made by GameWorld.saveSnapshot(),
+// and the file the latest one is kept in so a session outlives the process.
+// Little-endian, in this order:
+//
+//   magic "DTSS" (4) | version (2) | saved at, epoch ms (8)
+//   username: length (2) | UTF-8
+//   level (2) | furthest level (2) | ticks played (8) | ticks in this run (8)
+//   | play area width, height (2 each) | seed of the run's randomness (8) | ms since the last volley (4)
+//   level counters: count (1) | counter (8 each)
+//   player: x, y, size, health, max health, missile damage, attack delay, move speed (4 each)
+//           | ms since last attack (4) | ms since last regeneration (4)
+//     missiles: count (2) | per missile: x, y, speed, damage (4 each) | active (1) | hue (4)
+//   enemies of the level: count (2) | per enemy: x, y, size, speed, damage, max hp, armor, hp (4 each)
+//   ricochets: count (2) | per ricochet: x, y, size, x speed, y speed, damage (4 each) | style (1)
+//
+// Times are game time (see GameWorld) and timers are stored as time elapsed.
+// A busy level is well under 1 KB. Files are written by a background thread;
+// when snapshots come faster than the disk takes them only the newest is
+// written.
+public class SessionFile {
+    private static final int MAGIC = 0x53535444; // "DTSS" read little-endian
+    private static final short VERSION = 2;
+
+    private final Path path;
+    private final AtomicReference<byte[]> unwritten = new AtomicReference<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "SessionFile");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SessionFile(Path path) {
+        this.path = path;
+    }
+
+    // Starts a snapshot with room for at least capacity bytes after the header
+    static ByteBuffer begin(int capacity, long now) {
+        ByteBuffer out = ByteBuffer.allocate(14 + capacity).order(ByteOrder.LITTLE_ENDIAN);
+        return out.putInt(MAGIC).putShort(VERSION).putLong(now);
+    }
+
+    static byte[] finish(ByteBuffer out) {
+        byte[] snapshot = new byte[out.position()];
+        out.flip().get(snapshot);
+        return snapshot;
+    }
+
+    // A snapshot positioned after its header
+    static ByteBuffer open(byte[] snapshot) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(snapshot).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a saved game session");
+            }
+            short version = in.getShort();
+            if (version != VERSION) {
+                throw new IOException("Saved game session has unknown version " + version);
+            }
+            in.getLong(); // Saved at
+            return in;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Saved game session cut short");
+        }
+    }
+
+    static void putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) bytes.length).put(bytes);
+    }
+
+    static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int stringSize(String value) {
+        return 2 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    // "name, level n" for asking whether to resume a snapshot
+    static String describe(byte[] snapshot) throws IOException {
+        ByteBuffer in = open(snapshot);
+        try {
+            String username = getString(in);
+            return username + ", level " + (in.getShort() + 1);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Saved game session cut short");
+        }
+    }
+
+    // Writes the snapshot in the background, replacing the file in one step
+    public void save(byte[] snapshot) {
+        unwritten.set(snapshot);
+        writer.execute(this::writeLatest);
+    }
+
+    // Removes the file once snapshots already passed to save() are dealt with;
+    // those not yet written are dropped
+    public void delete() {
+        unwritten.set(null);
+        writer.execute(() -> {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Error removing the saved game session: " + e.getMessage());
+            }
+        });
+    }
+
+    // The saved snapshot, or null if there is none
+    public byte[] read() {
+        try {
+            return Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Error reading the saved game session: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeLatest() {
+        byte[] snapshot = unwritten.getAndSet(null);
+        if (snapshot == null) {
+            return; // A later task already wrote it, or it was deleted
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            // Synced before the rename, so a crash leaves the old snapshot or the whole new one
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer data = ByteBuffer.wrap(snapshot);
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+                out.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error saving the game session: " + e.getMessage());
+        }
+    }
+}
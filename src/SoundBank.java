@@ -0,0 +1,148 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+// All sound effects packed into one file of ready-to-mix PCM. The file is built
+// from the WAVs the first time (and again whenever a WAV changes) and is then
+// memory-mapped, so playing an effect never touches the disk or opens a line.
+//
+// Layout (little-endian):
+//   int magic, int version, int sampleRate, int count
+//   count x { int id, long sourceModified, long sourceLength, int dataOffset, int sampleCount }
+//   16-bit interleaved stereo samples for every effect
+public class SoundBank {
+    public static final int SOUND_MISSILE_FIRE = 0;
+    public static final int SOUND_MISSILE_HIT = 1;
+    public static final int SOUND_CLICK = 2;
+    public static final int SOUND_LEVEL_UP = 3;
+
+    // Source WAV for each id above
+    private static final String[] SOURCES = {
+        "sound/laserSE.wav",
+        "sound/HitSE.wav",
+        "sound/uwuSE.wav",
+        "sound/LevelUpSE.wav"
+    };
+
+    public static final String BANK_FILE = "sound/effects.bank";
+
+    private static final int MAGIC = 0x42535444; // "DTSB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 28;
+
+    private final ShortBuffer[] sounds = new ShortBuffer[SOURCES.length];
+
+    private SoundBank() {
+    }
+
+    public static int size() {
+        return SOURCES.length;
+    }
+
+    // Samples for an id, or null if that effect could not be loaded
+    public ShortBuffer getSound(int id) {
+        return id >= 0 && id < sounds.length ? sounds[id] : null;
+    }
+
+    public static SoundBank load() throws IOException {
+        Path bankPath = Paths.get(BANK_FILE);
+        if (!isUpToDate(bankPath)) {
+            System.out.println("Building sound bank: " + BANK_FILE);
+            build(bankPath);
+        }
+
+        SoundBank bank = new SoundBank();
+        try (FileChannel channel = FileChannel.open(bankPath, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            int count = mapped.getInt(12);
+            for (int i = 0; i < count; i++) {
+                int entry = HEADER_BYTES + i * ENTRY_BYTES;
+                int id = mapped.getInt(entry);
+                int dataOffset = mapped.getInt(entry + 20);
+                int sampleCount = mapped.getInt(entry + 24);
+                if (id < 0 || id >= bank.sounds.length || sampleCount == 0) {
+                    continue;
+                }
+                ByteBuffer slice = mapped.duplicate().position(dataOffset).limit(dataOffset + sampleCount * 2).slice();
+                bank.sounds[id] = slice.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            }
+        }
+        return bank;
+    }
+
+    private static boolean isUpToDate(Path bankPath) {
+        if (!Files.exists(bankPath)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(bankPath, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + SOURCES.length * ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                    || header.getInt(8) != (int) PcmStreamReader.OUTPUT_FORMAT.getSampleRate()
+                    || header.getInt(12) != SOURCES.length || header.remaining() < header.capacity()) {
+                return false;
+            }
+            for (int i = 0; i < SOURCES.length; i++) {
+                int entry = HEADER_BYTES + i * ENTRY_BYTES;
+                File source = new File(SOURCES[header.getInt(entry)]);
+                if (source.lastModified() != header.getLong(entry + 4) || source.length() != header.getLong(entry + 12)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    private static void build(Path bankPath) throws IOException {
+        short[][] samples = new short[SOURCES.length][];
+        for (int id = 0; id < SOURCES.length; id++) {
+            try {
+                samples[id] = PcmStreamReader.readFully(SOURCES[id]);
+            } catch (UnsupportedAudioFileException | IOException e) {
+                System.out.println("Error loading sound: " + SOURCES[id]);
+                e.printStackTrace(System.err);
+                samples[id] = new short[0];
+            }
+        }
+
+        int dataOffset = HEADER_BYTES + SOURCES.length * ENTRY_BYTES;
+        ByteBuffer header = ByteBuffer.allocate(dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt((int) PcmStreamReader.OUTPUT_FORMAT.getSampleRate()).putInt(SOURCES.length);
+        for (int id = 0; id < SOURCES.length; id++) {
+            File source = new File(SOURCES[id]);
+            header.putInt(id).putLong(source.lastModified()).putLong(source.length());
+            header.putInt(dataOffset).putInt(samples[id].length);
+            dataOffset += samples[id].length * 2;
+        }
+        header.flip();
+
+        // Write to a temp file and swap it in so a half-written bank is never mapped
+        Path tempPath = bankPath.resolveSibling(bankPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(header);
+            for (short[] effect : samples) {
+                ByteBuffer data = ByteBuffer.allocate(effect.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+                data.asShortBuffer().put(effect);
+                channel.write(data);
+            }
+        }
+        Files.move(tempPath, bankPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -1,105 +1,92 @@
-import java.io.File;
 import java.io.IOException;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.FloatControl;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.UnsupportedAudioFileException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SoundUtility {
-    private final static Clip[] soundEffects = new Clip[10]; // Array to store sound effects
-    private static Clip backgroundMusic; // Clip for background music
-    private final static float[] soundVolumes = new float[10]; // Store volume levels for each sound effect
+    private final static AudioMixer mixer = new AudioMixer(); // Mixes every sound effect into one line
+    private static MusicStream backgroundMusic; // Streamed background music
+    private final static float[] soundVolumes = new float[AudioMixer.MAX_SOUNDS]; // Store volume levels for each sound effect
+    private final static AtomicInteger tickCounter = new AtomicInteger(); // Groups game sounds by tick
+    private static volatile int currentTick = 0;
 
-public static void loadSE(int index, String filePath) {
-    try {
-        File soundFile = new File(filePath);
-        AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(soundFile);
-        soundEffects[index] = AudioSystem.getClip();
-        soundEffects[index].open(audioInputStream);
-        soundVolumes[index] = 1.0f; // Default full volume
-    } catch (UnsupportedAudioFileException | IOException | LineUnavailableException e) {
-        System.out.println("Error loading sound: " + filePath);
-        e.printStackTrace(System.err);
+    // When too many sounds play at once, higher priorities keep their voices
+    private static final int PRIORITY_MISSILE_FIRE = 1;
+    private static final int PRIORITY_MISSILE_HIT = 2;
+    private static final int PRIORITY_UI = 3;
+
+    // Loads every effect from the packed sound bank; call once at startup
+    public static void loadSoundBank() {
+        try {
+            SoundBank bank = SoundBank.load();
+            for (int id = 0; id < SoundBank.size(); id++) {
+                mixer.setSound(id, bank.getSound(id));
+                setSoundVolume(id, 1.0f); // Default full volume
+                mixer.setPriority(id, PRIORITY_UI);
+            }
+            mixer.setPriority(SoundBank.SOUND_MISSILE_FIRE, PRIORITY_MISSILE_FIRE);
+            mixer.setPriority(SoundBank.SOUND_MISSILE_HIT, PRIORITY_MISSILE_HIT);
+            mixer.start();
+        } catch (IOException e) {
+            System.out.println("Error loading sound bank: " + SoundBank.BANK_FILE);
+            e.printStackTrace(System.err);
+        }
     }
-}
 
+    // For UI sounds: every call gets its own voice in the mixer, so repeated
+    // sounds overlap instead of cutting each other off
     public static void playSE(int index) {
-        if (soundEffects[index] != null) {
-            soundEffects[index].stop(); // Stop the sound if it's already playing
-            soundEffects[index].setFramePosition(0); // Rewind to the beginning
-            
-            // Apply the current volume setting
-            setSoundVolume(index, soundVolumes[index]);
-            
-            soundEffects[index].start(); // Play the sound
-        }
+        mixer.play(index, nextTick());
+    }
+
+    // For gameplay sounds: posts to the audio thread and returns at once. Copies of
+    // the same effect posted during one game tick are merged into a single louder play.
+    public static void postSE(int index) {
+        mixer.play(index, currentTick);
+    }
+
+    // Called by the game loop at the start of every tick
+    public static void beginTick() {
+        currentTick = nextTick();
+    }
+
+    private static int nextTick() {
+        return tickCounter.incrementAndGet() & Integer.MAX_VALUE; // Kept non-negative for the queue
     }
 
     public static void setSoundVolume(int index, float volume) {
-        if (soundEffects[index] != null) {
-            try {
-                // Store the volume setting
-                soundVolumes[index] = volume;
-                
-                // Apply volume if clip has volume control
-                if (soundEffects[index].isControlSupported(FloatControl.Type.MASTER_GAIN)) {
-                    FloatControl volumeControl = (FloatControl) soundEffects[index].getControl(FloatControl.Type.MASTER_GAIN);
-                    
-                    // Convert volume (0.0 to 1.0) to gain (-80.0 to 6.0 dB)
-                    // Logarithmic scale works better for human perception of volume
-                    
-                    float gain;
-                    
-                    if (volume > 0.0f) {
-                        gain = (float) (20.0 * Math.log10(volume));
-                    } else {
-                        gain = volumeControl.getMinimum();
-                    }
-                    
-                    // Ensure gain is within allowed range
-                    gain = Math.max(volumeControl.getMinimum(), Math.min(volumeControl.getMaximum(), gain));
-                    
-                    volumeControl.setValue(gain);
-                }
-            } catch (Exception e) {
-                System.out.println("Error setting sound volume for index: " + index);
-                e.printStackTrace(System.err);
-            }
-        }
+        // Volume (0.0 to 1.0) is applied as a linear gain on each voice, which is
+        // the same loudness the old 20*log10(volume) dB setting produced
+        soundVolumes[index] = Math.max(0.0f, Math.min(1.0f, volume));
+        mixer.setGain(index, soundVolumes[index]);
     }
 
     public static float getSoundVolume(int index) {
         return soundVolumes[index];
     }
 
+    // Latency, underrun and voice counters for the sound effect line
+    public static AudioStats getEffectStats() {
+        return mixer.getStats();
+    }
+
     public static void playBackgroundMusic(String filePath) {
-        try {
-            File musicFile = new File(filePath);
-            AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(musicFile);
-            backgroundMusic = AudioSystem.getClip();
-            backgroundMusic.open(audioInputStream);
-            backgroundMusic.loop(Clip.LOOP_CONTINUOUSLY); // Loop the background music
-            backgroundMusic.start();
-        } catch (UnsupportedAudioFileException | IOException | LineUnavailableException e) {
-            e.printStackTrace(System.err);
+        // Streamed from disk rather than decoded into a Clip, and looped by the stream
+        if (backgroundMusic != null) {
+            backgroundMusic.close();
         }
+        backgroundMusic = new MusicStream(filePath);
+        backgroundMusic.start();
     }
     
 
     public static void stopBackgroundMusic() {
-        if (backgroundMusic != null && backgroundMusic.isRunning()) {
+        if (backgroundMusic != null && backgroundMusic.isPlaying()) {
             backgroundMusic.stop();
         }
     }
 
     public static void setBackgroundMusicVolume(float volume) {
         if (backgroundMusic != null) {
-            FloatControl volumeControl = (FloatControl) backgroundMusic.getControl(FloatControl.Type.MASTER_GAIN);
-            float range = volumeControl.getMaximum() - volumeControl.getMinimum();
-            float gain = (range * volume) + volumeControl.getMinimum();
-            volumeControl.setValue(gain);
+            backgroundMusic.setVolume(volume);
         }
     }
 
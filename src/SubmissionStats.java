@@ -0,0 +1,110 @@
+// SubmissionStats.java
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counters for ScoreSubmitter. Runs are queued by the game, everything else is
+// recorded by the submitter's thread; any thread may read. Lag is measured from
+// the end of a run to the service accepting it.
+public class SubmissionStats {
+    private final long startedAt = System.currentTimeMillis();
+    private final AtomicLong queued = new AtomicLong();
+    private volatile long persisted = 0;
+    private volatile long accepted = 0;
+    private volatile long batches = 0;
+    private volatile long bytesSent = 0;
+    private volatile long failures = 0;
+    private volatile long lastRoundTripMillis = 0;
+    private volatile long lagTotalMillis = 0;
+    private volatile long lagMaxMillis = 0;
+    private volatile long pending = 0;
+    private volatile long oldestPendingAt = 0; // When the oldest unaccepted run ended; 0 if none
+
+    void recordQueued() {
+        queued.incrementAndGet();
+    }
+
+    void recordPersisted(int events) {
+        persisted += events;
+    }
+
+    // One batch the service accepted
+    void recordBatch(int events, int bytes, long roundTripMillis, long totalLagMillis, long maxLagMillis) {
+        accepted += events;
+        batches++;
+        bytesSent += bytes;
+        lastRoundTripMillis = roundTripMillis;
+        lagTotalMillis += totalLagMillis;
+        if (maxLagMillis > lagMaxMillis) {
+            lagMaxMillis = maxLagMillis;
+        }
+    }
+
+    void recordFailure() {
+        failures++;
+    }
+
+    void recordPending(long count, long oldestAt) {
+        pending = count;
+        oldestPendingAt = oldestAt;
+    }
+
+    public long getQueued() {
+        return queued.get();
+    }
+
+    public long getPersisted() {
+        return persisted;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getPending() {
+        return pending;
+    }
+
+    // Runs accepted per second since the submitter started
+    public double getAcceptedPerSecond() {
+        long elapsed = System.currentTimeMillis() - startedAt;
+        return elapsed <= 0 ? 0 : accepted * 1000.0 / elapsed;
+    }
+
+    public long getLastRoundTripMillis() {
+        return lastRoundTripMillis;
+    }
+
+    public long getAverageLagMillis() {
+        long count = accepted;
+        return count == 0 ? 0 : lagTotalMillis / count;
+    }
+
+    public long getMaxLagMillis() {
+        return lagMaxMillis;
+    }
+
+    // How long the oldest run still waiting has waited, 0 if none is
+    public long getOldestPendingAgeMillis() {
+        long oldest = oldestPendingAt;
+        return oldest == 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("queued=%d saved=%d accepted=%d (%.1f/s) batches=%d bytes=%d failures=%d pending=%d"
+                        + " oldest=%dms lag avg=%dms max=%dms rtt=%dms",
+                getQueued(), persisted, accepted, getAcceptedPerSecond(), batches, bytesSent, failures, pending,
+                getOldestPendingAgeMillis(), getAverageLagMillis(), lagMaxMillis, lastRoundTripMillis);
+    }
+}
@@ -0,0 +1,23 @@
+// Upgrade.java
+// The choices on the level-up screen, applied to the player of the level just
+// cleared before the next one starts. Main offers them and BalanceRunner picks
+// them for simulated players, so both use these amounts.
+public enum Upgrade {
+    MISSILE_DAMAGE,
+    MOVE_SPEED,
+    ATTACK_SPEED,
+    NONE;
+
+    static final int MISSILE_DAMAGE_AMOUNT = 12; // Added to each missile's damage
+    static final int MOVE_SPEED_AMOUNT = 2;
+    static final int ATTACK_SPEED_AMOUNT = 80;   // Milliseconds taken off the attack delay
+
+    public void apply(Player player) {
+        switch (this) {
+            case MISSILE_DAMAGE -> player.increaseMissileDamage(MISSILE_DAMAGE_AMOUNT);
+            case MOVE_SPEED -> player.increaseMoveSpeed(MOVE_SPEED_AMOUNT);
+            case ATTACK_SPEED -> player.increaseAttackSpeed(ATTACK_SPEED_AMOUNT);
+            case NONE -> { }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+// UserCsv.java
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streams the user store to and from CSV ("username,score" with a header row,
+// quoted as in RFC 4180 where a name needs it). Export walks a leaderboard
+// snapshot a page at a time and import hands users to UserManager in batches,
+// so neither holds more than one page or batch of rows on top of the store.
+//
+// Usage: java UserCsv export <file> | import <file>
+public class UserCsv {
+    private static final String HEADER = "username,score";
+    private static final int BUFFER_CHARS = 1 << 16;
+    private static final int PAGE_SIZE = 4096;
+    private static final int BATCH_SIZE = 10_000;
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    // Writes every user, highest score first. Returns the number written.
+    public static int exportTo(Path path, UserManager userManager) throws IOException {
+        LeaderboardIndex leaderboard = userManager.getLeaderboardSnapshot();
+        int count = leaderboard.size();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_CHARS)) {
+            out.write(HEADER);
+            out.write('\n');
+            for (int offset = 0; offset < count; offset += PAGE_SIZE) {
+                for (User user : leaderboard.page(offset, PAGE_SIZE)) {
+                    writeField(out, user.getUsername());
+                    out.write(',');
+                    out.write(Integer.toString(user.getScore()));
+                    out.write('\n');
+                }
+            }
+        }
+        return count;
+    }
+
+    // Adds or overwrites the users in the file. Rows that cannot be read are
+    // reported and skipped. Returns the number of users imported.
+    public static int importFrom(Path path, UserManager userManager) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             Reader in = Channels.newReader(channel, StandardCharsets.UTF_8)) {
+            Batches batches = new Batches(new RecordReader(in));
+            int imported = userManager.importUsers(batches);
+            if (batches.skipped > 0) {
+                System.err.println("Skipped " + batches.skipped + " CSV records that were not \"username,score\".");
+            }
+            return imported;
+        }
+    }
+
+    // The file's users, BATCH_SIZE at a time
+    private static final class Batches implements UserManager.ImportSource {
+        private final RecordReader records;
+        private final List<User> batch = new ArrayList<>(BATCH_SIZE);
+        private final List<String> fields = new ArrayList<>(2);
+        private long line = 0;
+        int skipped = 0;
+
+        Batches(RecordReader records) {
+            this.records = records;
+        }
+
+        @Override
+        public List<User> nextBatch() throws IOException {
+            batch.clear();
+            while (batch.size() < BATCH_SIZE && records.read(fields)) {
+                line++;
+                if (line == 1 && fields.size() == 2 && fields.get(0).equals("username")) {
+                    continue; // Header row
+                }
+                User user = parseUser(fields);
+                if (user == null) {
+                    if (skipped++ < MAX_REPORTED_ERRORS) {
+                        System.err.println("Skipping CSV record " + line + ": " + String.join(",", fields));
+                    }
+                    continue;
+                }
+                batch.add(user);
+            }
+            return batch.isEmpty() ? null : batch;
+        }
+    }
+
+    private static User parseUser(List<String> fields) {
+        if (fields.size() != 2 || fields.get(0).isEmpty()) {
+            return null;
+        }
+        try {
+            return new User(fields.get(0), Integer.parseInt(fields.get(1).trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Splits the input into records. Works on a char array of its own rather
+    // than calling Reader.read() per character, which locks every time.
+    private static final class RecordReader {
+        private final Reader in;
+        private final char[] buffer = new char[BUFFER_CHARS];
+        private final StringBuilder field = new StringBuilder();
+        private int position = 0;
+        private int limit = 0;
+
+        RecordReader(Reader in) {
+            this.in = in;
+        }
+
+        // Reads one record into fields. Returns false at the end of the input.
+        boolean read(List<String> fields) throws IOException {
+            fields.clear();
+            field.setLength(0);
+            boolean quoted = false;
+            boolean any = false;
+            int c;
+            while ((c = next()) != -1) {
+                any = true;
+                if (quoted) {
+                    if (c != '"') {
+                        field.append((char) c);
+                    } else if (peek() == '"') {
+                        position++;
+                        field.append('"'); // Escaped quote
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+            }
+            if (!any) {
+                return false;
+            }
+            fields.add(field.toString());
+            return true;
+        }
+
+        private int next() throws IOException {
+            return peek() == -1 ? -1 : buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            if (position == limit) {
+                int read;
+                do {
+                    read = in.read(buffer, 0, buffer.length);
+                } while (read == 0);
+                if (read < 0) {
+                    return -1;
+                }
+                position = 0;
+                limit = read;
+            }
+            return buffer[position];
+        }
+    }
+
+    private static void writeField(Writer out, String value) throws IOException {
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes && !value.isEmpty() && value.charAt(0) != ' ' && value.charAt(value.length() - 1) != ' ') {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 || !(args[0].equals("export") || args[0].equals("import"))) {
+            System.err.println("Usage: java UserCsv export <file> | import <file>");
+            System.exit(2);
+        }
+        UserManager userManager = UserManager.open();
+        long start = System.nanoTime();
+        Path path = Paths.get(args[1]);
+        int count = args[0].equals("export") ? exportTo(path, userManager) : importFrom(path, userManager);
+        System.out.printf("%sed %d users in %d ms%n", args[0].equals("export") ? "Export" : "Import", count,
+                (System.nanoTime() - start) / 1_000_000);
+        userManager.shutdown();
+    }
+}
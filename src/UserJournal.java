@@ -0,0 +1,192 @@
+// UserJournal.java
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Append-only log of user changes made since the last users.dat snapshot,
+// shared by every game process using the same files. It starts with a header:
+//
+//   magic "DTUJ" (4) | version (4) | generation (8)
+//
+// The generation goes up each time the journal is folded into a new snapshot
+// and emptied, which tells other processes to reload rather than keep reading
+// from their old position. After the header, every change is one fixed-size
+// record, so saving a score costs the same however many users there are:
+//
+//   op (1) | name length (1) | score (4) | CRC32 of the bytes before it and the name (4) | name (54, zero padded)
+//
+// Updates carry the full score and are replayed as "set", creates as "add if
+// missing" and deletes as "remove", so replaying the journal over a snapshot
+// that already contains some of its changes gives the same result.
+//
+// Callers must hold the users.dat file lock around everything except fits().
+public class UserJournal implements Closeable {
+    public static final byte OP_CREATE = 1;
+    public static final byte OP_UPDATE = 2;
+    public static final byte OP_DELETE = 3;
+
+    private static final int MAGIC = 0x4454554A; // "DTUJ"
+    private static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 64;
+    private static final int RECORD_HEADER_SIZE = 10;
+    public static final int MAX_NAME_BYTES = RECORD_SIZE - RECORD_HEADER_SIZE;
+
+    private final FileChannel channel;
+    private final boolean readOnly;
+
+    public UserJournal(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        readOnly = false;
+    }
+
+    private UserJournal(FileChannel channel) {
+        this.channel = channel;
+        this.readOnly = true;
+    }
+
+    // For reading another store's journal without changing it: a damaged tail
+    // is skipped rather than cut off, and nothing can be written
+    public static UserJournal openReadOnly(Path path) throws IOException {
+        return new UserJournal(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    // Whether a name is short enough to be journaled; longer names need a full snapshot
+    public static boolean fits(String username) {
+        return username.getBytes(StandardCharsets.UTF_8).length <= MAX_NAME_BYTES;
+    }
+
+    // 0 for an empty journal; append() writes the header with the first records
+    public long readGeneration() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return 0;
+        }
+        ByteBuffer header = readAt(0, HEADER_SIZE);
+        if (size < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a user journal");
+        }
+        return header.getLong(8);
+    }
+
+    // Applies every intact record from position on (HEADER_SIZE for the first), in order, and returns the
+    // position after the last one. A record cut short by a crash, and anything
+    // after it, is dropped so later appends start on a record boundary; a
+    // read-only journal just stops there.
+    public long read(long position, Consumer<Entry> apply) throws IOException {
+        long size = channel.size();
+        byte[] name = new byte[MAX_NAME_BYTES];
+        CRC32 crc = new CRC32();
+        while (position + RECORD_SIZE <= size) {
+            ByteBuffer record = readAt(position, RECORD_SIZE);
+            byte op = record.get();
+            int nameLength = record.get() & 0xFF;
+            int score = record.getInt();
+            int checksum = record.getInt();
+            if (op < OP_CREATE || op > OP_DELETE || nameLength > MAX_NAME_BYTES) {
+                break;
+            }
+            record.get(name, 0, nameLength);
+            crc.reset();
+            crc.update(record.array(), 0, 6);
+            crc.update(name, 0, nameLength);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply.accept(new Entry(op, new String(name, 0, nameLength, StandardCharsets.UTF_8), score));
+            position += RECORD_SIZE;
+        }
+        if (position < size && !readOnly) {
+            System.err.println("Dropping " + (size - position) + " damaged bytes from the user journal.");
+            channel.truncate(position);
+        }
+        return position;
+    }
+
+    // Appends the entries at the end in one write and forces them to disk.
+    // Returns the new end of the journal.
+    public long append(List<Entry> entries) throws IOException {
+        long end = channel.size();
+        if (end == 0) {
+            writeHeader(0);
+            end = HEADER_SIZE;
+        }
+        if (entries.isEmpty()) {
+            return end;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(entries.size() * RECORD_SIZE);
+        CRC32 crc = new CRC32();
+        for (Entry entry : entries) {
+            byte[] name = entry.username.getBytes(StandardCharsets.UTF_8);
+            int start = buffer.position();
+            buffer.put(entry.op);
+            buffer.put((byte) name.length);
+            buffer.putInt(entry.score);
+            crc.reset();
+            crc.update(buffer.array(), start, 6);
+            crc.update(name, 0, name.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(name);
+            buffer.position(start + RECORD_SIZE); // Rest of the record stays zero
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            end += channel.write(buffer, end);
+        }
+        channel.force(false);
+        return end;
+    }
+
+    // Empties the journal once its changes are in a new snapshot
+    public void reset(long generation) throws IOException {
+        channel.truncate(0);
+        writeHeader(generation);
+        channel.force(true);
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeHeader(long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(generation).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private ByteBuffer readAt(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // Keep reading until the whole range is in
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // One change to the user list
+    public static final class Entry {
+        final byte op;
+        final String username;
+        final int score;
+
+        public Entry(byte op, String username, int score) {
+            this.op = op;
+            this.username = username;
+            this.score = score;
+        }
+    }
+}
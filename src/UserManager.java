@@ -1,24 +1,110 @@
 // UserManager.java
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+// Users and their scores. Changes are made under this object's lock; lookups,
+// prefix searches and leaderboard queries read concurrent structures and
+// never wait for a change in progress.
+//
+// Several game processes may share the same files. Every read or write of
+// them happens under an exclusive lock on LOCK_FILE, and before writing, a
+// process first merges what the others appended to the journal, so no one's
+// changes are overwritten. The writer thread also merges them every
+// SYNC_INTERVAL_MS so the leaderboard shows other players' scores.
 public class UserManager {
-    private List<User> users;
+    private final Map<String, User> usersByName = new ConcurrentHashMap<>(); // O(1) exact lookup
+    private final NavigableSet<String> sortedNames = new ConcurrentSkipListSet<>(); // Prefix lookup
+    private final LeaderboardIndex leaderboard = new LeaderboardIndex(); // Score order
+    private final ScoreHistoryStore histories = new ScoreHistoryStore(); // Every finished run
+    private final CombatStatsStore combatStats = new CombatStatsStore(); // Totals per user and level
+    private final WindowedLeaderboard recentBests = new WindowedLeaderboard(); // Today's and this week's boards
+    private final Map<String, ScoreBatch.Standing> globalStandings = new ConcurrentHashMap<>(); // From the service
     private final String DATA_FILE = "users.dat";
+    private final String JOURNAL_FILE = "users.journal";
+    private final String LOCK_FILE = "users.dat.lock";
+    private final String BOARDS_FILE = "boards.dat";
 
-    public UserManager() {
-        this.users = new ArrayList<>();
-        loadUsers(); // Load saved users when creating a UserManager
+    // Changes are applied in memory at once and written out by a background
+    // thread, at most FLUSH_DELAY_MS after the first unsaved change. Each change
+    // is appended to the journal; once the journal passes COMPACT_THRESHOLD_BYTES
+    // and holds more records than the snapshot has users, the writer folds it
+    // into a fresh snapshot instead. Tying it to the snapshot's size keeps a
+    // run of single changes from rewriting a large snapshot on every flush. A
+    // bulk import skips the journal and ends with one snapshot.
+    private static final long FLUSH_DELAY_MS = 500;
+    private static final long SYNC_INTERVAL_MS = 2000;
+    private static final long COMPACT_THRESHOLD_BYTES = 4096L * UserJournal.RECORD_SIZE;
+    private final ScheduledThreadPoolExecutor writer;
+    private ScoreSubmitter submitter; // null unless a leaderboard service is configured
+    private final Object fileLock = new Object(); // Serializes file access within this process
+    private FileChannel lockChannel; // null if the lock file cannot be opened; files are then used unlocked
+    private UserJournal journal; // null if the journal could not be opened; every save is then a snapshot
+    private long journalGeneration = 0; // Journal version our state was read from
+    private long journalPosition = 0;   // How far into it we have read
+    private int snapshotUsers = 0; // Users in the snapshot file when we last read or wrote it
+    private FileTime boardsReadAt = null; // Modification time of BOARDS_FILE when we last read or wrote it
+    private List<UserJournal.Entry> pending = new ArrayList<>();
+    private boolean flushScheduled = false;
+    private boolean compactRequested = false;
+    private boolean closed = false;
+    private final boolean persistent; // false for a manager that never writes the files
+
+    private UserManager(boolean persistent) {
+        this.persistent = persistent;
+        this.writer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "UserManager-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // shutdown() drops queued saves; interrupting one in progress would close the files
+        writer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        writer.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+    }
+
+    // Loads the saved users and starts the background sync. Done here rather
+    // than in the constructor, which must not hand this to other threads
+    // before it has finished.
+    public static UserManager open() {
+        UserManager manager = new UserManager(true);
+        manager.loadUsers();
+        manager.writer.scheduleWithFixedDelay(manager::sync, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        manager.submitter = ScoreSubmitter.fromSystemProperty(manager::applyStandings);
+        return manager;
+    }
+
+    // A manager that starts empty and keeps everything in memory: it never
+    // writes the user files, boards, histories or combat stats and submits
+    // nothing to a leaderboard service. For runs that must leave no trace,
+    // such as autopilot soak runs.
+    public static UserManager openInMemory() {
+        return new UserManager(false);
     }
 
     // Create a new user
-    public void createUser(String username, int score) {
+    public synchronized void createUser(String username, int score) {
         if (getUserByUsername(username) == null) { // Check if user already exists
-            User user = new User(username, score);
-            users.add(user);
+            index(new User(username, score));
             System.out.println("User created: " + username);
-            saveUsers(); // Save after creating a user
+            record(UserJournal.OP_CREATE, username, score); // Save after creating a user
         } else {
             System.out.println("User already exists!");
         }
@@ -26,89 +112,754 @@ public class UserManager {
 
     // Read all users
     public List<User> getAllUsers() {
-        return users;
+        return new ArrayList<>(usersByName.values());
     }
 
-    // Read a specific user by username
+    // Read a specific user by username. Treat it as read-only; a score
+    // change replaces the object rather than modifying it.
     public User getUserByUsername(String username) {
-        for (User user : users) {
-            if (user.getUsername().equals(username)) {
-                return user;
+        return usersByName.get(username); // null if not found
+    }
+
+    // Usernames starting with prefix, in alphabetical order, at most limit of them
+    public List<String> findUsernamesByPrefix(String prefix, int limit) {
+        List<String> matches = new ArrayList<>();
+        for (String name : sortedNames.tailSet(prefix, true)) {
+            if (!name.startsWith(prefix) || matches.size() >= limit) {
+                break;
+            }
+            matches.add(name);
+        }
+        return matches;
+    }
+
+    // Position on the leaderboard, 1 being the highest score, or -1 if there is no such user
+    public int getRank(String username) {
+        User user = getUserByUsername(username);
+        int rank = user == null ? -1 : leaderboard.rank(username, user.getScore());
+        if (rank == -1 && user != null) {
+            synchronized (this) { // The score changed between the two reads
+                user = getUserByUsername(username);
+                return user == null ? -1 : leaderboard.rank(username, user.getScore());
             }
         }
-        return null; // User not found
+        return rank;
+    }
+
+    // The k highest scoring users, highest first
+    public List<User> getTopUsers(int k) {
+        return leaderboard.topN(k);
+    }
+
+    // The k users with the best scores set within window, highest first
+    public List<User> getTopUsers(WindowedLeaderboard.Window window, int k) {
+        if (window == WindowedLeaderboard.Window.ALL_TIME) {
+            return getTopUsers(k);
+        }
+        return recentBests.top(window, k, today(), usersByName::containsKey); // Skips deleted users
+    }
+
+    // limit users from the leaderboard starting at offset (0 is the top)
+    public List<User> getLeaderboardPage(int offset, int limit) {
+        return leaderboard.page(offset, limit);
+    }
+
+    // The leaderboard as it is now, for a series of queries that must agree with each other
+    public LeaderboardIndex getLeaderboardSnapshot() {
+        return leaderboard.snapshot();
+    }
+
+    public int getUserCount() {
+        return leaderboard.size();
     }
 
     // Update a user's score
-    public void updateUserScore(String username, int newScore) {
+    public synchronized void updateUserScore(String username, int newScore) {
         User user = getUserByUsername(username);
         if (user != null) {
-            user.setScore(newScore);
+            rescore(user, newScore);
+            recentBests.record(username, newScore, today());
             System.out.println("Updated score for user: " + username);
-            saveUsers(); // Save after updating
+            record(UserJournal.OP_UPDATE, username, newScore); // Save after updating
         } else {
             System.out.println("User not found!");
         }
     }
 
+    // Hands importUsers() the users to import, a batch at a time
+    public interface ImportSource {
+        // The next batch, or null when there are no more. The batch is not kept.
+        List<User> nextBatch() throws IOException;
+    }
+
+    // Adds the users, replacing the score of any that already exist, and
+    // returns how many were imported. Meant for bulk loads: nothing is printed
+    // or journaled per user, and only one batch is held besides the users
+    // themselves; the import ends with a single new snapshot. The file locks
+    // are held throughout, so no other process can compact in the meantime and
+    // have us reload a snapshot that lacks the imported users. Other processes'
+    // saves wait until the import is done; their games carry on.
+    public int importUsers(ImportSource source) throws IOException {
+        if (!persistent) {
+            throw new IOException("This user manager keeps nothing on disk; nothing imported");
+        }
+        synchronized (fileLock) {
+            FileLock lock = lockFiles();
+            try {
+                if (!mergeFromDisk()) {
+                    throw new IOException("Cannot read the current users; nothing imported");
+                }
+                int imported = 0;
+                try {
+                    for (List<User> batch; (batch = source.nextBatch()) != null; ) {
+                        importBatch(batch);
+                        imported += batch.size();
+                    }
+                } finally {
+                    // Whatever was imported is saved, even if the source failed
+                    saveLocked(true);
+                }
+                synchronized (this) {
+                    if (compactRequested) {
+                        throw new IOException("Imported users could not be saved; they are saved on the next successful save");
+                    }
+                }
+                return imported;
+            } finally {
+                unlock(lock);
+            }
+        }
+    }
+
+    private synchronized void importBatch(List<User> batch) {
+        Map<String, User> added = new HashMap<>();
+        for (User imported : batch) {
+            String username = imported.getUsername();
+            User user = getUserByUsername(username);
+            if (user == null) {
+                added.put(username, new User(username, imported.getScore())); // A repeated name keeps its last score
+            } else {
+                rescore(user, imported.getScore());
+            }
+        }
+        indexAll(added.values());
+    }
+
+    // Add a finished run to the user's history and report it to the leaderboard service
+    public synchronized void recordRun(String username, int score, int level, long durationMillis) {
+        long now = System.currentTimeMillis();
+        histories.recordRun(username, now, score, level,
+                (int) Math.min(Integer.MAX_VALUE, Math.max(0, durationMillis)));
+        scheduleSave();
+        if (submitter != null) {
+            submitter.submit(username, score, level, now);
+        }
+    }
+
+    // The user's best score and rank across all cabinets, as of the last run
+    // the service accepted; null if there is no service, it has not answered
+    // yet, or the answer went to another game process on this cabinet
+    public ScoreBatch.Standing getGlobalStanding(String username) {
+        return globalStandings.get(username);
+    }
+
+    // null if there is no leaderboard service
+    public SubmissionStats getSubmissionStats() {
+        return submitter == null ? null : submitter.getStats();
+    }
+
+    // Called on the submitter's thread with the service's answer
+    private void applyStandings(List<ScoreBatch.Standing> standings) {
+        for (ScoreBatch.Standing standing : standings) {
+            if (usersByName.containsKey(standing.username)) {
+                globalStandings.put(standing.username, standing);
+            }
+        }
+    }
+
+    // Best, average and percentile scores of runs finished between from and to (epoch ms)
+    public synchronized ScoreHistory.Summary getScoreSummary(String username, long from, long to) {
+        return histories.get(username).summarize(from, to);
+    }
+
+    // Runs finished between from and to (epoch ms), oldest first
+    public synchronized List<ScoreHistory.Run> getRuns(String username, long from, long to) {
+        return histories.get(username).getRuns(from, to);
+    }
+
+    // Adds the counters of one finished attempt at level (1-based) to the user's totals
+    public synchronized void recordLevelStats(String username, int level, CombatStats stats) {
+        combatStats.add(username, level, stats);
+        scheduleSave();
+    }
+
+    // Combat totals over every attempt the user made at level (1-based)
+    public synchronized CombatStats getCombatStats(String username, int level) {
+        return combatStats.get(username, level);
+    }
+
     // Delete a user
-    public void deleteUser(String username) {
+    public synchronized void deleteUser(String username) {
         User user = getUserByUsername(username);
         if (user != null) {
-            users.remove(user);
+            unindex(user);
+            histories.delete(username);
+            combatStats.delete(username);
+            recentBests.remove(username);
+            globalStandings.remove(username);
             System.out.println("User deleted: " + username);
-            saveUsers(); // Save after deleting
+            record(UserJournal.OP_DELETE, username, 0); // Save after deleting
         } else {
             System.out.println("User not found!");
         }
     }
 
-    // Save users to file
+    private void record(byte op, String username, int score) {
+        if (journal != null && UserJournal.fits(username)) {
+            pending.add(new UserJournal.Entry(op, username, score));
+        } else {
+            compactRequested = true;
+        }
+        scheduleSave();
+    }
+
+    // Queue a background save; changes made before it runs are written together
+    private synchronized void scheduleSave() {
+        if (persistent && !flushScheduled && !writer.isShutdown()) {
+            flushScheduled = true;
+            writer.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Merges other processes' changes, then appends ours to the journal, or
+    // writes a new snapshot when the journal has grown past its threshold
+    private void flush() {
+        save(false);
+    }
+
+    // Save a full snapshot right away, on the calling thread
     public void saveUsers() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(DATA_FILE))) {
-            oos.writeObject(users);
+        save(true);
+    }
+
+    private void save(boolean fullSnapshot) {
+        if (!persistent) {
+            return;
+        }
+        synchronized (fileLock) {
+            try {
+                FileLock lock = lockFiles();
+                try {
+                    saveLocked(fullSnapshot);
+                } finally {
+                    unlock(lock);
+                }
+            } catch (IOException e) {
+                System.err.println("Error locking user files: " + e.getMessage());
+                e.printStackTrace(System.err);
+            }
+        }
+    }
+
+    // save() with fileLock and the file lock already held
+    private void saveLocked(boolean fullSnapshot) {
+        List<UserJournal.Entry> batch;
+        List<User> snapshot = null;
+        Set<String> deletedHistories;
+        Map<String, ScoreHistoryStore.Unsaved> newRuns;
+        Set<String> deletedStats;
+        Map<String, long[][]> newStats;
+        byte[] boards = null;
+        boolean current = mergeFromDisk();
+        synchronized (this) {
+            flushScheduled = false;
+            batch = pending;
+            pending = new ArrayList<>();
+            if (fullSnapshot || compactRequested || journalOutgrown(batch.size())) {
+                // A snapshot written from a state that missed the one on
+                // disk would drop whatever it held; batch goes to the
+                // journal until a reload succeeds
+                compactRequested = !current;
+                snapshot = current ? copyUsers() : null;
+            }
+            deletedHistories = histories.takeDeleted();
+            newRuns = histories.takeUnsaved();
+            deletedStats = combatStats.takeDeleted();
+            newStats = combatStats.takeUnsaved();
+            if (recentBests.isDirty()) {
+                boards = recentBests.encode(today());
+            }
+        }
+        if (snapshot != null) {
+            compact(snapshot, batch);
+        } else {
+            appendJournal(batch);
+        }
+        writeHistories(deletedHistories, newRuns);
+        writeCombatStats(deletedStats, newStats);
+        if (boards != null) {
+            writeBoards(boards);
+        }
+    }
+
+    // Picks up changes other processes made, without writing anything
+    private void sync() {
+        synchronized (fileLock) {
+            try {
+                FileLock lock = lockFiles();
+                try {
+                    mergeFromDisk();
+                } finally {
+                    unlock(lock);
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading other sessions' changes: " + e.getMessage());
+            }
+        }
+    }
+
+    // Null when there is no lock file to use
+    private FileLock lockFiles() throws IOException {
+        return lockChannel == null ? null : lockChannel.lock();
+    }
+
+    // Releases what lockFiles() returned
+    private static void unlock(FileLock lock) throws IOException {
+        if (lock != null) {
+            lock.release();
+        }
+    }
+
+    // Brings our state up to date with the files. If someone compacted the
+    // journal since we last read it, the snapshot is read again; otherwise only
+    // the records added after our position are applied. Our own unsaved changes
+    // are newer than anything on disk, so they are applied again on top.
+    //
+    // Called with fileLock and the file lock held but not this object's lock:
+    // the files are read into local structures first and only applied under
+    // it, so the game's own changes never wait for the disk. Returns false,
+    // leaving our state as it was, if the files could not be read; the reload
+    // is then tried again next time, as the generation is left unchanged.
+    private boolean mergeFromDisk() {
+        mergeBoards();
+        if (journal == null) {
+            return true;
+        }
+        try {
+            long generation = journal.readGeneration();
+            if (generation != journalGeneration) {
+                List<User> snapshot = readSnapshot();
+                Map<String, Integer> scores = new HashMap<>(snapshot.size() * 2);
+                for (User user : snapshot) {
+                    scores.put(user.getUsername(), user.getScore());
+                }
+                long position = journal.read(UserJournal.HEADER_SIZE, entry -> applyTo(scores, entry));
+                synchronized (this) {
+                    for (UserJournal.Entry entry : pending) {
+                        applyTo(scores, entry);
+                    }
+                    replaceAll(scores);
+                    snapshotUsers = snapshot.size();
+                }
+                journalPosition = position;
+                journalGeneration = generation;
+            } else if (journal.size() > journalPosition) {
+                List<UserJournal.Entry> entries = new ArrayList<>();
+                long position = journal.read(journalPosition, entries::add);
+                synchronized (this) {
+                    for (UserJournal.Entry entry : entries) {
+                        apply(entry);
+                    }
+                    for (UserJournal.Entry entry : pending) {
+                        apply(entry);
+                    }
+                }
+                journalPosition = position;
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error reading other sessions' changes, keeping ours: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Takes in the recent bests other processes saved since we last looked;
+    // each user keeps the better of the two scores for each day
+    private void mergeBoards() {
+        Path path = Paths.get(BOARDS_FILE);
+        try {
+            if (!Files.exists(path)) {
+                return;
+            }
+            FileTime modified = Files.getLastModifiedTime(path);
+            if (modified.equals(readBoardsAt())) {
+                return;
+            }
+            byte[] boards = Files.readAllBytes(path);
+            synchronized (this) {
+                if (!recentBests.merge(boards, today())) {
+                    System.err.println("Ignoring unreadable " + BOARDS_FILE);
+                }
+                boardsReadAt = modified;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading " + BOARDS_FILE + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized FileTime readBoardsAt() {
+        return boardsReadAt;
+    }
+
+    // boards already holds what was on disk, as save() merged it first
+    private void writeBoards(byte[] boards) {
+        Path path = Paths.get(BOARDS_FILE);
+        Path tempPath = Paths.get(BOARDS_FILE + ".tmp");
+        try {
+            Files.write(tempPath, boards);
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileTime modified = Files.getLastModifiedTime(path);
+            synchronized (this) {
+                boardsReadAt = modified;
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving " + BOARDS_FILE + ": " + e.getMessage());
+            synchronized (this) {
+                recentBests.markDirty(); // Written again on the next save
+            }
+        }
+    }
+
+    private static long today() {
+        return LocalDate.now().toEpochDay();
+    }
+
+    private static void applyTo(Map<String, Integer> scores, UserJournal.Entry entry) {
+        if (entry.op == UserJournal.OP_DELETE) {
+            scores.remove(entry.username);
+        } else if (entry.op == UserJournal.OP_CREATE) {
+            scores.putIfAbsent(entry.username, entry.score);
+        } else {
+            scores.put(entry.username, entry.score);
+        }
+    }
+
+    // Changes only the users that differ, so readers never see a half-empty store
+    private void replaceAll(Map<String, Integer> scores) {
+        for (User user : new ArrayList<>(usersByName.values())) {
+            if (!scores.containsKey(user.getUsername())) {
+                unindex(user);
+            }
+        }
+        for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+            User user = usersByName.get(entry.getKey());
+            if (user == null) {
+                index(new User(entry.getKey(), entry.getValue()));
+            } else {
+                rescore(user, entry.getValue());
+            }
+        }
+    }
+
+    private void writeHistories(Set<String> deletedHistories, Map<String, ScoreHistoryStore.Unsaved> newRuns) {
+        try {
+            histories.write(deletedHistories, newRuns);
+        } catch (IOException e) {
+            System.err.println("Error saving score history: " + e.getMessage());
+            e.printStackTrace(System.err);
+        }
+        synchronized (this) {
+            histories.markSaved(newRuns); // Runs write() did not get to go again on the next save
+        }
+    }
+
+    // Whether appending newRecords would leave the journal past
+    // COMPACT_THRESHOLD_BYTES and holding more records than the snapshot has users
+    private boolean journalOutgrown(int newRecords) {
+        long size = journalSize() + (long) newRecords * UserJournal.RECORD_SIZE;
+        return size > COMPACT_THRESHOLD_BYTES && size / UserJournal.RECORD_SIZE > snapshotUsers;
+    }
+
+    private void writeCombatStats(Set<String> deletedStats, Map<String, long[][]> newStats) {
+        try {
+            combatStats.write(deletedStats, newStats);
+        } catch (IOException e) {
+            System.err.println("Error saving combat stats: " + e.getMessage());
+            synchronized (this) {
+                combatStats.restore(newStats); // Only the users write() did not get to are left
+            }
+        }
+    }
+
+    private long journalSize() {
+        try {
+            return journal == null ? 0 : journal.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void appendJournal(List<UserJournal.Entry> batch) {
+        if (batch.isEmpty() || journal == null) {
+            return;
+        }
+        try {
+            journalPosition = journal.append(batch);
+        } catch (IOException e) {
+            System.err.println("Error writing user journal: " + e.getMessage());
+            e.printStackTrace(System.err);
+            synchronized (this) {
+                compactRequested = true; // Fall back to a full snapshot on the next save
+            }
+            scheduleSave();
+        }
+    }
+
+    // Replaces the snapshot and empties the journal, moving it to a new
+    // generation. If the snapshot cannot be written, batch (already reflected
+    // in it) goes to the journal instead, and the next save tries again.
+    private void compact(List<User> snapshot, List<UserJournal.Entry> batch) {
+        if (!writeUsers(snapshot)) {
+            synchronized (this) {
+                compactRequested = true; // Tried again on the next save
+            }
+            appendJournal(batch);
+            return;
+        }
+        synchronized (this) {
+            snapshotUsers = snapshot.size();
+        }
+        if (journal != null) {
+            try {
+                journal.reset(journalGeneration + 1);
+                journalGeneration++;
+                journalPosition = UserJournal.HEADER_SIZE;
+            } catch (IOException e) {
+                // Harmless: replaying old records over the new snapshot changes nothing
+                System.err.println("Error clearing user journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // Copies users so the file can be written while the game keeps changing them
+    private List<User> copyUsers() {
+        List<User> copy = new ArrayList<>(usersByName.size());
+        for (User user : usersByName.values()) {
+            copy.add(new User(user.getUsername(), user.getScore()));
+        }
+        return copy;
+    }
+
+    private boolean writeUsers(List<User> snapshot) {
+        try {
+            UserStoreFile.write(Paths.get(DATA_FILE), snapshot);
             System.out.println("Users saved to file successfully.");
+            return true;
         } catch (IOException e) {
             System.err.println("Error saving users: " + e.getMessage());
             e.printStackTrace(System.err);
+            return false;
         }
     }
 
     // Load users from file
-    @SuppressWarnings("unchecked")
     private void loadUsers() {
-        File file = new File(DATA_FILE);
-        if (file.exists()) {
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                List<User> loadedUsers = (List<User>) ois.readObject();
-                users = loadedUsers;  // Directly assign the loaded list
-                System.out.println("Loaded " + users.size() + " users from file.");
-            } catch (IOException | ClassNotFoundException e) {
+        try {
+            lockChannel = FileChannel.open(Paths.get(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            System.err.println("Error opening " + LOCK_FILE + ", other game sessions may overwrite this one: " + e.getMessage());
+        }
+        boolean migrate = false;
+        synchronized (fileLock) {
+            try {
+                FileLock lock = lockFiles();
+                try {
+                    synchronized (this) {
+                        Path dataPath = Paths.get(DATA_FILE);
+                        migrate = Files.exists(dataPath) && UserStoreFile.isSerializedList(dataPath);
+                        List<User> snapshot;
+                        if (!Files.exists(dataPath)) {
+                            System.out.println("No user data file found. Starting with empty user list.");
+                            snapshot = new ArrayList<>();
+                        } else {
+                            try {
+                                snapshot = readSnapshot();
+                            } catch (IOException e) {
+                                System.err.println("Error loading users: " + e.getMessage());
+                                e.printStackTrace(System.err);
+                                // Start from an empty list if loading fails. Only here:
+                                // a failed reload later keeps the users we have.
+                                snapshot = new ArrayList<>();
+                            }
+                        }
+                        snapshotUsers = snapshot.size();
+                        indexAll(snapshot);
+                        mergeBoards();
+                        System.out.println("Loaded " + usersByName.size() + " users from file.");
+                        replayJournal();
+                    }
+                } finally {
+                    unlock(lock);
+                }
+            } catch (IOException e) {
                 System.err.println("Error loading users: " + e.getMessage());
                 e.printStackTrace(System.err);
-                // Create a new list if loading fails
-                users = new ArrayList<>();
+            }
+        }
+        if (migrate) {
+            System.out.println("Converting " + DATA_FILE + " to the binary user store format.");
+        }
+        if (migrate || compactRequested) {
+            saveUsers();
+        }
+    }
+
+    // Users in the snapshot file; throws if it is missing or cannot be read
+    private List<User> readSnapshot() throws IOException {
+        Path dataPath = Paths.get(DATA_FILE);
+        if (UserStoreFile.isSerializedList(dataPath)) {
+            try {
+                return readSerializedUsers(dataPath);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unreadable " + DATA_FILE, e);
+            }
+        }
+        return UserStoreFile.open(dataPath).readAll();
+    }
+
+    // Files written before the binary store were a serialized ArrayList<User>
+    @SuppressWarnings("unchecked")
+    private static List<User> readSerializedUsers(Path path) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return new ArrayList<>((List<User>) ois.readObject());
+        }
+    }
+
+    // Applies changes saved after the snapshot was written
+    private void replayJournal() {
+        try {
+            journal = new UserJournal(Paths.get(JOURNAL_FILE));
+            journalGeneration = journal.readGeneration();
+            journalPosition = journal.read(UserJournal.HEADER_SIZE, this::apply);
+            long replayed = (journalPosition - UserJournal.HEADER_SIZE) / UserJournal.RECORD_SIZE;
+            if (replayed > 0) {
+                System.out.println("Replayed " + replayed + " changes from the user journal.");
+            }
+            if (journalOutgrown(0)) {
+                compactRequested = true;
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening user journal: " + e.getMessage());
+            e.printStackTrace(System.err);
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException ignored) {
+                    // Not using it either way
+                }
+            }
+            journal = null;
+        }
+    }
+
+    // A create never resets a user that exists: another session may have
+    // created the same name and scored since
+    private void apply(UserJournal.Entry entry) {
+        User user = usersByName.get(entry.username);
+        if (entry.op == UserJournal.OP_DELETE) {
+            if (user != null) {
+                unindex(user);
+            }
+        } else if (user != null) {
+            if (entry.op == UserJournal.OP_UPDATE) {
+                rescore(user, entry.score);
             }
         } else {
-            System.out.println("No user data file found. Starting with empty user list.");
+            index(new User(entry.username, entry.score));
         }
     }
 
+    private void index(User user) {
+        leaderboard.add(user.getUsername(), user.getScore());
+        sortedNames.add(user.getUsername());
+        usersByName.put(user.getUsername(), user);
+    }
+
+    // Users none of which are indexed yet, added in one leaderboard update
+    private void indexAll(Collection<User> users) {
+        leaderboard.addAll(users);
+        for (User user : users) {
+            sortedNames.add(user.getUsername());
+            usersByName.put(user.getUsername(), user);
+        }
+    }
+
+    private void unindex(User user) {
+        usersByName.remove(user.getUsername());
+        sortedNames.remove(user.getUsername());
+        leaderboard.remove(user.getUsername(), user.getScore());
+    }
+
+    // Swaps in a new User rather than changing the shared one, so a reader
+    // always sees a score that matches the leaderboard's
+    private void rescore(User user, int score) {
+        if (user.getScore() == score) {
+            return;
+        }
+        leaderboard.rescore(user.getUsername(), user.getScore(), score);
+        usersByName.put(user.getUsername(), new User(user.getUsername(), score));
+    }
+
     // Call this method when the game is shutting down
     public void shutdown() {
-        saveUsers(); // Ensure all data is saved
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        writer.shutdown(); // Drop the pending background save; we write everything below
+        try {
+            writer.awaitTermination(2, TimeUnit.SECONDS); // Let a save already in progress finish
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(); // Ensure all data is saved
+        if (submitter != null) {
+            submitter.shutdown();
+            System.out.println("Leaderboard submissions: " + submitter.getStats());
+        }
+        boolean retry;
+        synchronized (this) {
+            retry = compactRequested; // The journal write failed and the writer is gone
+        }
+        if (retry) {
+            saveUsers();
+        }
+        synchronized (fileLock) {
+            try {
+                if (journal != null) {
+                    journal.close();
+                }
+                if (lockChannel != null) {
+                    lockChannel.close();
+                }
+            } catch (IOException e) {
+                // Everything was forced to disk by flush()
+            }
+        }
         System.out.println("UserManager shutdown complete.");
     }
-    
+
     // Method to display all users and their scores
     public void displayAllUsers() {
-        if (users.isEmpty()) {
+        if (usersByName.isEmpty()) {
             System.out.println("No users registered.");
         } else {
             System.out.println("Current users:");
-            for (User user : users) {
+            for (User user : usersByName.values()) {
                 System.out.println(user);
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,340 @@
+// UserStoreFile.java
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// Binary user snapshot. open() reads the whole file into memory with one plain
+// read and closes it again, so nothing keeps the file open or mapped and a new
+// snapshot can always be renamed over it. Layout (little-endian):
+//
+//   header:       magic "DTUS" (4) | version (4) | user count (4) | name index offset (4)
+//   records:      name length (2) | UTF-8 name | score (4), one per user
+//   name index:   record offset (4) per user, sorted by name
+//
+// Version 1 files also had a score index, at an offset stored after the name
+// index's in a 20-byte header. The leaderboard is always served from memory,
+// so nothing read it; it is ignored, and no longer written.
+public class UserStoreFile {
+    private static final int MAGIC = 0x53555444; // "DTUS"
+    public static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int V1_HEADER_SIZE = 20;
+
+    private final ByteBuffer data;
+    private final int count;
+    private final int nameIndex;
+
+    private UserStoreFile(ByteBuffer data) throws IOException {
+        this.data = data;
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        int headerSize = headerSize(data, data.capacity());
+        count = data.getInt(8);
+        nameIndex = data.getInt(12);
+        if (count < 0 || nameIndex < headerSize || (long) nameIndex + count * 4L > data.capacity()) {
+            throw new IOException("Damaged user store header");
+        }
+    }
+
+    // Size of the header at the start of header, for a file of fileSize bytes
+    private static int headerSize(ByteBuffer header, long fileSize) throws IOException {
+        if (fileSize < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a user store file");
+        }
+        int version = header.getInt(4);
+        if (version == 1 && fileSize >= V1_HEADER_SIZE) {
+            return V1_HEADER_SIZE;
+        }
+        if (version != VERSION) {
+            throw new IOException("Unsupported user store version " + version);
+        }
+        return HEADER_SIZE;
+    }
+
+    public static UserStoreFile open(Path path) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("User store too large: " + size + " bytes");
+            }
+            data = ByteBuffer.allocate((int) size);
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // Keep reading until the whole file is in
+            }
+        }
+        if (data.hasRemaining()) {
+            throw new IOException("User store shrank while it was read");
+        }
+        return new UserStoreFile(data);
+    }
+
+    // True for the old format, a Java-serialized ArrayList<User>
+    public static boolean isSerializedList(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.read() == 0xAC && in.read() == 0xED;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // i-th user in name order
+    public User userAt(int i) {
+        return readRecord(data.getInt(nameIndex + i * 4));
+    }
+
+    // Every user, read straight through the record area in name order
+    public List<User> readAll() throws IOException {
+        List<User> users = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                users.add(userAt(i));
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("Damaged user store record", e);
+        }
+        return users;
+    }
+
+    private String readName(int offset) {
+        byte[] name = new byte[data.getShort(offset) & 0xFFFF];
+        data.get(offset + 2, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private User readRecord(int offset) {
+        int nameLength = data.getShort(offset) & 0xFFFF;
+        return new User(readName(offset), data.getInt(offset + 2 + nameLength));
+    }
+
+    // Reads a store's users in name order while holding only a small buffer,
+    // for tools that go over stores too large to load. The records were
+    // written in name order, so the record area is read front to back and the
+    // name index is not needed; a store whose records are out of order is
+    // reported as damaged.
+    public static final class Reader implements Closeable {
+        private static final int BUFFER_SIZE = 1 << 17; // Room for the longest record
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final int count;
+        private final long recordsEnd;
+        private long position; // File offset of the next record
+        private int read = 0;
+        private String lastName = null;
+
+        private Reader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(V1_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // Keep reading until the whole header is in
+            }
+            int headerSize = headerSize(header, size);
+            count = header.getInt(8);
+            recordsEnd = header.getInt(12);
+            if (count < 0 || recordsEnd < headerSize || recordsEnd + count * 4L > size) {
+                throw new IOException("Damaged user store header");
+            }
+            position = headerSize;
+            channel.position(headerSize);
+            buffer.limit(0);
+        }
+
+        public static Reader open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                return new Reader(channel);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public int size() {
+            return count;
+        }
+
+        // The next user in name order, or null after the last
+        public User next() throws IOException {
+            if (read == count) {
+                return null;
+            }
+            fill(2);
+            int nameLength = buffer.getShort(buffer.position()) & 0xFFFF;
+            int recordSize = 2 + nameLength + 4;
+            if (position + recordSize > recordsEnd) {
+                throw new IOException("Damaged user store record");
+            }
+            fill(recordSize);
+            buffer.getShort();
+            byte[] name = new byte[nameLength];
+            buffer.get(name);
+            User user = new User(new String(name, StandardCharsets.UTF_8), buffer.getInt());
+            if (lastName != null && user.getUsername().compareTo(lastName) <= 0) {
+                throw new IOException("User store records out of name order at " + user.getUsername());
+            }
+            lastName = user.getUsername();
+            position += recordSize;
+            read++;
+            return user;
+        }
+
+        // Makes sure at least n unread bytes are in the buffer
+        private void fill(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < n) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("User store cut short");
+                }
+            }
+            buffer.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Writes users to a temp file, syncs it, then renames it over path, so a crash
+    // mid-write leaves the previous file intact
+    public static void write(Path path, Collection<User> users) throws IOException {
+        List<User> byName = new ArrayList<>(users);
+        byName.sort((a, b) -> a.getUsername().compareTo(b.getUsername()));
+        try (Writer writer = new Writer(path, byName.size())) {
+            for (User user : byName) {
+                writer.add(user.getUsername(), user.getScore());
+            }
+            writer.finish();
+        }
+    }
+
+    // Writes a store one user at a time, so the users never all have to be in
+    // memory; only each record's offset is kept, for the name index.
+    // Users must be added in name order. Nothing replaces path until finish();
+    // closing an unfinished writer deletes its temp file.
+    public static final class Writer implements Closeable {
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        private final Path path;
+        private final Path tempPath;
+        private final FileChannel out;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long position = HEADER_SIZE;
+        private int[] offsets;
+        private int count = 0;
+        private String lastName = null;
+        private boolean finished = false;
+
+        // expectedUsers only sizes the index array; more may be added
+        public Writer(Path path, int expectedUsers) throws IOException {
+            this.path = path;
+            this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            this.offsets = new int[Math.max(16, expectedUsers)];
+            this.out = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            out.position(HEADER_SIZE); // finish() fills in the header last
+        }
+
+        public void add(String username, int score) throws IOException {
+            if (lastName != null && username.compareTo(lastName) <= 0) {
+                throw new IllegalArgumentException("Users must be added once each, in name order: " + username);
+            }
+            byte[] name = username.getBytes(StandardCharsets.UTF_8);
+            if (name.length > 0xFFFF) {
+                throw new IOException("Username too long to save: " + username.substring(0, 32) + "...");
+            }
+            int recordSize = 2 + name.length + 4;
+            // The index holds 4-byte offsets, so the whole file has to stay addressable by them
+            if (position + recordSize + (count + 1) * 4L > Integer.MAX_VALUE) {
+                throw new IOException("Too many users for one store file");
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count] = (int) position;
+            count++;
+            lastName = username;
+
+            if (buffer.remaining() < recordSize) {
+                drain();
+            }
+            if (buffer.remaining() < recordSize) {
+                ByteBuffer record = ByteBuffer.allocate(recordSize).order(ByteOrder.LITTLE_ENDIAN);
+                record.putShort((short) name.length).put(name).putInt(score).flip();
+                writeFully(record);
+            } else {
+                buffer.putShort((short) name.length).put(name).putInt(score);
+            }
+            position += recordSize;
+        }
+
+        // Writes the name index and header, syncs the file and moves it over path
+        public void finish() throws IOException {
+            int nameIndex = (int) position;
+            for (int i = 0; i < count; i++) {
+                putInt(offsets[i]);
+            }
+            drain();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(nameIndex).flip();
+            while (header.hasRemaining()) {
+                out.write(header, header.position());
+            }
+            out.force(true);
+            out.close();
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                out.close();
+                Files.deleteIfExists(tempPath);
+            }
+        }
+
+        private void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                drain();
+            }
+            buffer.putInt(value);
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
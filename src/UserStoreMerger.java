@@ -0,0 +1,277 @@
+// UserStoreMerger.java
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+// Consolidates several user stores into one. Every store keeps its records in
+// name order, so the stores are read side by side, k-way, smallest name
+// first, and the result goes straight to a UserStoreFile.Writer. Each store is
+// streamed through a UserStoreFile.Reader and its small buffer, so what is held
+// is one buffer per input, the inputs' unsaved journal changes and the
+// writer's one int per user written, however large the stores are.
+//
+// Each input is a snapshot such as users.dat. If the journal the game keeps
+// next to it (users.journal) exists, its changes are applied on the fly, and
+// the store's lock file is held while both are read, as UserManager does.
+// The inputs are only read, never changed.
+//
+// Stores do not record when each user's score was set, so the latest policy
+// compares whole stores: every user takes the copy from the store saved most
+// recently, going by the later of its snapshot's and journal's modification
+// times.
+//
+// Usage: java UserStoreMerger [--policy max|latest] <output> <input>...
+public class UserStoreMerger {
+    // Which copy wins when a user is in more than one store
+    public enum Policy {
+        MAX_SCORE, // The highest score
+        LATEST     // The most recently saved store wins, whichever user changed; later inputs win ties
+    }
+
+    // Merges inputs into output and returns the number of users written
+    public static int merge(List<Path> inputs, Path output, Policy policy) throws IOException {
+        List<Source> sources = new ArrayList<>();
+        try {
+            return merge(inputs, output, policy, sources);
+        } finally {
+            for (Source source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    private static int merge(List<Path> inputs, Path output, Policy policy, List<Source> sources) throws IOException {
+        int expectedUsers = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            Source source = Source.open(inputs.get(i), i);
+            sources.add(source);
+            expectedUsers = (int) Math.min(Integer.MAX_VALUE, (long) expectedUsers + source.sizeHint());
+        }
+        PriorityQueue<Source> heads = new PriorityQueue<>((a, b) -> {
+            int compare = a.username.compareTo(b.username);
+            return compare != 0 ? compare : Integer.compare(a.order, b.order);
+        });
+        for (Source source : sources) {
+            if (source.advance()) {
+                heads.add(source);
+            }
+        }
+        try (UserStoreFile.Writer writer = new UserStoreFile.Writer(output, expectedUsers)) {
+            while (!heads.isEmpty()) {
+                Source winner = heads.poll();
+                String username = winner.username;
+                int score = winner.score;
+                List<Source> same = new ArrayList<>();
+                same.add(winner);
+                while (!heads.isEmpty() && heads.peek().username.equals(username)) {
+                    Source other = heads.poll();
+                    same.add(other);
+                    if (wins(policy, other, winner)) {
+                        winner = other;
+                        score = other.score;
+                    }
+                }
+                writer.add(username, score);
+                for (Source source : same) {
+                    if (source.advance()) {
+                        heads.add(source);
+                    }
+                }
+            }
+            writer.finish();
+            return writer.size();
+        }
+    }
+
+    // Whether candidate's copy of the current user replaces current's
+    private static boolean wins(Policy policy, Source candidate, Source current) {
+        if (policy == Policy.MAX_SCORE) {
+            return candidate.score > current.score;
+        }
+        return candidate.savedAt > current.savedAt
+                || (candidate.savedAt == current.savedAt && candidate.order > current.order);
+    }
+
+    // One input store, read in name order with its journal laid over it
+    private static final class Source implements Closeable {
+        final int order;
+        final long savedAt;
+        private final UserStoreFile.Reader store;
+        private final Iterator<Map.Entry<String, Change>> changes;
+        private User nextInStore;
+        private Map.Entry<String, Change> nextChange;
+        private final int changeCount;
+
+        String username;
+        int score;
+
+        private Source(int order, long savedAt, UserStoreFile.Reader store, TreeMap<String, Change> changes)
+                throws IOException {
+            this.order = order;
+            this.savedAt = savedAt;
+            this.store = store;
+            this.changes = changes.entrySet().iterator();
+            this.changeCount = changes.size();
+            this.nextChange = this.changes.hasNext() ? this.changes.next() : null;
+            this.nextInStore = store.next();
+        }
+
+        // The store's file stays open for reading after its lock is released;
+        // if a game replaces it meanwhile, the open file is still the snapshot
+        // the journal was read against
+        static Source open(Path path, int order) throws IOException {
+            if (!Files.exists(path)) {
+                throw new IOException("No user store at " + path);
+            }
+            if (UserStoreFile.isSerializedList(path)) {
+                throw new IOException(path + " is in the old format; start the game on it once to convert it");
+            }
+            Path journalPath = siblingWithExtension(path, ".journal");
+            Path lockPath = path.resolveSibling(path.getFileName() + ".lock");
+            try (FileChannel lockChannel = Files.exists(lockPath)
+                    ? FileChannel.open(lockPath, StandardOpenOption.WRITE) : null) {
+                FileLock lock = lockChannel == null ? null : lockChannel.lock();
+                try {
+                    long savedAt = Files.getLastModifiedTime(path).toMillis();
+                    TreeMap<String, Change> changes = new TreeMap<>();
+                    if (Files.exists(journalPath) && Files.size(journalPath) > 0) {
+                        savedAt = Math.max(savedAt, Files.getLastModifiedTime(journalPath).toMillis());
+                        try (UserJournal journal = UserJournal.openReadOnly(journalPath)) {
+                            journal.readGeneration(); // Checks the header
+                            journal.read(UserJournal.HEADER_SIZE, entry -> applyChange(changes, entry));
+                        }
+                    }
+                    UserStoreFile.Reader store = UserStoreFile.Reader.open(path);
+                    try {
+                        return new Source(order, savedAt, store, changes);
+                    } catch (IOException | RuntimeException e) {
+                        store.close();
+                        throw e;
+                    }
+                } finally {
+                    if (lock != null) {
+                        lock.release();
+                    }
+                }
+            }
+        }
+
+        // Same rules as UserManager's journal replay: a create never resets an
+        // existing user. Whether the store has the user is only known when the
+        // stores are read, so a create that is not settled by an earlier change
+        // stays conditional until then.
+        private static void applyChange(Map<String, Change> changes, UserJournal.Entry entry) {
+            if (entry.op == UserJournal.OP_DELETE) {
+                changes.put(entry.username, Change.DELETED);
+            } else if (entry.op == UserJournal.OP_UPDATE) {
+                changes.put(entry.username, new Change(entry.score, false));
+            } else {
+                Change earlier = changes.get(entry.username);
+                if (earlier == null) {
+                    changes.put(entry.username, new Change(entry.score, true));
+                } else if (earlier == Change.DELETED) {
+                    changes.put(entry.username, new Change(entry.score, false));
+                }
+            }
+        }
+
+        int sizeHint() {
+            return store.size() + changeCount;
+        }
+
+        // Moves to the next user in name order; false when there are no more
+        boolean advance() throws IOException {
+            while (true) {
+                User stored = nextInStore;
+                if (stored == null && nextChange == null) {
+                    return false;
+                }
+                int compare = stored == null ? 1
+                        : nextChange == null ? -1
+                        : stored.getUsername().compareTo(nextChange.getKey());
+                if (compare < 0) {
+                    nextInStore = store.next();
+                    username = stored.getUsername();
+                    score = stored.getScore();
+                    return true;
+                }
+                Map.Entry<String, Change> change = nextChange;
+                nextChange = changes.hasNext() ? changes.next() : null;
+                if (compare == 0) {
+                    nextInStore = store.next();
+                    if (change.getValue().ifMissing) {
+                        username = stored.getUsername(); // The create loses to the stored user
+                        score = stored.getScore();
+                        return true;
+                    }
+                }
+                // The journal's version replaces the stored one
+                if (change.getValue() != Change.DELETED) {
+                    username = change.getKey();
+                    score = change.getValue().score;
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            store.close();
+        }
+    }
+
+    // The journal's last word on one user
+    private static final class Change {
+        static final Change DELETED = new Change(0, false);
+
+        final int score;
+        final boolean ifMissing; // A create: only applies if the store does not have the user
+
+        Change(int score, boolean ifMissing) {
+            this.score = score;
+            this.ifMissing = ifMissing;
+        }
+    }
+
+    // users.dat -> users.journal
+    private static Path siblingWithExtension(Path path, String extension) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return path.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + extension);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Policy policy = Policy.MAX_SCORE;
+        int first = 0;
+        if (args.length > 1 && args[0].equals("--policy")) {
+            policy = args[1].equals("latest") ? Policy.LATEST : args[1].equals("max") ? Policy.MAX_SCORE : null;
+            first = 2;
+        }
+        if (policy == null || args.length - first < 2) {
+            System.err.println("Usage: java UserStoreMerger [--policy max|latest] <output> <input>...");
+            System.err.println("  max     each user keeps their highest score (default)");
+            System.err.println("  latest  each user keeps the score from the most recently saved store");
+            System.exit(2);
+        }
+        Path output = Paths.get(args[first]);
+        List<Path> inputs = new ArrayList<>();
+        for (int i = first + 1; i < args.length; i++) {
+            inputs.add(Paths.get(args[i]));
+        }
+        long start = System.nanoTime();
+        int count = merge(inputs, output, policy);
+        System.out.printf("Merged %d stores into %d users in %d ms%n", inputs.size(), count,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
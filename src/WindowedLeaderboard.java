@@ -0,0 +1,229 @@
+// WindowedLeaderboard.java
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+// Best score per user over the last few days, for the "today" and "this week"
+// boards. Scores go into one bucket per day (days counted as epoch days), each
+// holding the best score of every user who played that day, ordered by a
+// LeaderboardIndex. The buckets sit in a ring of DAYS slots: a new day simply
+// takes over the slot of the day that left the window, so nothing is ever
+// rescanned or removed one entry at a time.
+//
+// A query walks the orders of the days in its window side by side, highest
+// score first, keeping each user's first (and so best) appearance, and stops
+// after k users, so its cost follows k and the window, not the history.
+//
+// Updates must be serialized by the caller; queries need no lock.
+public class WindowedLeaderboard {
+    public enum Window {
+        TODAY(1),
+        THIS_WEEK(DAYS),
+        ALL_TIME(0); // Not kept here: UserManager's main leaderboard
+
+        final int days;
+
+        Window(int days) {
+            this.days = days;
+        }
+    }
+
+    private static final int DAYS = 7;
+    private static final int FILE_MAGIC = 0x42575444; // "DTWB"
+    private static final int FILE_VERSION = 1;
+
+    private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(DAYS);
+    private boolean dirty = false; // Recorded scores that encode() has not returned yet
+
+    private static final class Bucket {
+        final long day;
+        final Map<String, Integer> best = new HashMap<>();
+        final LeaderboardIndex order = new LeaderboardIndex();
+
+        Bucket(long day) {
+            this.day = day;
+        }
+    }
+
+    // Keeps score if it is the user's best today (an epoch day)
+    public void record(String username, int score, long today) {
+        if (keep(username, score, today, today)) {
+            dirty = true;
+        }
+    }
+
+    // Days outside the window ending today are ignored
+    private boolean keep(String username, int score, long day, long today) {
+        if (day <= today - DAYS || day > today) {
+            return false;
+        }
+        int slot = slot(day);
+        Bucket bucket = buckets.get(slot);
+        if (bucket == null || bucket.day != day) {
+            if (bucket != null && bucket.day > day) {
+                return false; // The slot already belongs to a later day
+            }
+            bucket = new Bucket(day); // Replaces a day that left the window
+            buckets.set(slot, bucket);
+        }
+        Integer old = bucket.best.get(username);
+        if (old != null && old >= score) {
+            return false;
+        }
+        bucket.best.put(username, score);
+        if (old == null) {
+            bucket.order.add(username, score);
+        } else {
+            bucket.order.rescore(username, old, score);
+        }
+        return true;
+    }
+
+    // Drops the user from every day
+    public void remove(String username) {
+        for (int slot = 0; slot < DAYS; slot++) {
+            Bucket bucket = buckets.get(slot);
+            Integer score = bucket == null ? null : bucket.best.remove(username);
+            if (score != null) {
+                bucket.order.remove(username, score);
+            }
+        }
+    }
+
+    // The k best users over the window ending today, highest first, skipping
+    // those include rejects
+    public List<User> top(Window window, int k, long today, Predicate<String> include) {
+        List<LeaderboardIndex> days = new ArrayList<>();
+        for (long day = today - window.days + 1; day <= today; day++) {
+            Bucket bucket = buckets.get(slot(day));
+            if (bucket != null && bucket.day == day) {
+                days.add(bucket.order.snapshot());
+            }
+        }
+        if (days.isEmpty()) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<Cursor> heads = new PriorityQueue<>();
+        for (LeaderboardIndex day : days) {
+            Cursor cursor = new Cursor(day);
+            if (cursor.head != null) {
+                heads.add(cursor);
+            }
+        }
+        List<User> top = new ArrayList<>(k);
+        Set<String> seen = new HashSet<>();
+        while (top.size() < k && !heads.isEmpty()) {
+            Cursor cursor = heads.poll();
+            if (seen.add(cursor.head.getUsername()) && include.test(cursor.head.getUsername())) {
+                top.add(cursor.head);
+            }
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return top;
+    }
+
+    // Walks one day's order from the top
+    private static final class Cursor implements Comparable<Cursor> {
+        private final LeaderboardIndex day;
+        private int position = 0;
+        User head;
+
+        Cursor(LeaderboardIndex day) {
+            this.day = day;
+            this.head = day.get(0);
+        }
+
+        boolean advance() {
+            head = day.get(++position);
+            return head != null;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            if (head.getScore() != other.head.getScore()) {
+                return Integer.compare(other.head.getScore(), head.getScore());
+            }
+            return head.getUsername().compareTo(other.head.getUsername());
+        }
+    }
+
+    // Whether scores were recorded since the last encode()
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    // For when the data from encode() could not be saved
+    public void markDirty() {
+        dirty = true;
+    }
+
+    // The days still in the window, for saving. Layout (little-endian):
+    //
+    //   magic "DTWB" (4) | version (4) | day count (4)
+    //   per day: epoch day (8) | user count (4) | per user: name length (2) | UTF-8 name | score (4)
+    public byte[] encode(long today) {
+        dirty = false;
+        List<Bucket> days = new ArrayList<>();
+        int size = 12;
+        for (int slot = 0; slot < DAYS; slot++) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket != null && bucket.day > today - DAYS && bucket.day <= today) {
+                days.add(bucket);
+                size += 12;
+                for (String username : bucket.best.keySet()) {
+                    size += 2 + username.getBytes(StandardCharsets.UTF_8).length + 4;
+                }
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(days.size());
+        for (Bucket bucket : days) {
+            out.putLong(bucket.day).putInt(bucket.best.size());
+            for (Map.Entry<String, Integer> entry : bucket.best.entrySet()) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.putShort((short) name.length).put(name).putInt(entry.getValue());
+            }
+        }
+        return out.array();
+    }
+
+    // Adds scores saved by encode(), here or in another process, keeping each
+    // user's best per day. Returns false if data is not a saved board.
+    public boolean merge(byte[] data, long today) {
+        ByteBuffer in = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt() != FILE_MAGIC || in.getInt() != FILE_VERSION) {
+                return false;
+            }
+            int dayCount = in.getInt();
+            for (int i = 0; i < dayCount; i++) {
+                long day = in.getLong();
+                int users = in.getInt();
+                for (int j = 0; j < users; j++) {
+                    byte[] name = new byte[in.getShort() & 0xFFFF];
+                    in.get(name);
+                    keep(new String(name, StandardCharsets.UTF_8), in.getInt(), day, today);
+                }
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            return false; // Whatever was read before the damage is kept
+        }
+    }
+
+    private static int slot(long day) {
+        return (int) Math.floorMod(day, (long) DAYS);
+    }
+}